@@ -0,0 +1,74 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.joml.Vector3d;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One flow update of every boundary in a square grid of pipe cells.
+ * The first cell is kept pressurized and the last one at atmospheric pressure,
+ * so the grid has a steady flow through it instead of settling down.
+ * The parallel sweep only kicks in for grids with enough boundaries, it has no effect on the implicit solve.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GasFlowBenchmark {
+    private static final double STEP_TIME = 0.05 / 10;
+    private static final double TEMPERATURE = 293.15;
+    private static final double PIPE_VOLUME = 4;
+
+    @Param({ "8", "32", "128", "256" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    @Param({ "false", "true" })
+    public boolean implicit;
+
+    private GasCell source;
+    private GasCell sink;
+    private GasNetwork network;
+
+    private static void fill(GasCell cell, double pressure) {
+        final double moles = pressure * cell.getVolume() / (GasSimulator.GAS_CONSTANT * TEMPERATURE);
+        cell.set(0.5 * 3 * moles * GasSimulator.GAS_CONSTANT * TEMPERATURE, moles, 0, 0, 0);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var x = new Vector3d(1, 0, 0);
+        final var z = new Vector3d(0, 0, 1);
+        final var cells = new GasCell[size * size];
+        network = new GasNetwork();
+        network.setParallel(parallel);
+        network.setImplicit(implicit);
+        for(int i = 0; i < cells.length; ++i) {
+            cells[i] = new GasCell(PIPE_VOLUME);
+            fill(cells[i], GasSimulator.ATMOSPHERIC_PRESSURE);
+            if(i % size != 0)
+                network.add(new GasBoundary(cells[i - 1], cells[i], 1, 1, x, 1));
+            if(i >= size)
+                network.add(new GasBoundary(cells[i - size], cells[i], 1, 1, z, 1));
+        }
+        source = cells[0];
+        sink = cells[cells.length - 1];
+
+        // Get the flow going before measuring
+        for(int i = 0; i < 1000; ++i)
+            flow();
+    }
+
+    @Benchmark
+    public double flow() {
+        fill(source, 6 * GasSimulator.ATMOSPHERIC_PRESSURE);
+        fill(sink, GasSimulator.ATMOSPHERIC_PRESSURE);
+        network.simulate(STEP_TIME);
+        return sink.getTotalMoles();
+    }
+}
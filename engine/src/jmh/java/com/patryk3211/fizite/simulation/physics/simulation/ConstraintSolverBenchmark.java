@@ -0,0 +1,71 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.BearingConstraint;
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.PositionConstraint;
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.RotationConstraint;
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.WeldConstraint;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Constraint force solve of a single island holding a chain of bodies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstraintSolverBenchmark {
+    @Param({ "10", "100", "1000", "10000" })
+    public int bodies;
+
+    @Param({ "bearing", "weld", "rotation" })
+    public String joint;
+
+    private ConstraintSolver solver;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var world = new PhysicsWorld();
+        final var chain = new RigidBody[bodies];
+        for(int i = 0; i < bodies; ++i) {
+            final var body = new RigidBody();
+            final var state = body.getState();
+            if(joint.equals("rotation")) {
+                // Chain of crank shafts
+                body.lockPosition();
+            } else {
+                state.setPositionX(i * 2);
+                state.setVelocity(0, i * 0.1);
+            }
+            state.setVelocityA(1);
+            world.addRigidBody(body);
+            chain[i] = body;
+
+            if(i == 0) {
+                if(!joint.equals("rotation"))
+                    world.addConstraint(new PositionConstraint(body, 0, 0));
+                continue;
+            }
+            world.addConstraint(switch(joint) {
+                case "bearing" -> new BearingConstraint(chain[i - 1], body, 1, 0, -1, 0);
+                case "weld" -> new WeldConstraint(chain[i - 1], body, 1, 0, -1, 0);
+                case "rotation" -> new RotationConstraint(chain[i - 1], body);
+                default -> throw new IllegalArgumentException("Unknown joint type " + joint);
+            });
+        }
+        // Builds the island and its solver matrices
+        world.simulate();
+        if(world.islands().size() != 1)
+            throw new IllegalStateException("Expected the chain to form a single island");
+        solver = world.islands().get(0).solver();
+    }
+
+    @Benchmark
+    public int step() {
+        solver.step();
+        return solver.iterationCount;
+    }
+}
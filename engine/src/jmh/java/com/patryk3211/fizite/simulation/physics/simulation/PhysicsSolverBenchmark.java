@@ -0,0 +1,54 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * All four RK stages of a single integration step, without the constraint solve in between.
+ * The step is rolled back afterwards, so every invocation integrates the same state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhysicsSolverBenchmark {
+    private static final double STEP_TIME = PhysicsWorld.DELTA_TIME / PhysicsWorld.MIN_STEP_COUNT;
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int bodies;
+
+    private PhysicsSolver solver;
+    private PhysicalSystem system;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var world = new PhysicsWorld();
+        for(int i = 0; i < bodies; ++i) {
+            final var body = new RigidBody();
+            final var state = body.getState();
+            state.setPosition(i, 0);
+            state.setVelocity(1, 0.5);
+            state.setVelocityA(1);
+            state.setExtForce(0, -9.81, 0);
+            world.addRigidBody(body);
+        }
+        // Let the world calculate accelerations once
+        world.simulate();
+        system = world.system();
+        solver = new PhysicsSolver();
+    }
+
+    @Benchmark
+    public double step() {
+        solver.start(STEP_TIME, system);
+        do {
+            solver.step();
+            solver.solve();
+        } while(!solver.stepFinished());
+        solver.reject();
+        return solver.error();
+    }
+}
@@ -0,0 +1,112 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.jetbrains.annotations.NotNull;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+
+/**
+ * Connection between two gas cells. The flow over it is simulated
+ * once it's added to a {@link GasNetwork}, which then holds its state.
+ */
+public class GasBoundary {
+    private final GasCell cell1;
+    private final GasCell cell2;
+    private final double crossSection1;
+    private final double crossSection2;
+    // Unit vector pointing from cell1 to cell2
+    private final double directionX;
+    private final double directionY;
+    private final double directionZ;
+    private double flowConstant;
+
+    private GasNetwork network;
+    private int index;
+
+    /**
+     * @param direction Unit vector pointing from cell1 to cell2, the boundary
+     *                  always stores it pointing along the positive axis
+     */
+    public GasBoundary(@NotNull GasCell cell1, @NotNull GasCell cell2, double crossSection1, double crossSection2, Vector3dc direction, double flowConstant) {
+        if(direction.x() + direction.y() + direction.z() >= 0) {
+            this.cell1 = cell1;
+            this.cell2 = cell2;
+            this.crossSection1 = crossSection1;
+            this.crossSection2 = crossSection2;
+            this.directionX = direction.x();
+            this.directionY = direction.y();
+            this.directionZ = direction.z();
+        } else {
+            this.cell1 = cell2;
+            this.cell2 = cell1;
+            this.crossSection1 = crossSection2;
+            this.crossSection2 = crossSection1;
+            this.directionX = -direction.x();
+            this.directionY = -direction.y();
+            this.directionZ = -direction.z();
+        }
+        this.flowConstant = flowConstant;
+        this.index = -1;
+    }
+
+    void attach(GasNetwork network, int index) {
+        this.network = network;
+        this.index = index;
+    }
+
+    void detach() {
+        network = null;
+        index = -1;
+    }
+
+    GasNetwork network() {
+        return network;
+    }
+
+    int index() {
+        return index;
+    }
+
+    public void setFlowConstant(double flowConstant) {
+        this.flowConstant = flowConstant;
+        if(network != null) {
+            network.flowConstant[index] = flowConstant;
+            network.boundaryChanged(index);
+        }
+    }
+
+    public double getFlowConstant() {
+        return flowConstant;
+    }
+
+    public GasCell cell1() {
+        return cell1;
+    }
+
+    public GasCell cell2() {
+        return cell2;
+    }
+
+    public double crossSection1() {
+        return crossSection1;
+    }
+
+    public double crossSection2() {
+        return crossSection2;
+    }
+
+    double directionX() {
+        return directionX;
+    }
+
+    double directionY() {
+        return directionY;
+    }
+
+    double directionZ() {
+        return directionZ;
+    }
+
+    public Vector3d getDirectionVector(Vector3d dest) {
+        return dest.set(directionX, directionY, directionZ);
+    }
+}
@@ -0,0 +1,263 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+
+// Currently we assume a D = 3 (degrees of freedom of particles),
+// I'm not sure what kind of effect this will have on our
+// simulation but for future me I am leaving this message
+// to not forget that.
+
+/**
+ * View of a single cell inside of a {@link GasNetwork}. While the cell
+ * is not a part of any network the state is kept in a private single entry network.
+ * Changing the cell wakes up its boundaries, so it should only be done by the simulating thread.
+ * Cells compacted into a pipe run report their share of the run state.
+ */
+public class GasCell {
+    /**
+     * Copy of the cell state taken at the end of a simulation tick, safe to read from any thread.
+     */
+    public record Snapshot(double kineticEnergy, double totalMoles, double volume, double momentumX, double momentumY, double momentumZ) {
+        public double pressure() {
+            return GasCell.pressure(kineticEnergy, volume);
+        }
+
+        public double temperature() {
+            return GasCell.temperature(kineticEnergy, totalMoles);
+        }
+    }
+
+    private GasNetwork network;
+    private int index;
+    private long syncId;
+    private boolean coupled;
+
+    private volatile Snapshot snapshot;
+
+    public GasCell(double volume) {
+        network = detachedNetwork();
+        index = 0;
+        network.volume[0] = volume;
+    }
+
+    public GasCell(double volume, double Ek, double n, Vector3dc momentum) {
+        this(volume);
+        set(Ek, n, momentum);
+    }
+
+    private static GasNetwork detachedNetwork() {
+        final var network = new GasNetwork(1);
+        network.molarMass[0] = 1;
+        return network;
+    }
+
+    void attach(GasNetwork newNetwork, int newIndex) {
+        if(newNetwork == network && newIndex == index)
+            return;
+        GasNetwork.copyCell(network, index, newNetwork, newIndex);
+        network = newNetwork;
+        index = newIndex;
+    }
+
+    void detach() {
+        final var detached = new GasNetwork(1);
+        GasNetwork.copyCell(network, index, detached, 0);
+        network = detached;
+        index = 0;
+    }
+
+    GasNetwork network() {
+        return network;
+    }
+
+    int index() {
+        return index;
+    }
+
+    public void set(double Ek, double n, Vector3dc momentum) {
+        set(Ek, n, momentum.x(), momentum.y(), momentum.z());
+    }
+
+    public void set(double Ek, double n, double momentumX, double momentumY, double momentumZ) {
+        network.changeCell(index);
+        network.kineticEnergy[index] = Ek;
+        network.totalMoles[index] = n;
+        network.momentumX[index] = momentumX;
+        network.momentumY[index] = momentumY;
+        network.momentumZ[index] = momentumZ;
+    }
+
+    /**
+     * Marks the cell as coupled to a physics body (e.g. the chamber of a piston), boundaries touching
+     * it are simulated with every physics step instead of the substeps of the rest of the network.
+     */
+    public void setCoupled(boolean coupled) {
+        if(this.coupled == coupled)
+            return;
+        this.coupled = coupled;
+        network.couplingChanged(index);
+    }
+
+    public boolean isCoupled() {
+        return coupled;
+    }
+
+    public void setSyncId(long id) {
+        syncId = id;
+    }
+
+    public long getSyncId() {
+        return syncId;
+    }
+
+    /**
+     * Publishes the current state, should only be called by the simulating thread.
+     */
+    public void publish() {
+        snapshot = currentState();
+    }
+
+    /**
+     * Last published state of this cell, cells which weren't simulated yet report their current state.
+     */
+    public Snapshot snapshot() {
+        final var snapshot = this.snapshot;
+        if(snapshot != null)
+            return snapshot;
+        return currentState();
+    }
+
+    private Snapshot currentState() {
+        return new Snapshot(getMoleculeKineticEnergy(), getTotalMoles(), getVolume(), momentumX(), momentumY(), momentumZ());
+    }
+
+    static double pressure(double kineticEnergy, double volume) {
+        if(volume == 0) return 0;
+        else return kineticEnergy / (0.5 * 3 * volume);
+    }
+
+    static double temperature(double kineticEnergy, double totalMoles) {
+        if(totalMoles == 0) return 0;
+        else return kineticEnergy / (0.5 * 3 * totalMoles * GasSimulator.GAS_CONSTANT);
+    }
+
+    public double pressure() {
+        return network.pressure(network.stateCell(index));
+    }
+
+    public double dynamicPressure(Vector3dc direction) {
+        return dynamicPressure(direction.x(), direction.y(), direction.z());
+    }
+
+    /**
+     * Pressure gained by stopping the gas moving along the given unit direction.
+     */
+    public double dynamicPressure(double dirX, double dirY, double dirZ) {
+        return network.dynamicPressure(network.stateCell(index), dirX, dirY, dirZ);
+    }
+
+    public double temperature() {
+        return network.temperature(network.stateCell(index));
+    }
+
+    public double mass() {
+        return network.mass(network.stateCell(index)) * network.share(index);
+    }
+
+    public double speedOfSound() {
+        return network.speedOfSound(network.stateCell(index));
+    }
+
+    public double getVolume() {
+        return network.cellVolume(index);
+    }
+
+    public double getMoleculeKineticEnergy() {
+        return network.kineticEnergy[network.stateCell(index)] * network.share(index);
+    }
+
+    public void setMoleculeKineticEnergy(double energy) {
+        network.changeCell(index);
+        network.kineticEnergy[index] = energy;
+    }
+
+    public double getTotalMoles() {
+        return network.totalMoles[network.stateCell(index)] * network.share(index);
+    }
+
+    public Vector3d getMomentum(Vector3d dest) {
+        return dest.set(momentumX(), momentumY(), momentumZ());
+    }
+
+    public double momentumX() {
+        return network.momentumX[network.stateCell(index)] * network.share(index);
+    }
+
+    public double momentumY() {
+        return network.momentumY[network.stateCell(index)] * network.share(index);
+    }
+
+    public double momentumZ() {
+        return network.momentumZ[network.stateCell(index)] * network.share(index);
+    }
+
+    public double getMolarMass() {
+        return network.molarMass[network.stateCell(index)];
+    }
+
+    public double momentumKineticEnergy() {
+        return network.momentumKineticEnergy(network.stateCell(index)) * network.share(index);
+    }
+
+    public void changeEnergy(double deltaEk) {
+        network.changeCell(index);
+        network.kineticEnergy[index] += deltaEk;
+    }
+
+    public void changeMoles(double deltaN) {
+        network.changeCell(index);
+        network.totalMoles[index] += deltaN;
+    }
+
+    public void changeVolume(double deltaV) {
+        network.changeCell(index);
+        final double volume = network.volume[index];
+        final double edgeLength = Math.cbrt(volume + deltaV);
+        final double area = edgeLength * edgeLength; // m²
+        final double lengthDelta = deltaV / area; // m³ -> m
+        final double work = pressure() * area * -lengthDelta; // Pa * m² -> N * m -> J
+
+        network.volume[index] = volume + deltaV;
+        network.kineticEnergy[index] += work;
+    }
+
+    public void changeVolumeTo(double newVolume) {
+        changeVolume(newVolume - getVolume());
+    }
+
+    public void changeVolume(double area, double lengthDelta) {
+        network.changeCell(index);
+        double work = pressure() * area * -lengthDelta; // Pa * m² -> N * m -> J
+
+        network.volume[index] += area * lengthDelta;
+        network.kineticEnergy[index] += work;
+    }
+
+    public void changeTemperature(double deltaT) {
+        network.changeCell(index);
+        final double deltaE = 0.5 * 3 * network.totalMoles[index] * GasSimulator.GAS_CONSTANT * deltaT;
+        network.kineticEnergy[index] += deltaE;
+    }
+
+    public void changeMomentum(Vector3dc deltaM) {
+        changeMomentum(deltaM.x(), deltaM.y(), deltaM.z());
+    }
+
+    public void changeMomentum(double deltaX, double deltaY, double deltaZ) {
+        network.changeCell(index);
+        network.momentumX[index] += deltaX;
+        network.momentumY[index] += deltaY;
+        network.momentumZ[index] += deltaZ;
+    }
+}
@@ -0,0 +1,461 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.interfaces.linsol.LinearSolverSparse;
+import org.ejml.sparse.FillReducing;
+import org.ejml.sparse.csc.factory.LinearSolverFactory_DSCC;
+
+import java.util.Arrays;
+
+/**
+ * Backward Euler pressure solve of a gas network. The flow of every boundary is linearised
+ * to a conductance, G * (p1 - p2), around the current state and the pressures at the end of the
+ * step are found with one linear solve, for which the step can be as long as a whole tick.
+ * Small systems are factorized with a sparse Cholesky, EJML has no fill reducing ordering for it,
+ * so large systems (where the fill of a grid makes the factorization very slow) use
+ * a Jacobi preconditioned conjugate gradient instead, warm started with the current pressures.
+ * <p>
+ * Temperatures are held for the solve. Gas only flows towards lower pressures, so the cells are
+ * visited upstream first and the moved gas carries the energy of the cell it leaves, mixed with the gas
+ * which flowed into that cell during the step.
+ * The solve has no inertia, cells taking part in it lose their bulk motion to heat.
+ */
+class GasImplicitSolver {
+    // Pressure differences below this fraction of the higher pressure use the conductance at this difference
+    private static final double MIN_PRESSURE_DIFFERENCE = 1E-3;
+    // Systems with at most this many cells are solved with a direct sparse Cholesky factorization
+    private static final int DIRECT_SOLVE_MAX_ROWS = 256;
+    // The conjugate gradient stops once the moles moved by the flows differ from the moles the final pressures
+    // need by less than this fraction of the moles of every row, or of the average moles for rows with less gas
+    private static final double MAX_ERROR = 1E-10;
+    private static final int MAX_ITERATIONS = 1024;
+
+    private final GasNetwork network;
+    private final LinearSolverSparse<DMatrixSparseCSC, DMatrixRMaj> solver;
+    private final DMatrixSparseCSC left;
+    private final DMatrixRMaj right;
+    private final DMatrixRMaj pressure;
+    // Sparsity pattern the symbolic analysis of the direct solver was done for
+    private int[] lockedColumns;
+    private int[] lockedRows;
+    private int lockedSize;
+
+    // Row of every cell in the system, -1 for cells which aren't a part of it
+    private int[] cellRow;
+    private int[] rowCell;
+    // Energy per mole and pressure per mole of every row, taken before the solve
+    private double[] rowEnergy;
+    private double[] rowPressure;
+    private int rowCount;
+
+    private int[] systemBoundaries;
+    private double[] boundaryConductance;
+    private int systemCount;
+
+    // Boundaries of every row, as indices into the system boundaries
+    private int[] rowStart;
+    private int[] rowBoundaries;
+    private int[] mark;
+    private double[] work;
+    // Moles moved from the first to the second cell of every system boundary
+    private double[] flow;
+    // Rows in the order their gas is moved
+    private int[] order;
+    // Diagonal of the system and dt * G of every system boundary
+    private double[] diagonal;
+    private double[] offDiagonal;
+    // Conjugate gradient vectors
+    private double[] residual;
+    private double[] search;
+    private double[] product;
+    // Largest residual allowed in every row
+    private double[] maxResidual;
+
+    GasImplicitSolver(GasNetwork network) {
+        this.network = network;
+        solver = LinearSolverFactory_DSCC.cholesky(FillReducing.NONE);
+        left = new DMatrixSparseCSC(0, 0);
+        right = new DMatrixRMaj(0, 1);
+        pressure = new DMatrixRMaj(0, 1);
+        cellRow = new int[0];
+        rowCell = new int[0];
+        rowEnergy = new double[0];
+        rowPressure = new double[0];
+        systemBoundaries = new int[0];
+        boundaryConductance = new double[0];
+        rowStart = new int[1];
+        rowBoundaries = new int[0];
+        mark = new int[0];
+        work = new double[0];
+        flow = new double[0];
+        order = new int[0];
+        diagonal = new double[0];
+        offDiagonal = new double[0];
+        residual = new double[0];
+        search = new double[0];
+        product = new double[0];
+        maxResidual = new double[0];
+        lockedColumns = new int[1];
+        lockedRows = new int[0];
+        lockedSize = -1;
+    }
+
+    /**
+     * Simulates the given boundaries over the time step.
+     * @param skip Boundaries marked in this array are left out, may be null
+     * @param balanced Cleared for boundaries which moved more than the tolerance fraction of the gas
+     *                 of their cells, those can end the step balanced while their neighbours aren't
+     */
+    void solve(int[] boundaries, int count, boolean[] skip, double deltaTime, double tolerance, boolean[] balanced) {
+        final int cellLength = network.volume.length;
+        if(cellRow.length < cellLength) {
+            cellRow = new int[cellLength];
+            Arrays.fill(cellRow, -1);
+        }
+        collect(boundaries, count, skip);
+        if(systemCount > 0 && !solvePressure(deltaTime))
+            // The system can only be singular with broken cell states, the explicit update skips those as well
+            systemCount = 0;
+        if(systemCount > 0)
+            transfer();
+        for(int i = 0; i < systemCount; ++i) {
+            final int boundary = systemBoundaries[i];
+            if(!(Math.abs(flow[i]) <= tolerance * Math.min(network.totalMoles[network.boundaryCell1[boundary]], network.totalMoles[network.boundaryCell2[boundary]])))
+                balanced[boundary] = false;
+        }
+        // The flows add up to non negative states, only rounding has to be clamped
+        for(int row = 0; row < rowCount; ++row) {
+            final int cell = rowCell[row];
+            if(network.totalMoles[cell] < 0)
+                network.totalMoles[cell] = 0;
+            if(network.kineticEnergy[cell] < 0)
+                network.kineticEnergy[cell] = 0;
+        }
+
+        for(int i = 0; i < rowCount; ++i)
+            cellRow[rowCell[i]] = -1;
+        rowCount = 0;
+        systemCount = 0;
+    }
+
+    private void collect(int[] boundaries, int count, boolean[] skip) {
+        final double[] kineticEnergy = network.kineticEnergy;
+        final double[] totalMoles = network.totalMoles;
+        if(systemBoundaries.length < count) {
+            systemBoundaries = new int[count];
+            boundaryConductance = new double[count];
+        }
+
+        for(int i = 0; i < count; ++i) {
+            final int boundary = boundaries[i];
+            if(skip != null && skip[boundary])
+                continue;
+            final int cell1 = network.boundaryCell1[boundary];
+            final int cell2 = network.boundaryCell2[boundary];
+            if(Double.isNaN(network.pressure(cell1)) || Double.isNaN(network.pressure(cell2)))
+                continue;
+            addRow(cell1);
+            addRow(cell2);
+            systemBoundaries[systemCount++] = boundary;
+        }
+
+        // Bulk motion is turned into heat, the solve only moves gas by pressure
+        for(int row = 0; row < rowCount; ++row) {
+            final int cell = rowCell[row];
+            kineticEnergy[cell] += network.momentumKineticEnergy(cell);
+            network.momentumX[cell] = 0;
+            network.momentumY[cell] = 0;
+            network.momentumZ[cell] = 0;
+            rowEnergy[row] = totalMoles[cell] > 0 ? kineticEnergy[cell] / totalMoles[cell] : 0;
+        }
+        // Empty cells fill up with the gas of their neighbours
+        for(int i = 0; i < systemCount; ++i) {
+            final int row1 = cellRow[network.boundaryCell1[systemBoundaries[i]]];
+            final int row2 = cellRow[network.boundaryCell2[systemBoundaries[i]]];
+            if(totalMoles[rowCell[row1]] <= 0)
+                rowEnergy[row1] = Math.max(rowEnergy[row1], rowEnergy[row2]);
+            if(totalMoles[rowCell[row2]] <= 0)
+                rowEnergy[row2] = Math.max(rowEnergy[row2], rowEnergy[row1]);
+        }
+        for(int row = 0; row < rowCount; ++row)
+            rowPressure[row] = GasCell.pressure(rowEnergy[row], network.volume[rowCell[row]]);
+
+        // Boundaries between cells without any gas don't move anything
+        int kept = 0;
+        for(int i = 0; i < systemCount; ++i) {
+            final int boundary = systemBoundaries[i];
+            final int cell1 = network.boundaryCell1[boundary];
+            final int cell2 = network.boundaryCell2[boundary];
+            if(!(rowPressure[cellRow[cell1]] > 0) || !(rowPressure[cellRow[cell2]] > 0))
+                continue;
+            final double pressure1 = network.pressure(cell1);
+            final double pressure2 = network.pressure(cell2);
+            final double conductance = pressure1 >= pressure2
+                    ? GasSimulator.conductance(pressure1, pressure2, network.temperature(cell1), MIN_PRESSURE_DIFFERENCE)
+                    : GasSimulator.conductance(pressure2, pressure1, network.temperature(cell2), MIN_PRESSURE_DIFFERENCE);
+            boundaryConductance[kept] = conductance * network.flowConstant[boundary];
+            systemBoundaries[kept++] = boundary;
+        }
+        systemCount = kept;
+    }
+
+    private void addRow(int cell) {
+        if(cellRow[cell] != -1)
+            return;
+        if(rowCount == rowCell.length) {
+            final int capacity = Math.max(rowCount * 2, 16);
+            rowCell = Arrays.copyOf(rowCell, capacity);
+            rowEnergy = Arrays.copyOf(rowEnergy, capacity);
+            rowPressure = Arrays.copyOf(rowPressure, capacity);
+        }
+        cellRow[cell] = rowCount;
+        rowCell[rowCount++] = cell;
+    }
+
+    /**
+     * Solves (diag(n / p) + dt * L) * p' = n for the pressures at the end of the step, where
+     * L is the conductance weighted Laplacian of the network. The matrix is symmetric positive definite
+     * and the rows of L sum up to zero, so the solve conserves the amount of gas.
+     */
+    private boolean solvePressure(double deltaTime) {
+        final int n = rowCount;
+        if(rowStart.length < n + 1)
+            rowStart = new int[n + 1];
+        Arrays.fill(rowStart, 0, n + 1, 0);
+        for(int i = 0; i < systemCount; ++i) {
+            ++rowStart[cellRow[network.boundaryCell1[systemBoundaries[i]]] + 1];
+            ++rowStart[cellRow[network.boundaryCell2[systemBoundaries[i]]] + 1];
+        }
+        for(int row = 0; row < n; ++row)
+            rowStart[row + 1] += rowStart[row];
+        if(rowBoundaries.length < rowStart[n])
+            rowBoundaries = new int[rowStart[n]];
+        if(mark.length < n) {
+            mark = new int[n];
+            work = new double[n];
+            diagonal = new double[n];
+            order = new int[n];
+        }
+        if(offDiagonal.length < systemCount) {
+            offDiagonal = new double[systemBoundaries.length];
+            flow = new double[systemBoundaries.length];
+        }
+        final int[] fill = mark;
+        System.arraycopy(rowStart, 0, fill, 0, n);
+        for(int i = 0; i < systemCount; ++i) {
+            rowBoundaries[fill[cellRow[network.boundaryCell1[systemBoundaries[i]]]]++] = i;
+            rowBoundaries[fill[cellRow[network.boundaryCell2[systemBoundaries[i]]]]++] = i;
+        }
+
+        for(int i = 0; i < systemCount; ++i)
+            offDiagonal[i] = deltaTime * boundaryConductance[i];
+        for(int row = 0; row < n; ++row) {
+            // Rows without any gas around them aren't connected to anything, they just keep their state
+            double sum = rowPressure[row] > 0 ? 1 / rowPressure[row] : 1;
+            for(int i = rowStart[row]; i < rowStart[row + 1]; ++i)
+                sum += offDiagonal[rowBoundaries[i]];
+            diagonal[row] = sum;
+        }
+
+        pressure.reshape(n, 1);
+        if(n <= DIRECT_SOLVE_MAX_ROWS)
+            return solveDirect();
+        solveIterative();
+        return true;
+    }
+
+    private boolean solveDirect() {
+        final int n = rowCount;
+        Arrays.fill(mark, 0, n, -1);
+        // Every column holds the diagonal and one entry for every neighbour
+        left.reshape(n, n, n + rowStart[n]);
+        int nz = 0;
+        for(int column = 0; column < n; ++column) {
+            left.col_idx[column] = nz;
+            final int start = nz;
+            mark[column] = column;
+            left.nz_rows[nz++] = column;
+            work[column] = diagonal[column];
+            for(int i = rowStart[column]; i < rowStart[column + 1]; ++i) {
+                final int index = rowBoundaries[i];
+                final int other = otherRow(index, column);
+                if(mark[other] != column) {
+                    mark[other] = column;
+                    work[other] = 0;
+                    left.nz_rows[nz++] = other;
+                }
+                work[other] -= offDiagonal[index];
+            }
+            Arrays.sort(left.nz_rows, start, nz);
+            for(int i = start; i < nz; ++i)
+                left.nz_values[i] = work[left.nz_rows[i]];
+        }
+        left.col_idx[n] = nz;
+        left.nz_length = nz;
+        left.indicesSorted = true;
+
+        right.reshape(n, 1);
+        for(int row = 0; row < n; ++row)
+            right.data[row] = network.totalMoles[rowCell[row]];
+        // The symbolic analysis is kept while the active set doesn't change the structure
+        final boolean sameStructure = n == lockedSize &&
+                Arrays.equals(left.col_idx, 0, n + 1, lockedColumns, 0, n + 1) &&
+                Arrays.equals(left.nz_rows, 0, nz, lockedRows, 0, nz);
+        solver.setStructureLocked(sameStructure);
+        if(!solver.setA(left)) {
+            lockedSize = -1;
+            return false;
+        }
+        if(!sameStructure) {
+            if(lockedColumns.length < n + 1)
+                lockedColumns = new int[left.col_idx.length];
+            if(lockedRows.length < nz)
+                lockedRows = new int[left.nz_rows.length];
+            System.arraycopy(left.col_idx, 0, lockedColumns, 0, n + 1);
+            System.arraycopy(left.nz_rows, 0, lockedRows, 0, nz);
+            lockedSize = n;
+            solver.setStructureLocked(true);
+        }
+        solver.solve(right, pressure);
+        return true;
+    }
+
+    // Preconditioned conjugate gradient, starts from the current pressures
+    private void solveIterative() {
+        final int n = rowCount;
+        if(residual.length < n) {
+            residual = new double[mark.length];
+            search = new double[mark.length];
+            product = new double[mark.length];
+            maxResidual = new double[mark.length];
+        }
+        final double[] x = pressure.data;
+        final double[] r = residual;
+        final double[] z = work;
+        final double[] p = search;
+        final double[] ap = product;
+        final double[] totalMoles = network.totalMoles;
+
+        double moles = 0;
+        for(int row = 0; row < n; ++row)
+            moles += totalMoles[rowCell[row]];
+        // The residual of a row offsets its final pressure by the residual times the pressure per mole,
+        // which the conductances of the row turn into a flow error, the scaled diagonal is that gain
+        final double floor = moles / n;
+        for(int row = 0; row < n; ++row) {
+            final double gain = rowPressure[row] > 0 ? rowPressure[row] * diagonal[row] : diagonal[row];
+            maxResidual[row] = MAX_ERROR * Math.max(totalMoles[rowCell[row]], floor) / gain;
+        }
+        for(int row = 0; row < n; ++row)
+            x[row] = rowPressure[row] > 0 ? rowPressure[row] * totalMoles[rowCell[row]] : totalMoles[rowCell[row]];
+        multiply(x, ap);
+        double rz = 0;
+        for(int row = 0; row < n; ++row) {
+            r[row] = totalMoles[rowCell[row]] - ap[row];
+            z[row] = r[row] / diagonal[row];
+            p[row] = z[row];
+            rz += r[row] * z[row];
+        }
+
+        for(int iteration = 0; iteration < MAX_ITERATIONS && !converged(); ++iteration) {
+            multiply(p, ap);
+            double dot = 0;
+            for(int row = 0; row < n; ++row)
+                dot += p[row] * ap[row];
+            if(!(dot > 0))
+                break;
+            final double alpha = rz / dot;
+            double rzNext = 0;
+            for(int row = 0; row < n; ++row) {
+                x[row] += alpha * p[row];
+                r[row] -= alpha * ap[row];
+                z[row] = r[row] / diagonal[row];
+                rzNext += r[row] * z[row];
+            }
+            final double beta = rzNext / rz;
+            rz = rzNext;
+            for(int row = 0; row < n; ++row)
+                p[row] = z[row] + beta * p[row];
+        }
+    }
+
+    private boolean converged() {
+        for(int row = 0; row < rowCount; ++row) {
+            if(!(Math.abs(residual[row]) <= maxResidual[row]))
+                return false;
+        }
+        return true;
+    }
+
+    // output = (diag(n / p) + dt * L) * input
+    private void multiply(double[] input, double[] output) {
+        for(int row = 0; row < rowCount; ++row) {
+            double sum = diagonal[row] * input[row];
+            for(int i = rowStart[row]; i < rowStart[row + 1]; ++i) {
+                final int index = rowBoundaries[i];
+                sum -= offDiagonal[index] * input[otherRow(index, row)];
+            }
+            output[row] = sum;
+        }
+    }
+
+    private int otherRow(int index, int row) {
+        final int boundary = systemBoundaries[index];
+        final int row1 = cellRow[network.boundaryCell1[boundary]];
+        return row1 == row ? cellRow[network.boundaryCell2[boundary]] : row1;
+    }
+
+    /**
+     * Moves the gas of every boundary with the pressures at the end of the step. Rows are visited
+     * in the order of the flow, a row is only visited after all rows sending gas into it, so every
+     * row sends out the mix of its own gas and the received gas, which keeps the energy of the
+     * row non negative and the total energy conserved. The flow goes from higher to lower pressures,
+     * so it can't form a cycle.
+     */
+    private void transfer() {
+        final int n = rowCount;
+        final double[] totalMoles = network.totalMoles;
+        final double[] kineticEnergy = network.kineticEnergy;
+        // Amount of boundaries sending gas into every row which weren't visited yet
+        final int[] inflows = mark;
+        Arrays.fill(inflows, 0, n, 0);
+        for(int i = 0; i < systemCount; ++i) {
+            final int boundary = systemBoundaries[i];
+            final int row1 = cellRow[network.boundaryCell1[boundary]];
+            final int row2 = cellRow[network.boundaryCell2[boundary]];
+            final double moles = offDiagonal[i] * (pressure.data[row1] - pressure.data[row2]);
+            flow[i] = Double.isFinite(moles) ? moles : 0;
+            if(flow[i] > 0)
+                ++inflows[row2];
+            else if(flow[i] < 0)
+                ++inflows[row1];
+        }
+
+        int tail = 0;
+        for(int row = 0; row < n; ++row) {
+            if(inflows[row] == 0)
+                order[tail++] = row;
+        }
+        for(int head = 0; head < tail; ++head) {
+            final int row = order[head];
+            final int source = rowCell[row];
+            final double energy = totalMoles[source] > 0 ? kineticEnergy[source] / totalMoles[source] : 0;
+            for(int i = rowStart[row]; i < rowStart[row + 1]; ++i) {
+                final int index = rowBoundaries[i];
+                final boolean first = cellRow[network.boundaryCell1[systemBoundaries[index]]] == row;
+                final double moles = first ? flow[index] : -flow[index];
+                if(!(moles > 0))
+                    continue;
+                final int sinkRow = otherRow(index, row);
+                final int sink = rowCell[sinkRow];
+                totalMoles[source] -= moles;
+                kineticEnergy[source] -= moles * energy;
+                totalMoles[sink] += moles;
+                kineticEnergy[sink] += moles * energy;
+                if(--inflows[sinkRow] == 0)
+                    order[tail++] = sinkRow;
+            }
+        }
+    }
+}
@@ -0,0 +1,1447 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import com.patryk3211.fizite.simulation.physics.simulation.PhysicsWorld;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Packed (structure of arrays) storage of a gas network. Cell arrays are indexed by the cell index
+ * and boundary arrays by the boundary index, {@link GasCell} and {@link GasBoundary} objects are views
+ * into this storage. Cells keep their index for as long as they are a part of the network, boundaries
+ * are kept densely packed so that the flow sweep can run over them without gaps.
+ * <p>
+ * The network runs on its own schedule, independent of the physics steps. Time passed to
+ * {@link #advance(double)} is collected and flow sweeps are run with a fixed substep, which
+ * {@link #planSubsteps(double)} picks for every tick from the sound speed and size of the cells.
+ * In {@link #setImplicit(boolean) implicit} mode the sweep is replaced by a single pressure solve per tick.
+ * <p>
+ * Boundaries are coloured as they are added, no two boundaries of one colour share a cell.
+ * In {@link #setParallel(boolean) parallel} mode large networks sweep one colour at a time
+ * and split every colour between the threads of a shared pool.
+ * <p>
+ * Only active boundaries are simulated. A boundary goes to sleep once the pressures of its cells match
+ * and their gas is at rest, within {@link #setBalanceTolerance(double) a tolerance}. It is woken
+ * up again when a boundary next to it still moves gas, or when one of its cells is changed from the outside.
+ * <p>
+ * Long straight runs of cells with two matching boundaries (pipes) are compacted into groups of
+ * {@link #setSegmentLength(int) a few cells} which are simulated as a single cell. The first cell of a group
+ * holds the state of the whole group, the state of every member is its share by volume. Groups are well mixed
+ * volumes without bulk motion. A group is split up again when one of its cells is changed from the outside
+ * or its connections change.
+ */
+public class GasNetwork {
+    public static final double DEFAULT_COURANT_NUMBER = 0.5;
+    public static final int DEFAULT_MAX_SUBSTEPS = 100;
+    public static final double DEFAULT_BALANCE_TOLERANCE = 1E-4;
+    public static final int DEFAULT_SEGMENT_LENGTH = 4;
+    // Colours are tracked in a bit mask for every cell
+    private static final int MAX_COLORS = 64;
+    // Boundaries which didn't get a colour (a cell with more than 64 boundaries) are swept serially
+    private static final int NO_COLOR = -1;
+    // Boundaries inside of a compacted group aren't simulated and have no colour
+    private static final int DISABLED_COLOR = -2;
+    // Minimum amount of boundaries before the sweep is split between threads
+    private static final int PARALLEL_THRESHOLD = 4096;
+    // Amount of boundaries simulated by one task
+    private static final int CHUNK_SIZE = 1024;
+
+    // Boundary states of the active set
+    private static final byte ASLEEP = 0;
+    private static final byte ACTIVE = 1;
+    // Found balanced in the last sweep, goes to sleep unless a neighbour wakes it
+    private static final byte BALANCED = 2;
+    // Inside of a compacted group
+    private static final byte MERGED = 3;
+
+
+    private static class SweepTask extends RecursiveAction {
+        private final GasNetwork network;
+        private final int[] boundaries;
+        private final int start;
+        private final int end;
+        private final double deltaTime;
+        private final boolean skipCoupled;
+
+        public SweepTask(GasNetwork network, int[] boundaries, int start, int end, double deltaTime, boolean skipCoupled) {
+            this.network = network;
+            this.boundaries = boundaries;
+            this.start = start;
+            this.end = end;
+            this.deltaTime = deltaTime;
+            this.skipCoupled = skipCoupled;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start <= CHUNK_SIZE) {
+                network.sweepColor(boundaries, start, end, deltaTime, skipCoupled);
+            } else {
+                final int middle = (start + end) >>> 1;
+                invokeAll(new SweepTask(network, boundaries, start, middle, deltaTime, skipCoupled),
+                        new SweepTask(network, boundaries, middle, end, deltaTime, skipCoupled));
+            }
+        }
+    }
+
+    // Cell state
+    double[] kineticEnergy;
+    double[] totalMoles;
+    double[] volume;
+    double[] momentumX;
+    double[] momentumY;
+    double[] momentumZ;
+    double[] molarMass;
+
+    // Boundary state
+    int[] boundaryCell1;
+    int[] boundaryCell2;
+    double[] crossSection1;
+    double[] crossSection2;
+    double[] flowConstant;
+    double[] directionX;
+    double[] directionY;
+    double[] directionZ;
+
+    private GasCell[] cells;
+    // Amount of boundaries and owners referencing a cell, the cell leaves the network when it drops to 0
+    private int[] references;
+    // Colours used by the boundaries of a cell, one bit per colour
+    private long[] cellColors;
+    // Boundaries connected to a cell
+    private int[][] cellBoundaries;
+    private int[] cellBoundaryCount;
+    // Pipe run compaction, the first cell of a group holds the state of all of its members
+    private boolean[] merged;
+    private int[] groupFirst;
+    // Next member of the group, -1 for the last one
+    private int[] groupNext;
+    // Volume of a member while its state is held by the group
+    private double[] ownVolume;
+    // First cells of all groups
+    private int[] groups;
+    private int groupCount;
+    private int cellLength;
+    private int cellCount;
+    private int[] freeCells;
+    private int freeCellCount;
+
+    private GasBoundary[] boundaries;
+    private int boundaryCount;
+
+    // Boundary colouring
+    private int[] boundaryColor;
+    // Position of a boundary in the list of its colour
+    private int[] colorSlot;
+    private final int[][] colorBoundaries;
+    private final int[] colorSizes;
+    private int[] uncolored;
+    private int uncoloredCount;
+    private boolean parallel;
+    // Active boundaries grouped by colour for the parallel sweep, the uncoloured ones come last
+    private int[] colorActive;
+    private final int[] colorActiveStart;
+    // Created when the implicit solve is enabled
+    private GasImplicitSolver implicitSolver;
+
+    // Active set
+    private byte[] boundaryState;
+    // Result of the balance check after the last flow update
+    private boolean[] boundaryBalanced;
+    // Position of an active boundary in the active list
+    private int[] activeSlot;
+    private int[] activeBoundaries;
+    private int activeCount;
+    private double balanceTolerance;
+
+    private int segmentLength;
+    // Set when the connections changed since the runs were compacted
+    private boolean recompact;
+    // Cells whose runs have to be compacted again, all cells are scanned once the list outgrows the network
+    private int[] touchedCells;
+    private int touchedCount;
+    private boolean rescanAll;
+    // A cell was visited by the current compaction if its mark matches the pass number
+    private int[] compactMark;
+    private int compactPass;
+    private int[] run;
+
+    // Substep control
+    private double courantNumber;
+    private int maxSubsteps;
+    // Tick time of the last plan, 0 if the network wasn't planned yet
+    private double tickTime;
+    private double substepTime;
+    private int substepCount;
+    // Time which was advanced but not simulated yet
+    private double pendingTime;
+    // Set when boundaries, cell couplings or the active set changed since the last plan
+    private boolean replan;
+    // Set when boundaries or cell couplings changed since the coupled boundaries were collected
+    private boolean sortCoupled;
+    // Boundaries touching coupled cells, simulated on every advance
+    private boolean[] boundaryCoupled;
+    private int[] coupledBoundaries;
+    private int coupledCount;
+
+    public GasNetwork() {
+        this(0);
+    }
+
+    GasNetwork(int cellCapacity) {
+        allocateCells(cellCapacity);
+        allocateBoundaries(0);
+        freeCells = new int[0];
+        colorBoundaries = new int[MAX_COLORS][];
+        colorSizes = new int[MAX_COLORS];
+        uncolored = new int[0];
+        colorActive = new int[0];
+        colorActiveStart = new int[MAX_COLORS + 2];
+        activeBoundaries = new int[0];
+        groups = new int[0];
+        touchedCells = new int[0];
+        run = new int[16];
+        balanceTolerance = DEFAULT_BALANCE_TOLERANCE;
+        segmentLength = DEFAULT_SEGMENT_LENGTH;
+        courantNumber = DEFAULT_COURANT_NUMBER;
+        maxSubsteps = DEFAULT_MAX_SUBSTEPS;
+        boundaryCoupled = new boolean[0];
+        coupledBoundaries = new int[0];
+    }
+
+    private void allocateCells(int capacity) {
+        kineticEnergy = new double[capacity];
+        totalMoles = new double[capacity];
+        volume = new double[capacity];
+        momentumX = new double[capacity];
+        momentumY = new double[capacity];
+        momentumZ = new double[capacity];
+        molarMass = new double[capacity];
+        cells = new GasCell[capacity];
+        references = new int[capacity];
+        cellColors = new long[capacity];
+        cellBoundaries = new int[capacity][];
+        cellBoundaryCount = new int[capacity];
+        merged = new boolean[capacity];
+        groupFirst = new int[capacity];
+        groupNext = new int[capacity];
+        ownVolume = new double[capacity];
+        compactMark = new int[capacity];
+    }
+
+    private void growCells(int capacity) {
+        kineticEnergy = Arrays.copyOf(kineticEnergy, capacity);
+        totalMoles = Arrays.copyOf(totalMoles, capacity);
+        volume = Arrays.copyOf(volume, capacity);
+        momentumX = Arrays.copyOf(momentumX, capacity);
+        momentumY = Arrays.copyOf(momentumY, capacity);
+        momentumZ = Arrays.copyOf(momentumZ, capacity);
+        molarMass = Arrays.copyOf(molarMass, capacity);
+        cells = Arrays.copyOf(cells, capacity);
+        references = Arrays.copyOf(references, capacity);
+        cellColors = Arrays.copyOf(cellColors, capacity);
+        cellBoundaries = Arrays.copyOf(cellBoundaries, capacity);
+        cellBoundaryCount = Arrays.copyOf(cellBoundaryCount, capacity);
+        merged = Arrays.copyOf(merged, capacity);
+        groupFirst = Arrays.copyOf(groupFirst, capacity);
+        groupNext = Arrays.copyOf(groupNext, capacity);
+        ownVolume = Arrays.copyOf(ownVolume, capacity);
+        compactMark = Arrays.copyOf(compactMark, capacity);
+    }
+
+    private void allocateBoundaries(int capacity) {
+        boundaryCell1 = new int[capacity];
+        boundaryCell2 = new int[capacity];
+        crossSection1 = new double[capacity];
+        crossSection2 = new double[capacity];
+        flowConstant = new double[capacity];
+        directionX = new double[capacity];
+        directionY = new double[capacity];
+        directionZ = new double[capacity];
+        boundaries = new GasBoundary[capacity];
+        boundaryColor = new int[capacity];
+        colorSlot = new int[capacity];
+        boundaryState = new byte[capacity];
+        boundaryBalanced = new boolean[capacity];
+        activeSlot = new int[capacity];
+    }
+
+    private void growBoundaries(int capacity) {
+        boundaryCell1 = Arrays.copyOf(boundaryCell1, capacity);
+        boundaryCell2 = Arrays.copyOf(boundaryCell2, capacity);
+        crossSection1 = Arrays.copyOf(crossSection1, capacity);
+        crossSection2 = Arrays.copyOf(crossSection2, capacity);
+        flowConstant = Arrays.copyOf(flowConstant, capacity);
+        directionX = Arrays.copyOf(directionX, capacity);
+        directionY = Arrays.copyOf(directionY, capacity);
+        directionZ = Arrays.copyOf(directionZ, capacity);
+        boundaries = Arrays.copyOf(boundaries, capacity);
+        boundaryColor = Arrays.copyOf(boundaryColor, capacity);
+        colorSlot = Arrays.copyOf(colorSlot, capacity);
+        boundaryState = Arrays.copyOf(boundaryState, capacity);
+        boundaryBalanced = Arrays.copyOf(boundaryBalanced, capacity);
+        activeSlot = Arrays.copyOf(activeSlot, capacity);
+    }
+
+    static void copyCell(GasNetwork from, int fromIndex, GasNetwork to, int toIndex) {
+        to.kineticEnergy[toIndex] = from.kineticEnergy[fromIndex];
+        to.totalMoles[toIndex] = from.totalMoles[fromIndex];
+        to.volume[toIndex] = from.volume[fromIndex];
+        to.momentumX[toIndex] = from.momentumX[fromIndex];
+        to.momentumY[toIndex] = from.momentumY[fromIndex];
+        to.momentumZ[toIndex] = from.momentumZ[fromIndex];
+        to.molarMass[toIndex] = from.molarMass[fromIndex];
+    }
+
+    private void copyBoundary(int fromIndex, int toIndex) {
+        boundaryCell1[toIndex] = boundaryCell1[fromIndex];
+        boundaryCell2[toIndex] = boundaryCell2[fromIndex];
+        crossSection1[toIndex] = crossSection1[fromIndex];
+        crossSection2[toIndex] = crossSection2[fromIndex];
+        flowConstant[toIndex] = flowConstant[fromIndex];
+        directionX[toIndex] = directionX[fromIndex];
+        directionY[toIndex] = directionY[fromIndex];
+        directionZ[toIndex] = directionZ[fromIndex];
+    }
+
+    /**
+     * Puts a cell into this network or adds a reference to it if it already is a part of it.
+     * Every call has to be matched by a call to {@link #removeCell(GasCell)}.
+     */
+    public void addCell(GasCell cell) {
+        if(cell.network() == this) {
+            ++references[cell.index()];
+            return;
+        }
+
+        final int index;
+        if(freeCellCount > 0) {
+            index = freeCells[--freeCellCount];
+        } else {
+            if(cellLength == cells.length)
+                growCells(Math.max(cellLength * 2, 16));
+            index = cellLength++;
+        }
+        cells[index] = cell;
+        references[index] = 1;
+        cellColors[index] = 0;
+        cellBoundaryCount[index] = 0;
+        ++cellCount;
+        cell.attach(this, index);
+    }
+
+    /**
+     * Drops a reference to the cell, once nothing references it the cell leaves
+     * the network and keeps its state in a private storage.
+     */
+    public void removeCell(GasCell cell) {
+        if(cell.network() != this)
+            throw new IllegalArgumentException("Cell is not a part of this network");
+        final int index = cell.index();
+        if(--references[index] > 0)
+            return;
+
+        if(merged[index])
+            expandGroup(groupFirst[index]);
+        cell.detach();
+        cells[index] = null;
+        --cellCount;
+        if(freeCellCount == freeCells.length)
+            freeCells = Arrays.copyOf(freeCells, Math.max(freeCells.length * 2, 16));
+        freeCells[freeCellCount++] = index;
+    }
+
+    public void add(GasBoundary boundary) {
+        if(boundary.network() != null)
+            throw new IllegalArgumentException("Boundary is already a part of a network");
+        addCell(boundary.cell1());
+        addCell(boundary.cell2());
+        // Connections are only added to cells which simulate their own state
+        if(merged[boundary.cell1().index()])
+            expandGroup(groupFirst[boundary.cell1().index()]);
+        if(merged[boundary.cell2().index()])
+            expandGroup(groupFirst[boundary.cell2().index()]);
+
+        if(boundaryCount == boundaries.length)
+            growBoundaries(Math.max(boundaryCount * 2, 16));
+        final int index = boundaryCount++;
+        boundaries[index] = boundary;
+        boundaryCell1[index] = boundary.cell1().index();
+        boundaryCell2[index] = boundary.cell2().index();
+        crossSection1[index] = boundary.crossSection1();
+        crossSection2[index] = boundary.crossSection2();
+        flowConstant[index] = boundary.getFlowConstant();
+        directionX[index] = boundary.directionX();
+        directionY[index] = boundary.directionY();
+        directionZ[index] = boundary.directionZ();
+        boundary.attach(this, index);
+        assignColor(index);
+        linkBoundary(boundaryCell1[index], index);
+        linkBoundary(boundaryCell2[index], index);
+        boundaryState[index] = ASLEEP;
+        boundaryBalanced[index] = false;
+        // A new connection can upset the balance of both cells
+        wakeCell(boundaryCell1[index]);
+        wakeCell(boundaryCell2[index]);
+        touchCell(boundaryCell1[index]);
+        touchCell(boundaryCell2[index]);
+        sortCoupled = true;
+        replan = true;
+    }
+
+    /**
+     * Removes the boundary in constant time by moving the last boundary into its place.
+     */
+    public void remove(GasBoundary boundary) {
+        if(boundary.network() != this)
+            return;
+        final int cell1 = boundary.cell1().index();
+        final int cell2 = boundary.cell2().index();
+        if(merged[cell1])
+            expandGroup(groupFirst[cell1]);
+        if(merged[cell2])
+            expandGroup(groupFirst[cell2]);
+
+        final int index = boundary.index();
+        final int last = --boundaryCount;
+        boundary.detach();
+        releaseColor(index);
+        unlinkBoundary(cell1, index);
+        unlinkBoundary(cell2, index);
+        if(boundaryState[index] == ACTIVE)
+            deactivate(index);
+        if(index != last) {
+            copyBoundary(last, index);
+            boundaries[index] = boundaries[last];
+            boundaries[index].attach(this, index);
+            moveColor(last, index);
+            // Cells of a group keep the links of their boundaries
+            relinkBoundary(boundaries[index].cell1().index(), last, index);
+            relinkBoundary(boundaries[index].cell2().index(), last, index);
+            boundaryState[index] = boundaryState[last];
+            boundaryBalanced[index] = boundaryBalanced[last];
+            if(boundaryState[index] == ACTIVE) {
+                activeSlot[index] = activeSlot[last];
+                activeBoundaries[activeSlot[index]] = index;
+            }
+        }
+        boundaries[last] = null;
+
+        removeCell(boundary.cell1());
+        removeCell(boundary.cell2());
+        touchCell(cell1);
+        touchCell(cell2);
+        sortCoupled = true;
+        replan = true;
+    }
+
+    /**
+     * Removes all boundaries and cells, the cells keep their current state.
+     */
+    public void clear() {
+        expandAll();
+        for(int i = 0; i < boundaryCount; ++i)
+            boundaries[i].detach();
+        for(int i = 0; i < cellLength; ++i) {
+            if(cells[i] != null)
+                cells[i].detach();
+        }
+        allocateCells(0);
+        allocateBoundaries(0);
+        cellLength = 0;
+        cellCount = 0;
+        freeCellCount = 0;
+        boundaryCount = 0;
+        Arrays.fill(colorSizes, 0);
+        uncoloredCount = 0;
+        activeCount = 0;
+        coupledCount = 0;
+        touchedCount = 0;
+        rescanAll = false;
+        sortCoupled = true;
+        recompact = false;
+        replan = true;
+    }
+
+    /**
+     * Gives the boundary the lowest colour which isn't used by any other boundary of its cells.
+     */
+    private void assignColor(int boundary) {
+        final int cell1 = boundaryCell1[boundary];
+        final int cell2 = boundaryCell2[boundary];
+        final long used = cellColors[cell1] | cellColors[cell2];
+        if(used == -1L) {
+            boundaryColor[boundary] = NO_COLOR;
+            if(uncoloredCount == uncolored.length)
+                uncolored = Arrays.copyOf(uncolored, Math.max(uncoloredCount * 2, 16));
+            colorSlot[boundary] = uncoloredCount;
+            uncolored[uncoloredCount++] = boundary;
+            return;
+        }
+
+        final int color = Long.numberOfTrailingZeros(~used);
+        final long bit = 1L << color;
+        cellColors[cell1] |= bit;
+        cellColors[cell2] |= bit;
+        boundaryColor[boundary] = color;
+
+        var list = colorBoundaries[color];
+        final int size = colorSizes[color];
+        if(list == null || size == list.length) {
+            list = list == null ? new int[16] : Arrays.copyOf(list, size * 2);
+            colorBoundaries[color] = list;
+        }
+        colorSlot[boundary] = size;
+        list[size] = boundary;
+        colorSizes[color] = size + 1;
+    }
+
+    /**
+     * Takes the boundary out of its colour, the last boundary of the colour takes its slot.
+     */
+    private void releaseColor(int boundary) {
+        final int color = boundaryColor[boundary];
+        if(color == DISABLED_COLOR)
+            return;
+        final int slot = colorSlot[boundary];
+        final int[] list;
+        final int last;
+        if(color == NO_COLOR) {
+            list = uncolored;
+            last = --uncoloredCount;
+        } else {
+            final long bit = 1L << color;
+            cellColors[boundaryCell1[boundary]] &= ~bit;
+            cellColors[boundaryCell2[boundary]] &= ~bit;
+            list = colorBoundaries[color];
+            last = --colorSizes[color];
+        }
+        if(slot != last) {
+            final int moved = list[last];
+            list[slot] = moved;
+            colorSlot[moved] = slot;
+        }
+    }
+
+    /**
+     * Follows a boundary which was moved to a new index, its cells and colour stay the same.
+     */
+    private void moveColor(int from, int to) {
+        final int color = boundaryColor[from];
+        boundaryColor[to] = color;
+        colorSlot[to] = colorSlot[from];
+        if(color == DISABLED_COLOR)
+            return;
+        if(color == NO_COLOR)
+            uncolored[colorSlot[to]] = to;
+        else
+            colorBoundaries[color][colorSlot[to]] = to;
+    }
+
+    private void linkBoundary(int cell, int boundary) {
+        var list = cellBoundaries[cell];
+        final int count = cellBoundaryCount[cell];
+        if(list == null || count == list.length) {
+            list = list == null ? new int[6] : Arrays.copyOf(list, count * 2);
+            cellBoundaries[cell] = list;
+        }
+        list[count] = boundary;
+        cellBoundaryCount[cell] = count + 1;
+    }
+
+    private void unlinkBoundary(int cell, int boundary) {
+        final var list = cellBoundaries[cell];
+        final int last = --cellBoundaryCount[cell];
+        for(int i = 0; i <= last; ++i) {
+            if(list[i] == boundary) {
+                list[i] = list[last];
+                return;
+            }
+        }
+    }
+
+    private void relinkBoundary(int cell, int from, int to) {
+        final var list = cellBoundaries[cell];
+        for(int i = 0; i < cellBoundaryCount[cell]; ++i) {
+            if(list[i] == from) {
+                list[i] = to;
+                return;
+            }
+        }
+    }
+
+    private void activate(int boundary) {
+        if(activeCount == activeBoundaries.length)
+            activeBoundaries = Arrays.copyOf(activeBoundaries, Math.max(activeCount * 2, 16));
+        boundaryState[boundary] = ACTIVE;
+        activeSlot[boundary] = activeCount;
+        activeBoundaries[activeCount++] = boundary;
+    }
+
+    private void deactivate(int boundary) {
+        final int slot = activeSlot[boundary];
+        final int last = --activeCount;
+        if(slot != last) {
+            final int moved = activeBoundaries[last];
+            activeBoundaries[slot] = moved;
+            activeSlot[moved] = slot;
+        }
+        boundaryState[boundary] = ASLEEP;
+    }
+
+    /**
+     * Wakes up all boundaries of the cell, called whenever the cell state is changed
+     * outside of the flow update (e.g. by a piston changing its volume).
+     */
+    void wakeCell(int cell) {
+        // Woken boundaries may need smaller substeps than the rest of the active ones
+        if(wakeNeighbours(cell))
+            replan = true;
+    }
+
+    /**
+     * Prepares a cell for a change of its state from the outside, the cell gets its
+     * own state back if it's a part of a group and its boundaries are woken up.
+     */
+    void changeCell(int cell) {
+        if(merged[cell])
+            expandGroup(groupFirst[cell]);
+        wakeCell(cell);
+    }
+
+    /**
+     * Checks whether the boundary moves any gas, the pressures of both cells have to match
+     * and the gas in them has to be at rest, both within the balance tolerance.
+     */
+    private boolean balanced(int boundary) {
+        final int cell1 = boundaryCell1[boundary];
+        final int cell2 = boundaryCell2[boundary];
+        final double pressure1 = pressure(cell1);
+        final double pressure2 = pressure(cell2);
+        if(!(Math.abs(pressure1 - pressure2) <= balanceTolerance * Math.max(pressure1, pressure2)))
+            return false;
+        return atRest(cell1, pressure1) && atRest(cell2, pressure2);
+    }
+
+    // Speed of the gas is below the tolerance fraction of the speed of sound
+    private boolean atRest(int cell, double pressure) {
+        final double momentumSqr = momentumX[cell] * momentumX[cell] + momentumY[cell] * momentumY[cell] + momentumZ[cell] * momentumZ[cell];
+        // |p|² / m² <= tol² * c², with c² = γ * P * V / m
+        return momentumSqr <= balanceTolerance * balanceTolerance * mass(cell) * GasSimulator.HEAT_CAPACITY_RATIO * pressure * volume[cell];
+    }
+
+    private void flow(int boundary, double deltaTime) {
+        GasSimulator.flow(this, boundary, deltaTime);
+        boundaryBalanced[boundary] = balanced(boundary);
+    }
+
+    /**
+     * Runs the flow update of every active boundary.
+     */
+    public void simulate(double deltaTime) {
+        sweep(deltaTime, false);
+    }
+
+    private void sweep(double deltaTime, boolean skipCoupled) {
+        // Boundaries woken up by this sweep are simulated in the next one
+        final int count = activeCount;
+        if(implicitSolver != null) {
+            for(int i = 0; i < count; ++i)
+                boundaryBalanced[activeBoundaries[i]] = true;
+            implicitSolver.solve(activeBoundaries, count, skipCoupled ? boundaryCoupled : null, deltaTime, balanceTolerance, boundaryBalanced);
+            for(int i = 0; i < count; ++i) {
+                final int boundary = activeBoundaries[i];
+                boundaryBalanced[boundary] = boundaryBalanced[boundary] && balanced(boundary);
+            }
+        } else if(parallel && count >= PARALLEL_THRESHOLD) {
+            groupActiveByColor(count);
+            // Boundaries of one colour don't share cells, so they can be simulated in any order
+            for(int color = 0; color < MAX_COLORS; ++color) {
+                final int start = colorActiveStart[color];
+                final int end = colorActiveStart[color + 1];
+                if(end - start <= CHUNK_SIZE)
+                    sweepColor(colorActive, start, end, deltaTime, skipCoupled);
+                else
+                    PhysicsWorld.solverPool().invoke(new SweepTask(this, colorActive, start, end, deltaTime, skipCoupled));
+            }
+            sweepColor(colorActive, colorActiveStart[MAX_COLORS], count, deltaTime, skipCoupled);
+        } else {
+            for(int i = 0; i < count; ++i) {
+                final int boundary = activeBoundaries[i];
+                if(!skipCoupled || !boundaryCoupled[boundary])
+                    flow(boundary, deltaTime);
+            }
+        }
+        mixGroups();
+        updateActiveSet(count, skipCoupled);
+    }
+
+    /**
+     * A group stands in for a whole pipe segment, so it is treated as a well mixed volume
+     * without bulk motion. Momentum pushed into it by the sweep is turned back into heat.
+     */
+    private void mixGroups() {
+        for(int i = 0; i < groupCount; ++i) {
+            final int first = groups[i];
+            kineticEnergy[first] += momentumKineticEnergy(first);
+            momentumX[first] = 0;
+            momentumY[first] = 0;
+            momentumZ[first] = 0;
+        }
+    }
+
+    private void sweepColor(int[] list, int start, int end, double deltaTime, boolean skipCoupled) {
+        for(int i = start; i < end; ++i) {
+            final int boundary = list[i];
+            if(!skipCoupled || !boundaryCoupled[boundary])
+                flow(boundary, deltaTime);
+        }
+    }
+
+    /**
+     * Sorts the first active boundaries by their colour, so that the parallel sweep
+     * only visits the active ones. The boundaries of colour c end up between
+     * {@code colorActiveStart[c]} and {@code colorActiveStart[c + 1]}.
+     */
+    private void groupActiveByColor(int count) {
+        if(colorActive.length < count)
+            colorActive = new int[activeBoundaries.length];
+        final int[] start = colorActiveStart;
+        Arrays.fill(start, 0);
+        for(int i = 0; i < count; ++i) {
+            final int color = boundaryColor[activeBoundaries[i]];
+            ++start[(color == NO_COLOR ? MAX_COLORS : color) + 1];
+        }
+        for(int color = 0; color <= MAX_COLORS; ++color)
+            start[color + 1] += start[color];
+        // Starts are moved forward while filling and then shifted back by one colour
+        for(int i = 0; i < count; ++i) {
+            final int boundary = activeBoundaries[i];
+            final int color = boundaryColor[boundary];
+            colorActive[start[color == NO_COLOR ? MAX_COLORS : color]++] = boundary;
+        }
+        System.arraycopy(start, 0, start, 1, MAX_COLORS + 1);
+        start[0] = 0;
+    }
+
+    /**
+     * Puts the balanced boundaries of the last sweep to sleep, unless a boundary
+     * next to them still moved gas, those wake up all of their neighbours instead.
+     */
+    private void updateActiveSet(int count, boolean skipCoupled) {
+        for(int i = 0; i < count; ++i) {
+            final int boundary = activeBoundaries[i];
+            if(boundaryBalanced[boundary] && (!skipCoupled || !boundaryCoupled[boundary]))
+                boundaryState[boundary] = BALANCED;
+        }
+        for(int i = 0; i < count; ++i) {
+            final int boundary = activeBoundaries[i];
+            if(!boundaryBalanced[boundary] && (!skipCoupled || !boundaryCoupled[boundary])) {
+                wakeNeighbours(boundaryCell1[boundary]);
+                wakeNeighbours(boundaryCell2[boundary]);
+            }
+        }
+        int kept = 0;
+        for(int i = 0; i < activeCount; ++i) {
+            final int boundary = activeBoundaries[i];
+            if(boundaryState[boundary] == BALANCED) {
+                boundaryState[boundary] = ASLEEP;
+            } else {
+                activeSlot[boundary] = kept;
+                activeBoundaries[kept++] = boundary;
+            }
+        }
+        activeCount = kept;
+    }
+
+    /**
+     * @return True if any boundary was asleep
+     */
+    private boolean wakeNeighbours(int cell) {
+        if(!merged[cell])
+            return wakeBoundaries(cell);
+        // Boundaries of a group stay linked to the member they were added to
+        boolean woken = false;
+        for(int member = groupFirst[cell]; member != -1; member = groupNext[member])
+            woken |= wakeBoundaries(member);
+        return woken;
+    }
+
+    private boolean wakeBoundaries(int cell) {
+        final var list = cellBoundaries[cell];
+        boolean woken = false;
+        for(int i = 0; i < cellBoundaryCount[cell]; ++i) {
+            final int boundary = list[i];
+            final byte state = boundaryState[boundary];
+            if(state == ASLEEP) {
+                activate(boundary);
+                woken = true;
+            } else if(state != MERGED) {
+                boundaryState[boundary] = ACTIVE;
+            }
+        }
+        return woken;
+    }
+
+    /**
+     * Finds straight runs of cells which only connect to the previous and the next cell of the run
+     * over boundaries with the same cross-section, flow constant and direction and compacts them
+     * into groups of at most {@link #setSegmentLength(int) segment length} cells.
+     */
+    private void compact() {
+        recompact = false;
+        if(segmentLength >= 2) {
+            if(++compactPass == 0) {
+                Arrays.fill(compactMark, 0);
+                compactPass = 1;
+            }
+            // Only the runs going through changed cells are scanned, the others are compacted already
+            if(rescanAll) {
+                for(int cell = 0; cell < cellLength; ++cell)
+                    compactRun(cell);
+            } else {
+                for(int i = 0; i < touchedCount; ++i)
+                    compactRun(touchedCells[i]);
+            }
+        }
+        touchedCount = 0;
+        rescanAll = false;
+    }
+
+    /**
+     * Compacts the run going through the given cell, if it wasn't visited by this compaction yet.
+     */
+    private void compactRun(int start) {
+        if(start >= cellLength || cells[start] == null || compactMark[start] == compactPass || !runCell(start))
+            return;
+        // Go back to the beginning of the run
+        int first = start;
+        while(true) {
+            final int previous = boundaryCell1[runBoundary(first, false)];
+            if(previous == start || compactMark[previous] == compactPass || !runCell(previous) || !sameRun(previous, first))
+                break;
+            first = previous;
+        }
+
+        int length = 0;
+        int cell = first;
+        while(true) {
+            compactMark[cell] = compactPass;
+            if(length == run.length)
+                run = Arrays.copyOf(run, length * 2);
+            run[length++] = cell;
+            final int next = boundaryCell2[runBoundary(cell, true)];
+            if(compactMark[next] == compactPass || !runCell(next) || !sameRun(cell, next))
+                break;
+            cell = next;
+        }
+
+        // The end cells stay resolved when they exchange gas with junctions and machines, next to a group they can be merged
+        final int begin = merged[boundaryCell1[runBoundary(first, false)]] ? 0 : 1;
+        final int end = merged[boundaryCell2[runBoundary(run[length - 1], true)]] ? length : length - 1;
+        for(int i = begin; i + 1 < end; i += segmentLength)
+            mergeGroup(run, i, Math.min(i + segmentLength, end));
+    }
+
+    /**
+     * Marks the run going through the cell for compaction on the next plan.
+     */
+    private void touchCell(int cell) {
+        recompact = true;
+        if(rescanAll)
+            return;
+        if(touchedCount == touchedCells.length) {
+            // A full scan is cheaper than a list longer than the network
+            if(touchedCount >= cellLength) {
+                rescanAll = true;
+                touchedCount = 0;
+                return;
+            }
+            touchedCells = Arrays.copyOf(touchedCells, Math.max(touchedCount * 2, 16));
+        }
+        touchedCells[touchedCount++] = cell;
+    }
+
+    // Boundary of a run cell leading to the next (outgoing) or to the previous cell
+    private int runBoundary(int cell, boolean outgoing) {
+        final var list = cellBoundaries[cell];
+        return (boundaryCell1[list[0]] == cell) == outgoing ? list[0] : list[1];
+    }
+
+    /**
+     * Checks whether the cell can be a part of a run, it has to simulate its own
+     * state and have one incoming and one outgoing boundary which are the same.
+     */
+    private boolean runCell(int cell) {
+        if(merged[cell] || cellBoundaryCount[cell] != 2 || cells[cell].isCoupled())
+            return false;
+        final int boundary1 = cellBoundaries[cell][0];
+        final int boundary2 = cellBoundaries[cell][1];
+        final int incoming, outgoing;
+        if(boundaryCell2[boundary1] == cell && boundaryCell1[boundary2] == cell) {
+            incoming = boundary1;
+            outgoing = boundary2;
+        } else if(boundaryCell1[boundary1] == cell && boundaryCell2[boundary2] == cell) {
+            incoming = boundary2;
+            outgoing = boundary1;
+        } else {
+            return false;
+        }
+        // Boundaries rewired to a group can't be a part of another one
+        if(boundaryState[incoming] == MERGED || boundaryState[outgoing] == MERGED)
+            return false;
+        return crossSection1[incoming] == crossSection2[incoming] && sameBoundary(incoming, outgoing);
+    }
+
+    private boolean sameBoundary(int boundary1, int boundary2) {
+        return crossSection1[boundary1] == crossSection1[boundary2] && crossSection2[boundary1] == crossSection2[boundary2]
+                && flowConstant[boundary1] == flowConstant[boundary2] && directionX[boundary1] == directionX[boundary2]
+                && directionY[boundary1] == directionY[boundary2] && directionZ[boundary1] == directionZ[boundary2];
+    }
+
+    private boolean sameRun(int cell, int next) {
+        return molarMass[cell] == molarMass[next] && sameBoundary(runBoundary(cell, true), runBoundary(next, true));
+    }
+
+    /**
+     * Moves the state of the given run cells into the first one, boundaries between them are disabled
+     * and boundaries leading out of the group are connected to the first cell.
+     */
+    private void mergeGroup(int[] run, int start, int end) {
+        final int first = run[start];
+        double energy = 0, moles = 0, groupVolume = 0;
+        double groupMomentumX = 0, groupMomentumY = 0, groupMomentumZ = 0;
+        for(int i = start; i < end; ++i) {
+            final int cell = run[i];
+            energy += kineticEnergy[cell];
+            moles += totalMoles[cell];
+            groupVolume += volume[cell];
+            groupMomentumX += momentumX[cell];
+            groupMomentumY += momentumY[cell];
+            groupMomentumZ += momentumZ[cell];
+            ownVolume[cell] = volume[cell];
+            merged[cell] = true;
+            groupFirst[cell] = first;
+            groupNext[cell] = i + 1 < end ? run[i + 1] : -1;
+        }
+        kineticEnergy[first] = energy;
+        totalMoles[first] = moles;
+        volume[first] = groupVolume;
+        momentumX[first] = groupMomentumX;
+        momentumY[first] = groupMomentumY;
+        momentumZ[first] = groupMomentumZ;
+        if(groupCount == groups.length)
+            groups = Arrays.copyOf(groups, Math.max(groupCount * 2, 16));
+        groups[groupCount++] = first;
+
+        for(int i = start; i < end; ++i) {
+            final int cell = run[i];
+            final var list = cellBoundaries[cell];
+            for(int j = 0; j < cellBoundaryCount[cell]; ++j) {
+                final int boundary = list[j];
+                if(boundaryState[boundary] == MERGED)
+                    continue;
+                final boolean inside1 = inGroup(boundaryCell1[boundary], first);
+                final boolean inside2 = inGroup(boundaryCell2[boundary], first);
+                releaseColor(boundary);
+                if(inside1 && inside2) {
+                    if(boundaryState[boundary] == ACTIVE)
+                        deactivate(boundary);
+                    boundaryState[boundary] = MERGED;
+                    boundaryColor[boundary] = DISABLED_COLOR;
+                } else {
+                    if(inside1)
+                        boundaryCell1[boundary] = first;
+                    if(inside2)
+                        boundaryCell2[boundary] = first;
+                    assignColor(boundary);
+                }
+            }
+        }
+        wakeNeighbours(first);
+        sortCoupled = true;
+    }
+
+    private boolean inGroup(int cell, int first) {
+        return merged[cell] && groupFirst[cell] == first;
+    }
+
+    /**
+     * Gives every member of the group its share of the group state and restores their boundaries.
+     */
+    private void expandGroup(int first) {
+        final double energy = kineticEnergy[first];
+        final double moles = totalMoles[first];
+        final double groupVolume = volume[first];
+        final double groupMomentumX = momentumX[first];
+        final double groupMomentumY = momentumY[first];
+        final double groupMomentumZ = momentumZ[first];
+        for(int cell = first; cell != -1; cell = groupNext[cell]) {
+            final double share = ownVolume[cell] / groupVolume;
+            kineticEnergy[cell] = energy * share;
+            totalMoles[cell] = moles * share;
+            volume[cell] = ownVolume[cell];
+            momentumX[cell] = groupMomentumX * share;
+            momentumY[cell] = groupMomentumY * share;
+            momentumZ[cell] = groupMomentumZ * share;
+        }
+
+        // Colours have to be released from the first cell before the boundaries get their cells back
+        for(int cell = first; cell != -1; cell = groupNext[cell]) {
+            final var list = cellBoundaries[cell];
+            for(int i = 0; i < cellBoundaryCount[cell]; ++i) {
+                final int boundary = list[i];
+                if(boundaryState[boundary] != MERGED)
+                    releaseColor(boundary);
+            }
+        }
+        for(int cell = first; cell != -1; cell = groupNext[cell]) {
+            final var list = cellBoundaries[cell];
+            for(int i = 0; i < cellBoundaryCount[cell]; ++i) {
+                final int boundary = list[i];
+                if(boundaryState[boundary] == MERGED)
+                    continue;
+                final var view = boundaries[boundary];
+                if(inGroup(view.cell1().index(), first))
+                    boundaryCell1[boundary] = view.cell1().index();
+                if(inGroup(view.cell2().index(), first))
+                    boundaryCell2[boundary] = view.cell2().index();
+                assignColor(boundary);
+            }
+        }
+        // Disabled boundaries are linked to both of their cells, they are enabled on the first one
+        for(int cell = first; cell != -1; cell = groupNext[cell]) {
+            final var list = cellBoundaries[cell];
+            for(int i = 0; i < cellBoundaryCount[cell]; ++i) {
+                final int boundary = list[i];
+                if(boundaryState[boundary] == MERGED) {
+                    boundaryState[boundary] = ASLEEP;
+                    assignColor(boundary);
+                }
+            }
+        }
+
+        for(int i = 0; i < groupCount; ++i) {
+            if(groups[i] == first) {
+                groups[i] = groups[--groupCount];
+                break;
+            }
+        }
+        int cell = first;
+        while(cell != -1) {
+            final int next = groupNext[cell];
+            merged[cell] = false;
+            groupNext[cell] = -1;
+            wakeBoundaries(cell);
+            touchCell(cell);
+            cell = next;
+        }
+        sortCoupled = true;
+        replan = true;
+    }
+
+    private void expandAll() {
+        while(groupCount > 0)
+            expandGroup(groups[groupCount - 1]);
+    }
+
+    /**
+     * Called when the properties of a boundary change, pipe runs have to be found again.
+     */
+    void boundaryChanged(int boundary) {
+        final int cell1 = boundaries[boundary].cell1().index();
+        final int cell2 = boundaries[boundary].cell2().index();
+        changeCell(cell1);
+        changeCell(cell2);
+        touchCell(cell1);
+        touchCell(cell2);
+    }
+
+    /**
+     * Index of the cell holding the state of the given cell.
+     */
+    int stateCell(int cell) {
+        return merged[cell] ? groupFirst[cell] : cell;
+    }
+
+    /**
+     * Fraction of the state of {@link #stateCell(int)} which belongs to the given cell.
+     */
+    double share(int cell) {
+        return merged[cell] ? ownVolume[cell] / volume[groupFirst[cell]] : 1;
+    }
+
+    double cellVolume(int cell) {
+        return merged[cell] ? ownVolume[cell] : volume[cell];
+    }
+
+    /**
+     * Advances the network by the given time. Boundaries touching a {@link GasCell#setCoupled(boolean) coupled}
+     * cell are simulated on every call with the full time, so that they keep up with the bodies driving those cells. All other
+     * boundaries are only simulated once a full substep has accumulated. Before the first plan
+     * every call runs a single sweep over all boundaries.
+     */
+    public void advance(double deltaTime) {
+        if(tickTime == 0) {
+            simulate(deltaTime);
+            return;
+        }
+        // New boundaries may connect cells which need smaller substeps
+        if(replan)
+            planSubsteps(tickTime);
+
+        for(int i = 0; i < coupledCount; ++i) {
+            final int boundary = coupledBoundaries[i];
+            GasSimulator.flow(this, boundary, deltaTime);
+            // Gas pushed by the bodies spreads into the rest of the network
+            if(!balanced(boundary)) {
+                wakeNeighbours(boundaryCell1[boundary]);
+                wakeNeighbours(boundaryCell2[boundary]);
+            }
+        }
+
+        pendingTime += deltaTime;
+        // Tolerate rounding, so that a tick split into n substeps runs exactly n sweeps
+        final double threshold = substepTime * (1 - 1E-9);
+        while(pendingTime >= threshold) {
+            sweep(substepTime, coupledCount > 0);
+            pendingTime -= substepTime;
+        }
+    }
+
+    /**
+     * Picks the substeps used for the following tick from the CFL condition, a pressure wave may only
+     * cross the given fraction ({@link #setCourantNumber(double)}) of a cell in one substep.
+     * Only cells of active boundaries are considered, cells are treated
+     * as cubes, the same as in {@link GasCell#changeVolume(double)}. Boundaries of coupled cells
+     * follow the physics steps instead, so a fast piston doesn't slow down the rest of the network.
+     * @return Amount of substeps in a tick
+     */
+    public int planSubsteps(double tickTime) {
+        if(recompact)
+            compact();
+        if(sortCoupled)
+            collectCoupled();
+        if(implicitSolver != null) {
+            // The implicit solve is stable with any step
+            substepCount = 1;
+            substepTime = tickTime;
+            this.tickTime = tickTime;
+            replan = false;
+            return substepCount;
+        }
+
+        // Largest ratio of wave speed to cell size
+        double maxRate = 0;
+        for(int i = 0; i < activeCount; ++i) {
+            final int boundary = activeBoundaries[i];
+            if(!boundaryCoupled[boundary])
+                maxRate = Math.max(maxRate, Math.max(waveRate(boundaryCell1[boundary]), waveRate(boundaryCell2[boundary])));
+        }
+        final double count = Math.ceil(tickTime * maxRate / courantNumber - 1E-9);
+        substepCount = (int) Math.max(Math.min(count, maxSubsteps), 1);
+        substepTime = tickTime / substepCount;
+        this.tickTime = tickTime;
+        replan = false;
+        return substepCount;
+    }
+
+    private void collectCoupled() {
+        if(boundaryCoupled.length < boundaries.length)
+            boundaryCoupled = new boolean[boundaries.length];
+        coupledCount = 0;
+        for(int i = 0; i < boundaryCount; ++i) {
+            final boolean coupled = cells[boundaryCell1[i]].isCoupled() || cells[boundaryCell2[i]].isCoupled();
+            boundaryCoupled[i] = coupled;
+            if(coupled) {
+                if(coupledCount == coupledBoundaries.length)
+                    coupledBoundaries = Arrays.copyOf(coupledBoundaries, Math.max(coupledCount * 2, 16));
+                coupledBoundaries[coupledCount++] = i;
+            }
+        }
+        sortCoupled = false;
+    }
+
+    private double waveRate(int cell) {
+        final double mass = mass(cell);
+        if(mass <= 0 || volume[cell] <= 0)
+            return 0;
+        final double momentumSqr = momentumX[cell] * momentumX[cell] + momentumY[cell] * momentumY[cell] + momentumZ[cell] * momentumZ[cell];
+        final double waveSpeed = Math.sqrt(momentumSqr) / mass + speedOfSound(cell);
+        final double rate = waveSpeed / Math.cbrt(volume[cell]);
+        // Broken cells are skipped by the flow update as well
+        return Double.isFinite(rate) ? rate : 0;
+    }
+
+    /**
+     * Called when the coupling of a cell changes, the boundaries get sorted again on the next advance.
+     */
+    void couplingChanged(int cell) {
+        if(merged[cell])
+            expandGroup(groupFirst[cell]);
+        touchCell(cell);
+        sortCoupled = true;
+        replan = true;
+    }
+
+    public void setCourantNumber(double courantNumber) {
+        if(!(courantNumber > 0))
+            throw new IllegalArgumentException("Courant number must be positive");
+        this.courantNumber = courantNumber;
+    }
+
+    /**
+     * Enables sweeping the colours of large networks on multiple threads. The boundaries are
+     * then simulated in a different order, so the results differ slightly from a serial sweep.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Replaces the flow sweep with one {@link GasImplicitSolver implicit pressure solve} per tick.
+     * Boundaries of coupled cells are still simulated explicitly on every advance.
+     * The solve doesn't track the motion of the gas, so pressure waves don't overshoot.
+     */
+    public void setImplicit(boolean implicit) {
+        if(implicit == (implicitSolver != null))
+            return;
+        implicitSolver = implicit ? new GasImplicitSolver(this) : null;
+        replan = true;
+    }
+
+    public boolean isImplicit() {
+        return implicitSolver != null;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Amount of colours used by the boundaries, boundaries of one colour can be simulated in parallel.
+     */
+    public int colorCount() {
+        int count = 0;
+        for(int color = 0; color < MAX_COLORS; ++color) {
+            if(colorSizes[color] > 0)
+                count = color + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Sets the relative pressure difference and the fraction of the speed of sound
+     * below which a boundary is considered balanced and put to sleep, 0 keeps all boundaries active.
+     */
+    public void setBalanceTolerance(double balanceTolerance) {
+        if(!(balanceTolerance >= 0))
+            throw new IllegalArgumentException("Balance tolerance can't be negative");
+        this.balanceTolerance = balanceTolerance;
+    }
+
+    /**
+     * Amount of boundaries which are currently simulated.
+     */
+    public int activeCount() {
+        return activeCount;
+    }
+
+    /**
+     * Sets the maximum amount of pipe cells compacted into a single group, values below 2 disable the compaction.
+     */
+    public void setSegmentLength(int segmentLength) {
+        if(segmentLength == this.segmentLength)
+            return;
+        this.segmentLength = segmentLength;
+        expandAll();
+        // Runs which were too short for the old length may be compacted now
+        rescanAll = true;
+        recompact = true;
+    }
+
+    /**
+     * Amount of cells which are simulated as a part of another cell.
+     */
+    public int compactedCount() {
+        int count = 0;
+        for(int i = 0; i < cellLength; ++i) {
+            if(merged[i] && groupFirst[i] != i)
+                ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Checks the bookkeeping of the colours, the active set and the groups against the boundaries.
+     * @throws IllegalStateException Describing the first broken invariant
+     */
+    void checkConsistency() {
+        final long[] colors = new long[cellLength];
+        int colored = 0;
+        int active = 0;
+        for(int boundary = 0; boundary < boundaryCount; ++boundary) {
+            final var view = boundaries[boundary];
+            if(view.network() != this || view.index() != boundary)
+                throw new IllegalStateException("Boundary " + boundary + " has a wrong index");
+            final int cell1 = view.cell1().index();
+            final int cell2 = view.cell2().index();
+            final byte state = boundaryState[boundary];
+            if(state == MERGED) {
+                if(!merged[cell1] || !inGroup(cell2, groupFirst[cell1]) || boundaryColor[boundary] != DISABLED_COLOR)
+                    throw new IllegalStateException("Disabled boundary " + boundary + " isn't inside of a group");
+                continue;
+            }
+            if(boundaryCell1[boundary] != stateCell(cell1) || boundaryCell2[boundary] != stateCell(cell2))
+                throw new IllegalStateException("Boundary " + boundary + " isn't connected to the state cells");
+
+            final int color = boundaryColor[boundary];
+            if(color == NO_COLOR) {
+                if(colorSlot[boundary] >= uncoloredCount || uncolored[colorSlot[boundary]] != boundary)
+                    throw new IllegalStateException("Boundary " + boundary + " is missing from the uncoloured list");
+            } else if(color >= 0 && color < MAX_COLORS) {
+                if(colorSlot[boundary] >= colorSizes[color] || colorBoundaries[color][colorSlot[boundary]] != boundary)
+                    throw new IllegalStateException("Boundary " + boundary + " is missing from the list of colour " + color);
+                final long bit = 1L << color;
+                final int stateCell1 = boundaryCell1[boundary];
+                final int stateCell2 = boundaryCell2[boundary];
+                if(((colors[stateCell1] | colors[stateCell2]) & bit) != 0)
+                    throw new IllegalStateException("Colour " + color + " of boundary " + boundary + " is shared with another boundary of its cells");
+                colors[stateCell1] |= bit;
+                colors[stateCell2] |= bit;
+            } else {
+                throw new IllegalStateException("Boundary " + boundary + " has no colour");
+            }
+            ++colored;
+
+            if(state == ACTIVE) {
+                if(activeSlot[boundary] >= activeCount || activeBoundaries[activeSlot[boundary]] != boundary)
+                    throw new IllegalStateException("Boundary " + boundary + " is missing from the active list");
+                ++active;
+            } else if(state != ASLEEP) {
+                throw new IllegalStateException("Boundary " + boundary + " is left in state " + state);
+            }
+        }
+
+        int listed = uncoloredCount;
+        for(int color = 0; color < MAX_COLORS; ++color)
+            listed += colorSizes[color];
+        if(listed != colored)
+            throw new IllegalStateException("Colour lists hold " + listed + " boundaries instead of " + colored);
+        if(active != activeCount)
+            throw new IllegalStateException("Active list holds " + activeCount + " boundaries instead of " + active);
+        for(int cell = 0; cell < cellLength; ++cell) {
+            if(cells[cell] != null && cellColors[cell] != colors[cell])
+                throw new IllegalStateException("Colour mask of cell " + cell + " doesn't match its boundaries");
+        }
+
+        int members = 0;
+        for(int i = 0; i < groupCount; ++i) {
+            final int first = groups[i];
+            if(!inGroup(first, first))
+                throw new IllegalStateException("Group " + first + " doesn't start with its first cell");
+            double groupVolume = 0;
+            for(int cell = first; cell != -1; cell = groupNext[cell]) {
+                if(!inGroup(cell, first))
+                    throw new IllegalStateException("Cell " + cell + " is linked to group " + first + " without being a part of it");
+                groupVolume += ownVolume[cell];
+                ++members;
+            }
+            if(Math.abs(groupVolume - volume[first]) > 1E-12 * groupVolume)
+                throw new IllegalStateException("Volume of group " + first + " doesn't match its members");
+        }
+        for(int cell = 0; cell < cellLength; ++cell) {
+            if(merged[cell])
+                --members;
+        }
+        if(members != 0)
+            throw new IllegalStateException("Merged cells don't match the groups");
+    }
+
+    public void setMaxSubsteps(int maxSubsteps) {
+        if(maxSubsteps < 1)
+            throw new IllegalArgumentException("Substep limit must be at least 1");
+        this.maxSubsteps = maxSubsteps;
+    }
+
+    /**
+     * Amount of substeps in a tick picked by the last plan.
+     */
+    public int substepCount() {
+        return substepCount;
+    }
+
+    /**
+     * Publishes the state of all cells, should only be called by the simulating thread.
+     */
+    public void publish() {
+        for(int i = 0; i < cellLength; ++i) {
+            if(cells[i] != null)
+                cells[i].publish();
+        }
+    }
+
+    public int cellCount() {
+        return cellCount;
+    }
+
+    public int boundaryCount() {
+        return boundaryCount;
+    }
+
+    public double totalMoles() {
+        double moles = 0;
+        for(int i = 0; i < cellLength; ++i) {
+            // The first cell of a group holds the moles of all of its members
+            if(cells[i] != null && (!merged[i] || groupFirst[i] == i))
+                moles += totalMoles[i];
+        }
+        return moles;
+    }
+
+    double pressure(int cell) {
+        return GasCell.pressure(kineticEnergy[cell], volume[cell]);
+    }
+
+    double temperature(int cell) {
+        return GasCell.temperature(kineticEnergy[cell], totalMoles[cell]);
+    }
+
+    double mass(int cell) {
+        return totalMoles[cell] * molarMass[cell];
+    }
+
+    double dynamicPressure(int cell, double dirX, double dirY, double dirZ) {
+        if(totalMoles[cell] == 0 || kineticEnergy[cell] == 0 || volume[cell] == 0) return 0;
+        final double mass = mass(cell);
+        final double v = (momentumX[cell] * dirX + momentumY[cell] * dirY + momentumZ[cell] * dirZ) / mass;
+        final double density = mass / volume[cell];
+        final double staticPressure = pressure(cell);
+
+        final double speedOfSoundSqr = staticPressure * GasSimulator.HEAT_CAPACITY_RATIO / density;
+        final double machNumberSqr = v * v / speedOfSoundSqr;
+
+        final double x = 1 + ((GasSimulator.HEAT_CAPACITY_RATIO - 1) / 2) * machNumberSqr;
+        return staticPressure * Math.sqrt(x * x * x * x * x) - staticPressure;
+    }
+
+    double speedOfSound(int cell) {
+        final double density = mass(cell) / volume[cell];
+        if(density == 0)
+            return 0;
+        return Math.sqrt(pressure(cell) * GasSimulator.HEAT_CAPACITY_RATIO / density);
+    }
+
+    double momentumKineticEnergy(int cell) {
+        final double mass = mass(cell);
+        if(mass == 0)
+            return 0;
+
+        final double vX = momentumX[cell] / mass;
+        final double vY = momentumY[cell] / mass;
+        final double vZ = momentumZ[cell] / mass;
+        final double vSqr = vX * vX + vY * vY + vZ * vZ;
+
+        return 0.5 * vSqr * mass;
+    }
+}
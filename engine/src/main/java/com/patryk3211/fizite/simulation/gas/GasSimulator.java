@@ -0,0 +1,189 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.jetbrains.annotations.NotNull;
+
+public class GasSimulator {
+    public static final double GAS_CONSTANT = 8.31446261815324; // J / (K * mol)
+    public static final double HEAT_CAPACITY_RATIO = 1.4; // Assumes a 5 dimensional gas
+    public static final double CHOKED_FLOW_LIMIT = Math.pow(2 / (HEAT_CAPACITY_RATIO + 1), HEAT_CAPACITY_RATIO / (HEAT_CAPACITY_RATIO - 1));
+    public static final double CHOKED_FLOW_RATIO = Math.sqrt(HEAT_CAPACITY_RATIO) * Math.pow(2 / (HEAT_CAPACITY_RATIO + 1), (HEAT_CAPACITY_RATIO + 1) / (2 * (HEAT_CAPACITY_RATIO - 1)));
+    public static final double ATMOSPHERIC_PRESSURE = 101325; // Assume atmospheric pressure of 1013.25hPa
+
+    // This method calculates the mass flow rate
+    private static double flowRate(double p0, double p1, double t0) {
+        assert p0 >= p1 : "Flow rate assumes p0 > p1, please make sure that's the case";
+        if(p0 == 0)
+            return 0;
+
+        final double pressureRatio = p1 / p0;
+        double flowRate;
+        if(pressureRatio < CHOKED_FLOW_LIMIT) {
+            flowRate = CHOKED_FLOW_RATIO / Math.sqrt(GAS_CONSTANT * t0);
+        } else {
+            final double pRatioPower = Math.pow(pressureRatio, 1 / HEAT_CAPACITY_RATIO);
+            final double HCR_CONST = (2 * HEAT_CAPACITY_RATIO) / (HEAT_CAPACITY_RATIO - 1);
+            flowRate = pRatioPower * (pRatioPower - pressureRatio);
+            if(flowRate == 0)
+                return 0;
+            flowRate = Math.sqrt(HCR_CONST * flowRate / (GAS_CONSTANT * t0));
+        }
+
+        return flowRate * p0;
+    }
+
+    /**
+     * Mass flow rate per unit of pressure difference (the secant of the flow relation), used by
+     * the implicit solver. The flow relation has an infinite slope when the pressures match, so
+     * differences below the given fraction of p0 are raised to it.
+     */
+    static double conductance(double p0, double p1, double t0, double minDifference) {
+        if(p0 <= 0)
+            return 0;
+        final double difference = Math.max(p0 - p1, minDifference * p0);
+        return flowRate(p0, p0 - difference, t0) / difference;
+    }
+
+    /**
+     * Exchanges gas between the two cells of a boundary, works directly on the packed
+     * network arrays and doesn't allocate, since it runs for every boundary on every physics step.
+     */
+    static void flow(@NotNull GasNetwork network, int boundary, double dT) {
+        final int cell1 = network.boundaryCell1[boundary];
+        final int cell2 = network.boundaryCell2[boundary];
+        final double flowConstant = network.flowConstant[boundary];
+        // Unit vector pointing from cell1 to cell2
+        final double dirX = network.directionX[boundary];
+        final double dirY = network.directionY[boundary];
+        final double dirZ = network.directionZ[boundary];
+
+        final double[] kineticEnergy = network.kineticEnergy;
+        final double[] totalMoles = network.totalMoles;
+        final double[] momentumX = network.momentumX;
+        final double[] momentumY = network.momentumY;
+        final double[] momentumZ = network.momentumZ;
+
+        final double c1p = network.pressure(cell1) + network.dynamicPressure(cell1, dirX, dirY, dirZ);
+        final double c2p = network.pressure(cell2) + network.dynamicPressure(cell2, -dirX, -dirY, -dirZ);
+        final double c1t = network.temperature(cell1);
+        final double c2t = network.temperature(cell2);
+
+        if(Double.isNaN(c1p) || Double.isNaN(c2p))
+            // Abort if NaN is found
+            return;
+
+        // Determine the flow direction
+        final int source, sink;
+        final double p0, p1, t0, c0, c1;
+        final double flowDirX, flowDirY, flowDirZ;
+        if(c1p >= c2p) {
+            source = cell1;
+            sink = cell2;
+            p0 = c1p;
+            p1 = c2p;
+            t0 = c1t;
+            c0 = network.crossSection1[boundary];
+            c1 = network.crossSection2[boundary];
+            flowDirX = dirX;
+            flowDirY = dirY;
+            flowDirZ = dirZ;
+        } else {
+            source = cell2;
+            sink = cell1;
+            p0 = c2p;
+            p1 = c1p;
+            t0 = c2t;
+            c0 = network.crossSection2[boundary];
+            c1 = network.crossSection1[boundary];
+            flowDirX = -dirX;
+            flowDirY = -dirY;
+            flowDirZ = -dirZ;
+        }
+
+        double flow = dT * flowRate(p0, p1, t0) * flowConstant;
+        // Clamp flow at 90% of total source moles
+        flow = Math.min(flow, 0.9 * totalMoles[source]);
+        final double flowFraction = flow == 0 ? 0 : flow / totalMoles[source];
+        final double fractionMass = flowFraction * network.mass(source);
+        final double fractionVolume = flowFraction * network.volume[source];
+
+        if(flow > 0) {
+            final double EkMomentum0 = network.momentumKineticEnergy(source) + network.momentumKineticEnergy(sink);
+
+            final double EkMole = kineticEnergy[source] / totalMoles[source];
+            // Take flow out of source...
+            totalMoles[source] += -flow;
+            kineticEnergy[source] += -EkMole * flow;
+            // ...and put it into the sink
+            totalMoles[sink] += flow;
+            kineticEnergy[sink] += EkMole * flow;
+
+            // The moved gas carries its share of the source momentum with it
+            final double deltaX = momentumX[source] * flowFraction;
+            final double deltaY = momentumY[source] * flowFraction;
+            final double deltaZ = momentumZ[source] * flowFraction;
+            momentumX[sink] += deltaX;
+            momentumY[sink] += deltaY;
+            momentumZ[sink] += deltaZ;
+            momentumX[source] += -deltaX;
+            momentumY[source] += -deltaY;
+            momentumZ[source] += -deltaZ;
+
+            final double EkMomentum1 = network.momentumKineticEnergy(source) + network.momentumKineticEnergy(sink);
+            kineticEnergy[sink] += EkMomentum0 - EkMomentum1;
+        }
+
+        final double sinkMass = network.mass(sink);
+        final double sourceMass = network.mass(source);
+
+        final double sinkSpeedOfSound = network.speedOfSound(sink);
+        final double sourceSpeedOfSound = network.speedOfSound(source);
+
+        final double sinkInitialX = momentumX[sink];
+        final double sinkInitialY = momentumY[sink];
+        final double sinkInitialZ = momentumZ[sink];
+        final double sourceInitialX = momentumX[source];
+        final double sourceInitialY = momentumY[source];
+        final double sourceInitialZ = momentumZ[source];
+
+        if(c1 > 0) {
+            final double sinkFractionVelocity = Math.min(fractionVolume / c1 / dT, sinkSpeedOfSound);
+            final double sinkFractionMomentum = sinkFractionVelocity * fractionMass;
+            momentumX[sink] += sinkFractionMomentum * flowDirX;
+            momentumY[sink] += sinkFractionMomentum * flowDirY;
+            momentumZ[sink] += sinkFractionMomentum * flowDirZ;
+        }
+
+        if(c0 > 0) {
+            final double sourceFractionVelocity = Math.min(fractionVolume / c0 / dT, sourceSpeedOfSound);
+            final double sourceFractionMomentum = sourceFractionVelocity * fractionMass;
+            momentumX[source] += sourceFractionMomentum * flowDirX;
+            momentumY[source] += sourceFractionMomentum * flowDirY;
+            momentumZ[source] += sourceFractionMomentum * flowDirZ;
+        }
+
+        if(sourceMass > 0)
+            kineticEnergy[source] += -0.5 * sourceMass * velocitySqrChange(network, source, sourceMass, sourceInitialX, sourceInitialY, sourceInitialZ);
+        if(sinkMass > 0)
+            kineticEnergy[sink] += -0.5 * sinkMass * velocitySqrChange(network, sink, sinkMass, sinkInitialX, sinkInitialY, sinkInitialZ);
+
+        if(kineticEnergy[source] < 0)
+            kineticEnergy[source] = 0;
+        if(kineticEnergy[sink] < 0)
+            kineticEnergy[sink] = 0;
+    }
+
+    // Change of the squared velocity of a cell since it had the given momentum
+    private static double velocitySqrChange(GasNetwork network, int cell, double mass, double initialX, double initialY, double initialZ) {
+        final double invMass = 1 / mass;
+        final double v0X = initialX * invMass;
+        final double v0Y = initialY * invMass;
+        final double v0Z = initialZ * invMass;
+        final double v1X = network.momentumX[cell] * invMass;
+        final double v1Y = network.momentumY[cell] * invMass;
+        final double v1Z = network.momentumZ[cell] * invMass;
+
+        final double v0Sum = v0X * v0X + v0Y * v0Y + v0Z * v0Z;
+        final double v1Sum = v1X * v1X + v1Y * v1Y + v1Z * v1Z;
+        return v1Sum - v0Sum;
+    }
+}
@@ -0,0 +1,248 @@
+package com.patryk3211.fizite.simulation.physics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Quantized states of a set of rigid bodies, as they are sent to the clients. All values are fixed
+ * point numbers written as variable length integers, the body indices are written as ranges
+ * of consecutive indices, so a machine made of several bodies costs a single range.
+ * The variable length integers have the same format as the ones of Minecraft packets.
+ */
+public class BodyStates {
+    // Fixed point scales, 1/4096 of a block, 1/65536 of a radian and 1/1024 of a block per second
+    public static final double POSITION_SCALE = 4096;
+    public static final double ANGLE_SCALE = 65536;
+    public static final double VELOCITY_SCALE = 1024;
+    // Share of an index range attributed to every body when estimating the packet size
+    private static final int INDEX_BYTES = 2;
+
+    private int count;
+    private int[] indices;
+    private long[] positionX;
+    private long[] positionY;
+    private long[] positionA;
+    private long[] velocityX;
+    private long[] velocityY;
+    private long[] velocityA;
+
+    public BodyStates(int capacity) {
+        indices = new int[capacity];
+        positionX = new long[capacity];
+        positionY = new long[capacity];
+        positionA = new long[capacity];
+        velocityX = new long[capacity];
+        velocityY = new long[capacity];
+        velocityA = new long[capacity];
+    }
+
+    public static long quantizePosition(double value) {
+        return Math.round(value * POSITION_SCALE);
+    }
+
+    public static long quantizeAngle(double value) {
+        return Math.round(value * ANGLE_SCALE);
+    }
+
+    public static long quantizeVelocity(double value) {
+        return Math.round(value * VELOCITY_SCALE);
+    }
+
+    /**
+     * Adds a body, indices have to be added in ascending order.
+     */
+    public void add(int index, long positionX, long positionY, long positionA, long velocityX, long velocityY, long velocityA) {
+        if(count > 0 && index <= indices[count - 1])
+            throw new IllegalArgumentException("Body indices must be added in ascending order");
+        if(count == indices.length) {
+            final int capacity = Math.max(count * 2, 16);
+            indices = Arrays.copyOf(indices, capacity);
+            this.positionX = Arrays.copyOf(this.positionX, capacity);
+            this.positionY = Arrays.copyOf(this.positionY, capacity);
+            this.positionA = Arrays.copyOf(this.positionA, capacity);
+            this.velocityX = Arrays.copyOf(this.velocityX, capacity);
+            this.velocityY = Arrays.copyOf(this.velocityY, capacity);
+            this.velocityA = Arrays.copyOf(this.velocityA, capacity);
+        }
+        indices[count] = index;
+        this.positionX[count] = positionX;
+        this.positionY[count] = positionY;
+        this.positionA[count] = positionA;
+        this.velocityX[count] = velocityX;
+        this.velocityY[count] = velocityY;
+        this.velocityA[count] = velocityA;
+        ++count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int index(int entry) {
+        return indices[entry];
+    }
+
+    /**
+     * @return Entry of the body with the given index or -1 if it's not a part of these states
+     */
+    public int find(int index) {
+        final int entry = Arrays.binarySearch(indices, 0, count, index);
+        return entry >= 0 ? entry : -1;
+    }
+
+    public long rawPositionX(int entry) {
+        return positionX[entry];
+    }
+
+    public long rawPositionY(int entry) {
+        return positionY[entry];
+    }
+
+    public long rawPositionA(int entry) {
+        return positionA[entry];
+    }
+
+    public long rawVelocityX(int entry) {
+        return velocityX[entry];
+    }
+
+    public long rawVelocityY(int entry) {
+        return velocityY[entry];
+    }
+
+    public long rawVelocityA(int entry) {
+        return velocityA[entry];
+    }
+
+    public double positionX(int entry) {
+        return positionX[entry] / POSITION_SCALE;
+    }
+
+    public double positionY(int entry) {
+        return positionY[entry] / POSITION_SCALE;
+    }
+
+    public double positionA(int entry) {
+        return positionA[entry] / ANGLE_SCALE;
+    }
+
+    public double velocityX(int entry) {
+        return velocityX[entry] / VELOCITY_SCALE;
+    }
+
+    public double velocityY(int entry) {
+        return velocityY[entry] / VELOCITY_SCALE;
+    }
+
+    public double velocityA(int entry) {
+        return velocityA[entry] / VELOCITY_SCALE;
+    }
+
+    // Zig-zag encoding keeps small negative values short
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int signedSize(long value) {
+        // 7 bits per byte
+        final int bits = 64 - Long.numberOfLeadingZeros(zigZag(value));
+        return Math.max(1, (bits + 6) / 7);
+    }
+
+    /**
+     * Estimated amount of bytes a body takes up in the packet.
+     */
+    public static int entrySize(long positionX, long positionY, long positionA, long velocityX, long velocityY, long velocityA) {
+        return INDEX_BYTES + signedSize(positionX) + signedSize(positionY) + signedSize(positionA) +
+                signedSize(velocityX) + signedSize(velocityY) + signedSize(velocityA);
+    }
+
+    // 7 bits per byte, the highest bit marks that more bytes follow
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 70; shift += 7) {
+            final byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Variable length integer is too big");
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        final long value = readVarLong(in);
+        if(value < 0 || value > Integer.MAX_VALUE)
+            throw new IOException("Variable length integer is out of range");
+        return (int) value;
+    }
+
+    private static void writeSigned(DataOutput out, long value) throws IOException {
+        writeVarLong(out, zigZag(value));
+    }
+
+    private static long readSigned(DataInput in) throws IOException {
+        final long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        int rangeCount = 0;
+        for(int i = 0; i < count; ++i) {
+            if(i == 0 || indices[i] != indices[i - 1] + 1)
+                ++rangeCount;
+        }
+        writeVarLong(out, rangeCount);
+        // Every range is written as the gap after the previous range and its length
+        int previousEnd = 0;
+        int start = 0;
+        for(int i = 1; i <= count; ++i) {
+            if(i == count || indices[i] != indices[i - 1] + 1) {
+                writeVarLong(out, indices[start] - previousEnd);
+                writeVarLong(out, i - start);
+                previousEnd = indices[i - 1] + 1;
+                start = i;
+            }
+        }
+
+        for(int i = 0; i < count; ++i) {
+            writeSigned(out, positionX[i]);
+            writeSigned(out, positionY[i]);
+            writeSigned(out, positionA[i]);
+            writeSigned(out, velocityX[i]);
+            writeSigned(out, velocityY[i]);
+            writeSigned(out, velocityA[i]);
+        }
+    }
+
+    public static BodyStates read(DataInput in) throws IOException {
+        final int rangeCount = readVarInt(in);
+        final var states = new BodyStates(rangeCount);
+        int index = 0;
+        for(int i = 0; i < rangeCount; ++i) {
+            index += readVarInt(in);
+            final int length = readVarInt(in);
+            for(int j = 0; j < length; ++j)
+                states.add(index++, 0, 0, 0, 0, 0, 0);
+        }
+
+        for(int i = 0; i < states.count; ++i) {
+            states.positionX[i] = readSigned(in);
+            states.positionY[i] = readSigned(in);
+            states.positionA[i] = readSigned(in);
+            states.velocityX[i] = readSigned(in);
+            states.velocityY[i] = readSigned(in);
+            states.velocityA[i] = readSigned(in);
+        }
+        return states;
+    }
+}
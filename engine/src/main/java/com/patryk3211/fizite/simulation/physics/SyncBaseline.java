@@ -0,0 +1,249 @@
+package com.patryk3211.fizite.simulation.physics;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Body states as a single player knows them. The server predicts what the client simulates from
+ * the last state it got (dead reckoning with constant velocities) and a body is only sent to
+ * the player again once the simulation drifts away from that prediction. Sent states become
+ * the baseline when the player acknowledges the packet which carried them, until then
+ * the prediction starts from the sent state, so bodies aren't sent again while the packet is on its way.
+ * The client simulates the bodies on its own, which the prediction doesn't follow, so awake bodies are
+ * also sent again once their last state gets too old. The heartbeats of bodies are spread out by their
+ * index, so bodies sent together don't all come back in the same sync. Sleeping bodies which the player
+ * acknowledged don't move on the client either, they are only sent again once they stop matching the baseline.
+ */
+public class SyncBaseline {
+    // Packets waiting for an acknowledgement, bodies of older ones are sent again if they still differ
+    private static final int MAX_PENDING = 8;
+    // Full turn in fixed point angle units, the solver wraps angles by a full turn
+    private static final double TURN = 2 * Math.PI * BodyStates.ANGLE_SCALE;
+
+    private boolean[] known;
+    // Simulation tick of the baseline state
+    private long[] tick;
+    private long[] positionX;
+    private long[] positionY;
+    private long[] positionA;
+    private long[] velocityX;
+    private long[] velocityY;
+    private long[] velocityA;
+    // Sequence of the last packet which carried the body plus one, 0 if it wasn't sent yet
+    private int[] sentSequence;
+    // Simulation tick of the last sent state
+    private long[] sentTick;
+    // Sleep tick of the island during which the body was found to match the acknowledged state, 0 if it wasn't
+    private long[] settledSleep;
+    // Syncs a body was left out of because of the byte budget
+    private int[] waited;
+    // Chunks the player was tracking during the last sync
+    private Set<Long> watchedChunks;
+
+    // Length of a simulation tick in seconds
+    private final double tickTime;
+    // Ticks after which an awake body is sent again even if it matches the prediction, 0 never sends it again
+    private final int maxAge;
+    private final BodyStates[] pending;
+    private final int[] pendingSequence;
+    private final long[] pendingTick;
+    private int nextSequence;
+
+    public SyncBaseline(double tickTime, int maxAge) {
+        this.tickTime = tickTime;
+        this.maxAge = maxAge;
+        known = new boolean[0];
+        tick = new long[0];
+        positionX = new long[0];
+        positionY = new long[0];
+        positionA = new long[0];
+        velocityX = new long[0];
+        velocityY = new long[0];
+        velocityA = new long[0];
+        sentSequence = new int[0];
+        sentTick = new long[0];
+        settledSleep = new long[0];
+        waited = new int[0];
+        watchedChunks = new HashSet<>();
+        pending = new BodyStates[MAX_PENDING];
+        pendingSequence = new int[MAX_PENDING];
+        pendingTick = new long[MAX_PENDING];
+    }
+
+    private void ensureCapacity(int length) {
+        if(known.length >= length)
+            return;
+        known = Arrays.copyOf(known, length);
+        tick = Arrays.copyOf(tick, length);
+        positionX = Arrays.copyOf(positionX, length);
+        positionY = Arrays.copyOf(positionY, length);
+        positionA = Arrays.copyOf(positionA, length);
+        velocityX = Arrays.copyOf(velocityX, length);
+        velocityY = Arrays.copyOf(velocityY, length);
+        velocityA = Arrays.copyOf(velocityA, length);
+        sentSequence = Arrays.copyOf(sentSequence, length);
+        sentTick = Arrays.copyOf(sentTick, length);
+        settledSleep = Arrays.copyOf(settledSleep, length);
+        waited = Arrays.copyOf(waited, length);
+    }
+
+    /**
+     * Checks whether the quantized state differs from the client prediction by more than the tolerances,
+     * given in the same fixed point units. Bodies without a baseline and awake bodies which weren't sent
+     * for the max age always differ.
+     * @param tick Simulation tick of the state
+     * @param sleepTick Tick at which the island of the body fell asleep, 0 if it's awake
+     */
+    public boolean differs(int index, long tick, long sleepTick, long positionX, long positionY, long positionA, long velocityX, long velocityY, long velocityA,
+                           long positionTolerance, long angleTolerance, long velocityTolerance) {
+        if(index < 0 || index >= known.length)
+            return true;
+        if(maxAge > 0 && sentSequence[index] != 0 && tick - sentTick[index] >= maxAge - index % (maxAge / 2 + 1)) {
+            // Sleeping bodies are left alone once the player acknowledged the last state sent to it,
+            // an unacknowledged packet might have been lost and nothing else would replace it while the world rests
+            final boolean acknowledged = known[index] && this.tick[index] >= sentTick[index];
+            if(sleepTick == 0 || !acknowledged)
+                return true;
+        }
+        // Prefer the newest state the client will have, even if it didn't acknowledge it yet
+        if(sentSequence[index] != 0) {
+            final int sequence = sentSequence[index] - 1;
+            final int slot = Math.floorMod(sequence, MAX_PENDING);
+            final var states = pending[slot];
+            if(states != null && pendingSequence[slot] == sequence) {
+                final int entry = states.find(index);
+                if(entry != -1) {
+                    return differs(tick - pendingTick[slot],
+                            states.rawPositionX(entry), states.rawPositionY(entry), states.rawPositionA(entry),
+                            states.rawVelocityX(entry), states.rawVelocityY(entry), states.rawVelocityA(entry),
+                            positionX, positionY, positionA, velocityX, velocityY, velocityA,
+                            positionTolerance, angleTolerance, velocityTolerance);
+                }
+            }
+        }
+        if(!known[index])
+            return true;
+        final boolean different = differs(tick - this.tick[index],
+                this.positionX[index], this.positionY[index], this.positionA[index],
+                this.velocityX[index], this.velocityY[index], this.velocityA[index],
+                positionX, positionY, positionA, velocityX, velocityY, velocityA,
+                positionTolerance, angleTolerance, velocityTolerance);
+        if(!different && sleepTick != 0 && this.tick[index] >= sentTick[index])
+            settledSleep[index] = sleepTick;
+        return different;
+    }
+
+    /**
+     * Checks whether the body was found to match the acknowledged state during the same sleep of its island.
+     * A sleeping body doesn't move, so it can be left out of the sync without comparing it again.
+     * @param sleepTick Tick at which the island of the body fell asleep, 0 if it's awake
+     */
+    public boolean settled(int index, long sleepTick) {
+        return sleepTick != 0 && index >= 0 && index < settledSleep.length && settledSleep[index] == sleepTick;
+    }
+
+    // Compares a state with the one predicted from the known state after the given amount of ticks
+    private boolean differs(long ticks, long knownPositionX, long knownPositionY, long knownPositionA,
+                                   long knownVelocityX, long knownVelocityY, long knownVelocityA,
+                                   long positionX, long positionY, long positionA, long velocityX, long velocityY, long velocityA,
+                                   long positionTolerance, long angleTolerance, long velocityTolerance) {
+        final double time = ticks * tickTime;
+        final double positionStep = time * BodyStates.POSITION_SCALE / BodyStates.VELOCITY_SCALE;
+        final double angleStep = time * BodyStates.ANGLE_SCALE / BodyStates.VELOCITY_SCALE;
+        return Math.abs(positionX - (knownPositionX + knownVelocityX * positionStep)) > positionTolerance ||
+                Math.abs(positionY - (knownPositionY + knownVelocityY * positionStep)) > positionTolerance ||
+                Math.abs(Math.IEEEremainder(positionA - (knownPositionA + knownVelocityA * angleStep), TURN)) > angleTolerance ||
+                Math.abs(velocityX - knownVelocityX) > velocityTolerance ||
+                Math.abs(velocityY - knownVelocityY) > velocityTolerance ||
+                Math.abs(velocityA - knownVelocityA) > velocityTolerance;
+    }
+
+    /**
+     * Replaces the chunks watched by the player.
+     * @return Chunks which were watched during the last sync but aren't anymore
+     */
+    public Set<Long> watch(Set<Long> chunks) {
+        final var unwatched = watchedChunks;
+        unwatched.removeAll(chunks);
+        watchedChunks = chunks;
+        return unwatched;
+    }
+
+    public int waited(int index) {
+        return index >= 0 && index < waited.length ? waited[index] : 0;
+    }
+
+    /**
+     * Called when a body differs from the baseline but didn't fit into the byte budget.
+     */
+    public void skip(int index) {
+        ensureCapacity(index + 1);
+        ++waited[index];
+    }
+
+    /**
+     * Drops the baseline of a body which left the simulation or the view of the player,
+     * it's sent again as soon as the player can see it.
+     */
+    public void forget(int index) {
+        if(index >= 0 && index < known.length) {
+            known[index] = false;
+            sentSequence[index] = 0;
+            settledSleep[index] = 0;
+        }
+    }
+
+    /**
+     * Remembers the states until the player acknowledges them.
+     * @param tick Simulation tick of the states
+     * @return Sequence number of the packet carrying the states
+     */
+    public int send(BodyStates states, long tick) {
+        final int sequence = nextSequence++;
+        final int size = states.size();
+        if(size > 0)
+            ensureCapacity(states.index(size - 1) + 1);
+        for(int i = 0; i < size; ++i) {
+            final int index = states.index(i);
+            waited[index] = 0;
+            sentSequence[index] = sequence + 1;
+            sentTick[index] = tick;
+            settledSleep[index] = 0;
+        }
+        final int slot = Math.floorMod(sequence, MAX_PENDING);
+        pending[slot] = states;
+        pendingSequence[slot] = sequence;
+        pendingTick[slot] = tick;
+        return sequence;
+    }
+
+    /**
+     * Moves the states of the acknowledged packet into the baseline, unknown sequences are ignored.
+     */
+    public void acknowledge(int sequence) {
+        final int slot = Math.floorMod(sequence, MAX_PENDING);
+        final var states = pending[slot];
+        if(states == null || pendingSequence[slot] != sequence)
+            return;
+        pending[slot] = null;
+
+        final int size = states.size();
+        if(size > 0)
+            ensureCapacity(states.index(size - 1) + 1);
+        for(int i = 0; i < size; ++i) {
+            final int index = states.index(i);
+            // Never replace the baseline with an older state
+            if(known[index] && tick[index] > pendingTick[slot])
+                continue;
+            known[index] = true;
+            tick[index] = pendingTick[slot];
+            positionX[index] = states.rawPositionX(i);
+            positionY[index] = states.rawPositionY(i);
+            positionA[index] = states.rawPositionA(i);
+            velocityX[index] = states.rawVelocityX(i);
+            velocityY[index] = states.rawVelocityY(i);
+            velocityA[index] = states.rawVelocityA(i);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.patryk3211.fizite.simulation.physics;
+
+/**
+ * Maps simulation ticks of the server to the ticks of the client. The offset between them is the
+ * largest one seen, it belongs to the packet which took the shortest time to arrive, so states of
+ * packets delayed by jitter are moved forward by the ticks they were late. When the server falls
+ * behind, the offset goes down by one tick at a time until it matches the packets again.
+ */
+public class SyncClock {
+    private final int decayTicks;
+    private boolean synced;
+    private long offset;
+    // Client tick at which the offset was last raised or lowered
+    private long changeTick;
+
+    /**
+     * @param decayTicks Ticks of packets arriving later than the offset needed to lower it by one tick
+     */
+    public SyncClock(int decayTicks) {
+        this.decayTicks = decayTicks;
+    }
+
+    /**
+     * Updates the offset with a packet of the given server tick which arrived at the given client tick.
+     */
+    public void observe(long serverTick, long clientTick) {
+        final long sample = serverTick - clientTick;
+        if(!synced || sample >= offset) {
+            if(!synced || sample > offset)
+                changeTick = clientTick;
+            offset = sample;
+            synced = true;
+        } else if(clientTick - changeTick >= decayTicks) {
+            --offset;
+            changeTick = clientTick;
+        }
+    }
+
+    /**
+     * @return Ticks the state of the given server tick has to be moved forward to the client tick, never negative
+     */
+    public long behind(long serverTick, long clientTick) {
+        return synced ? Math.max(clientTick + offset - serverTick, 0) : 0;
+    }
+
+    public void reset() {
+        synced = false;
+        offset = 0;
+    }
+}
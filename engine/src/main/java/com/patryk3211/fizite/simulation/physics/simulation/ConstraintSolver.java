@@ -0,0 +1,550 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.Constraint;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.interfaces.linsol.LinearSolverSparse;
+import org.ejml.sparse.FillReducing;
+import org.ejml.sparse.csc.factory.LinearSolverFactory_DSCC;
+import org.ejml.sparse.csc.misc.ColumnCounts_DSCC;
+import org.ejml.sparse.csc.misc.TriangularSolver_DSCC;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+public class ConstraintSolver {
+    private static final double K_D = 50; // Applied to C_dot
+    private static final double K_S = 500; // Applied to C
+
+    private static final double MAX_ERROR = 1E-4;
+    private static final double MIN_ERROR = 1E-5;
+    private static final int MAX_ITERATIONS = 1024;
+    // Diagonal entries smaller than this are treated as unconstrained rows
+    private static final double MIN_DIAGONAL = 1E-12;
+    // Systems with at most this many constraint rows are solved with a direct sparse Cholesky factorization
+    private static final int DIRECT_SOLVE_MAX_ROWS = 64;
+    // Larger systems are solved directly as long as the Cholesky factor has at most this many
+    // non zeros per non zero of J * W * J_T, chains and trees of joints stay well below it
+    private static final int DIRECT_SOLVE_MAX_FILL = 4;
+    // Added to the diagonal of J * W * J_T to keep redundant constraints from making it singular
+    private static final double REGULARIZATION = 1E-9;
+
+    private DMatrixRMaj qDot;
+    private JacobianMatrix J;
+    private JacobianMatrix JDot;
+    private DMatrixRMaj W;
+    private DMatrixRMaj C;
+
+    private DMatrixRMaj extForce;
+    private DMatrixRMaj cForce;
+
+    private DMatrixRMaj right;
+    private DMatrixRMaj left;
+    private DMatrixRMaj lambda;
+
+    private DMatrixRMaj denseReg1BC;
+
+    private DMatrixRMaj pMatrix;
+    private DMatrixRMaj rMatrix;
+    private DMatrixRMaj zMatrix;
+    // Jacobi preconditioner, inverse of the diagonal of J * W * J_T
+    private DMatrixRMaj invDiagonal;
+
+    // Direct solver state, only present for small systems
+    private LinearSolverSparse<DMatrixSparseCSC, DMatrixRMaj> directSolver;
+    private DMatrixSparseCSC directLeft;
+
+    private final Island island;
+    // First matrix row of every constraint slot
+    private int[] rowOffset;
+    // Amount of matrix rows, including rows of removed constraints
+    private int rowCount;
+    // Amount of island slots which already have their place in the matrices
+    private int syncedBodies;
+    private int syncedConstraints;
+
+    // Largest position error of the last step, used for rest detection
+    public double maxError;
+    // Set when the last step ran out of iterations before reaching the tolerance
+    public boolean solveFailed;
+
+    // Profiling data
+    public long rightPrepareTime;
+    public long solveTime;
+    public int iterationCount;
+
+    public ConstraintSolver(Island island) {
+        this.island = island;
+        this.rowOffset = new int[0];
+    }
+
+    public void updateMassMatrix(int index, float invMass1, float invMass2, float invMass3) {
+        W.set(index * 3, 0, invMass1);
+        W.set(index * 3 + 1, 0, invMass2);
+        W.set(index * 3 + 2, 0, invMass3);
+    }
+
+    // Resizes a column vector keeping its values, the storage grows by doubling its capacity
+    private static DMatrixRMaj grow(DMatrixRMaj vector, int rows) {
+        if(vector == null)
+            return new DMatrixRMaj(rows, 1);
+        if(rows > vector.data.length)
+            vector.data = Arrays.copyOf(vector.data, Math.max(rows, vector.data.length * 2));
+        vector.reshape(rows, 1);
+        return vector;
+    }
+
+    /**
+     * Builds all matrices from scratch, the island slots must not have any holes at this point.
+     */
+    public void rebuild() {
+        clear();
+        update();
+    }
+
+    /**
+     * Appends the bodies and constraints which were added to the island since the last update,
+     * matrix rows and columns of everything else stay where they are.
+     */
+    public void update() {
+        final var bodies = island.bodySlots();
+        final var constraints = island.constraintSlots();
+        final int bodySlots = island.bodySlotCount();
+        final int constraintSlots = island.constraintSlotCount();
+
+        if(rowOffset.length < constraintSlots)
+            rowOffset = Arrays.copyOf(rowOffset, Math.max(constraintSlots, rowOffset.length * 2));
+        int newRowCount = rowCount;
+        for(int i = syncedConstraints; i < constraintSlots; ++i) {
+            rowOffset[i] = newRowCount;
+            if(constraints[i] != null)
+                newRowCount += constraints[i].internalConstraintCount();
+        }
+        final int columns = bodySlots * 3;
+
+        W = grow(W, columns);
+        qDot = grow(qDot, columns);
+        extForce = grow(extForce, columns);
+        cForce = grow(cForce, columns);
+        denseReg1BC = grow(denseReg1BC, columns);
+
+        C = grow(C, newRowCount);
+        right = grow(right, newRowCount);
+        left = grow(left, newRowCount);
+        lambda = grow(lambda, newRowCount);
+        pMatrix = grow(pMatrix, newRowCount);
+        rMatrix = grow(rMatrix, newRowCount);
+        zMatrix = grow(zMatrix, newRowCount);
+        invDiagonal = grow(invDiagonal, newRowCount);
+
+        if(J == null) {
+            J = new JacobianMatrix(newRowCount, columns);
+            JDot = new JacobianMatrix(newRowCount, columns);
+        } else {
+            J.resize(newRowCount, columns);
+            JDot.resize(newRowCount, columns);
+        }
+
+        // Inverse mass of the new bodies
+        for(int i = syncedBodies; i < bodySlots; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            W.set(i * 3, 0, body.posInvMass());
+            W.set(i * 3 + 1, 0, body.posInvMass());
+            W.set(i * 3 + 2, 0, body.rotInvMass());
+        }
+
+        // Sparsity pattern of the new constraints, warm started with the multipliers they had before
+        for(int i = syncedConstraints; i < constraintSlots; ++i) {
+            final var constraint = constraints[i];
+            if(constraint == null)
+                continue;
+            constraint.allocate(rowOffset[i], J, JDot);
+            final var cached = constraint.lambda();
+            System.arraycopy(cached, 0, lambda.data, rowOffset[i], cached.length);
+        }
+
+        rowCount = newRowCount;
+        syncedBodies = bodySlots;
+        syncedConstraints = constraintSlots;
+
+        // The conjugate gradient needs more iterations the longer the chains of constraints are,
+        // so large islands are solved directly too unless the factorization fills in too much
+        directLeft = new DMatrixSparseCSC(rowCount, rowCount);
+        buildDirectPattern();
+        if(rowCount <= DIRECT_SOLVE_MAX_ROWS || factorSize(directLeft) <= (long) DIRECT_SOLVE_MAX_FILL * directLeft.nz_length) {
+            // Symbolic analysis runs once for the new structure and is locked afterwards
+            if(directSolver == null)
+                directSolver = LinearSolverFactory_DSCC.cholesky(FillReducing.NONE);
+            directSolver.setStructureLocked(false);
+        } else {
+            directSolver = null;
+            directLeft = null;
+        }
+    }
+
+    /**
+     * Removes a body from the matrices, its columns stay empty until the next rebuild.
+     */
+    public void removeBody(int slot) {
+        if(slot >= syncedBodies)
+            return;
+        for(int i = slot * 3; i < slot * 3 + 3; ++i) {
+            W.data[i] = 0;
+            qDot.data[i] = 0;
+            extForce.data[i] = 0;
+        }
+    }
+
+    /**
+     * Removes a constraint from the matrices, its rows stay empty until the next rebuild.
+     */
+    public void removeConstraint(int slot, Constraint constraint) {
+        if(slot >= syncedConstraints)
+            return;
+        final int start = rowOffset[slot];
+        final int end = start + constraint.internalConstraintCount();
+        for(int row = start; row < end; ++row) {
+            J.clearRow(row);
+            JDot.clearRow(row);
+        }
+        Arrays.fill(C.data, start, end, 0);
+        Arrays.fill(lambda.data, start, end, 0);
+    }
+
+    public void clear() {
+        W = null;
+        qDot = null;
+        J = null;
+        JDot = null;
+
+        extForce = null;
+        cForce = null;
+        C = null;
+
+        right = null;
+        left = null;
+        lambda = null;
+
+        denseReg1BC = null;
+
+        pMatrix = null;
+        rMatrix = null;
+        zMatrix = null;
+        invDiagonal = null;
+
+        directSolver = null;
+        directLeft = null;
+
+        rowCount = 0;
+        syncedBodies = 0;
+        syncedConstraints = 0;
+    }
+
+    private boolean checkError(DMatrixRMaj x, DMatrixRMaj right) {
+        for(int i = 0; i < x.numRows; ++i) {
+            final double error = x.get(i, 0);
+            final double target = right.get(i, 0);
+            if(Math.abs(error) > Math.max(Math.abs(MAX_ERROR * target), MIN_ERROR)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Calculates the left side of the equation:
+    // J * W * J_T * x = ...
+    private void makeLeft(DMatrixRMaj x, DMatrixRMaj output) {
+        J.multTransposed(x.data, denseReg1BC.data);
+        J.mult(denseReg1BC.data, W.data, output.data);
+    }
+
+    // Calculates the right side of the equation:
+    // ... = - J_dot * q_dot - J * W * F_ext - k_s * C - k_d * C_dot
+    // where C_dot = J * q_dot, all terms are accumulated row by row in a single pass
+    private void makeRight() {
+        final var qDot = this.qDot.data;
+        final var w = W.data;
+        final var force = extForce.data;
+        final var c = C.data;
+        final var output = right.data;
+
+        final var jColumn = J.entryColumn;
+        final var jValue = J.entryValue;
+        final var jDotColumn = JDot.entryColumn;
+        final var jDotValue = JDot.entryValue;
+
+        for(int row = 0; row < right.numRows; ++row) {
+            final int start = row * JacobianMatrix.ROW_WIDTH;
+
+            double jDotQDot = 0;
+            final int jDotEnd = start + JDot.rowLength[row];
+            for(int i = start; i < jDotEnd; ++i)
+                jDotQDot += jDotValue[i] * qDot[jDotColumn[i]];
+
+            double jwf = 0;
+            double cDot = 0;
+            final int jEnd = start + J.rowLength[row];
+            for(int i = start; i < jEnd; ++i) {
+                final int column = jColumn[i];
+                jwf += jValue[i] * w[column] * force[column];
+                cDot += jValue[i] * qDot[column];
+            }
+
+            output[row] = -jDotQDot - jwf - K_S * c[row] - K_D * cDot;
+        }
+    }
+
+    // Calculates the inverse of J * W * J_T diagonal,
+    // the diagonal entry of a row is the sum of its squared Jacobian entries weighted by inverse mass
+    private void updatePreconditioner() {
+        final var diagonal = invDiagonal.data;
+        final var w = W.data;
+        for(int row = 0; row < invDiagonal.numRows; ++row) {
+            final int start = row * JacobianMatrix.ROW_WIDTH;
+            final int end = start + J.rowLength[row];
+            double sum = 0;
+            for(int i = start; i < end; ++i) {
+                final var value = J.entryValue[i];
+                sum += value * value * w[J.entryColumn[i]];
+            }
+            diagonal[row] = sum > MIN_DIAGONAL ? 1 / sum : 1;
+        }
+    }
+
+    // Preconditioned conjugate gradient, starts from the current lambda
+    private boolean solve(BiConsumer<DMatrixRMaj, DMatrixRMaj> leftCalculator) {
+        updatePreconditioner();
+        leftCalculator.accept(lambda, left);
+
+        final var r = rMatrix.data;
+        final var z = zMatrix.data;
+        final var p = pMatrix.data;
+        final var x = lambda.data;
+        final var ap = left.data;
+        final var preconditioner = invDiagonal.data;
+        final var b = right.data;
+        final int n = lambda.numRows;
+
+        double rz = 0;
+        for(int j = 0; j < n; ++j) {
+            r[j] = b[j] - ap[j];
+            z[j] = preconditioner[j] * r[j];
+            p[j] = z[j];
+            rz += r[j] * z[j];
+        }
+        if(checkError(rMatrix, right)) {
+            iterationCount = 0;
+            return false;
+        }
+
+        for(int i = 0; i < MAX_ITERATIONS; ++i) {
+            iterationCount = i + 1;
+            leftCalculator.accept(pMatrix, left);
+
+            double dot = 0;
+            for(int j = 0; j < n; ++j)
+                dot += p[j] * ap[j];
+            final double alpha = dot == 0 ? 1 : rz / dot;
+            for(int j = 0; j < n; ++j) {
+                x[j] += p[j] * alpha;
+                r[j] -= ap[j] * alpha;
+            }
+
+            if(checkError(rMatrix, right)) {
+                return false;
+            }
+
+            double rzNext = 0;
+            for(int j = 0; j < n; ++j) {
+                z[j] = preconditioner[j] * r[j];
+                rzNext += r[j] * z[j];
+            }
+            final double beta = rzNext / rz;
+            rz = rzNext;
+            for(int j = 0; j < n; ++j) {
+                p[j] = p[j] * beta + z[j];
+            }
+        }
+
+        return true;
+    }
+
+    // Builds the sparsity pattern of J * W * J_T, two rows are coupled
+    // if they share at least one column. The diagonal is always present.
+    private void buildDirectPattern() {
+        final int n = J.numRows();
+        final int columns = J.numColumns();
+
+        // Rows referencing every column
+        final int[] columnCount = new int[columns + 1];
+        for(int row = 0; row < n; ++row) {
+            final int start = row * JacobianMatrix.ROW_WIDTH;
+            for(int i = start; i < start + J.rowLength[row]; ++i)
+                ++columnCount[J.entryColumn[i] + 1];
+        }
+        for(int i = 0; i < columns; ++i)
+            columnCount[i + 1] += columnCount[i];
+        final int[] columnRows = new int[columnCount[columns]];
+        final int[] fill = Arrays.copyOf(columnCount, columns);
+        for(int row = 0; row < n; ++row) {
+            final int start = row * JacobianMatrix.ROW_WIDTH;
+            for(int i = start; i < start + J.rowLength[row]; ++i)
+                columnRows[fill[J.entryColumn[i]]++] = row;
+        }
+
+        final int[] colIdx = new int[n + 1];
+        int[] rowBuffer = new int[n * 8];
+        int nz = 0;
+        final int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+        final int[] coupled = new int[n];
+        for(int row = 0; row < n; ++row) {
+            colIdx[row] = nz;
+            int count = 0;
+            mark[row] = row;
+            coupled[count++] = row;
+            final int start = row * JacobianMatrix.ROW_WIDTH;
+            for(int i = start; i < start + J.rowLength[row]; ++i) {
+                final int column = J.entryColumn[i];
+                for(int k = columnCount[column]; k < columnCount[column + 1]; ++k) {
+                    final int other = columnRows[k];
+                    if(mark[other] != row) {
+                        mark[other] = row;
+                        coupled[count++] = other;
+                    }
+                }
+            }
+            Arrays.sort(coupled, 0, count);
+            if(nz + count > rowBuffer.length)
+                rowBuffer = Arrays.copyOf(rowBuffer, Math.max(rowBuffer.length * 2, nz + count));
+            System.arraycopy(coupled, 0, rowBuffer, nz, count);
+            nz += count;
+        }
+        colIdx[n] = nz;
+
+        directLeft.reshape(n, n, nz);
+        System.arraycopy(colIdx, 0, directLeft.col_idx, 0, n + 1);
+        System.arraycopy(rowBuffer, 0, directLeft.nz_rows, 0, nz);
+        directLeft.nz_length = nz;
+        directLeft.indicesSorted = true;
+    }
+
+    // Amount of non zeros in the Cholesky factor of a matrix with the given pattern, found
+    // from the elimination tree without factorizing the matrix
+    private static long factorSize(DMatrixSparseCSC pattern) {
+        final int n = pattern.numCols;
+        final int[] parent = new int[n];
+        final int[] post = new int[n];
+        final int[] counts = new int[n];
+        TriangularSolver_DSCC.eliminationTree(pattern, false, parent, null);
+        TriangularSolver_DSCC.postorder(parent, n, post, null);
+        new ColumnCounts_DSCC(false).process(pattern, parent, post, counts);
+        long size = 0;
+        for(final int count : counts)
+            size += count;
+        return size;
+    }
+
+    // Solves J * W * J_T * lambda = right with a sparse Cholesky factorization,
+    // returns false if the matrix could not be factorized
+    private boolean solveDirect() {
+        // directLeft = J * W * J_T + e * I, evaluated only at the structural non zeros
+        final var w = W.data;
+        for(int column = 0; column < directLeft.numCols; ++column) {
+            for(int i = directLeft.col_idx[column]; i < directLeft.col_idx[column + 1]; ++i) {
+                final int row = directLeft.nz_rows[i];
+                final var value = J.rowDot(row, column, w);
+                directLeft.nz_values[i] = row == column ? value + REGULARIZATION : value;
+            }
+        }
+
+        if(!directSolver.setA(directLeft)) {
+            directSolver.setStructureLocked(false);
+            return false;
+        }
+        directSolver.setStructureLocked(true);
+        directSolver.solve(right, lambda);
+        iterationCount = 0;
+        return true;
+    }
+
+    // Saves lambda in the constraints so that it survives matrix rebuilds
+    private void storeLambda() {
+        final var constraints = island.constraintSlots();
+        for(int i = 0; i < syncedConstraints; ++i) {
+            final var constraint = constraints[i];
+            if(constraint == null)
+                continue;
+            final var cached = constraint.lambda();
+            System.arraycopy(lambda.data, rowOffset[i], cached, 0, cached.length);
+        }
+    }
+
+    public void step() {
+        final var bodies = island.bodySlots();
+        final var constraints = island.constraintSlots();
+
+        // Update q dot matrix
+        for(int i = 0; i < syncedBodies; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            final var row = i * 3;
+            final var state = body.getState();
+
+            qDot.unsafe_set(row, 0, state.velocityX());
+            qDot.unsafe_set(row + 1, 0, state.velocityY());
+            qDot.unsafe_set(row + 2, 0, state.velocityA());
+
+            extForce.unsafe_set(row, 0, state.extForceX());
+            extForce.unsafe_set(row + 1, 0, state.extForceY());
+            extForce.unsafe_set(row + 2, 0, state.extForceA());
+        }
+
+        // Update constraint matrices
+        for(int i = 0; i < syncedConstraints; ++i) {
+            final var constraint = constraints[i];
+            if(constraint != null)
+                constraint.calculate(rowOffset[i], C, J, JDot);
+        }
+
+        maxError = 0;
+        for(int i = 0; i < C.numRows; ++i)
+            maxError = Math.max(maxError, Math.abs(C.unsafe_get(i, 0)));
+
+        // Equation:
+        // J * W * J_T * lambda = - J_dot * q_dot - J * W * F_ext - k_s * C - k_d * C_dot
+        rightPrepareTime = -System.nanoTime();
+        makeRight();
+        rightPrepareTime += System.nanoTime();
+
+        solveTime = -System.nanoTime();
+        solveFailed = (directSolver == null || !solveDirect()) && solve(this::makeLeft);
+        storeLambda();
+        J.multTransposed(lambda.data, cForce.data);
+        solveTime += System.nanoTime();
+
+        for(int i = 0; i < syncedBodies; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            final var row = i * 3;
+
+            final var fX = cForce.get(row, 0);
+            final var fY = cForce.get(row + 1, 0);
+            final var fA = cForce.get(row + 2, 0);
+
+            final var bodyState = body.getState();
+            bodyState.setAcceleration(
+                    (float) ((fX + bodyState.extForceX()) * body.posInvMass()),
+                    (float) ((fY + bodyState.extForceY()) * body.posInvMass()),
+                    (float) ((fA + bodyState.extForceA()) * body.rotInvMass())
+            );
+//            if(bodyState.extForceA != 0) System.out.println("Angular Force");
+
+            bodyState.setCForce(fX, fY, fA);
+        }
+    }
+}
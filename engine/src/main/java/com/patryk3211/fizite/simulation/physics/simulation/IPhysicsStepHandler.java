@@ -6,4 +6,10 @@ public interface IPhysicsStepHandler {
      * @param deltaTime Delta time of the step
      */
     void onStepEnd(double deltaTime);
+
+    /**
+     * Executed once at the end of every simulation tick, after the state snapshot was published
+     */
+    default void onTickEnd() {
+    }
 }
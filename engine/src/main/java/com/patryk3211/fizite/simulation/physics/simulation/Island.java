@@ -0,0 +1,485 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.Constraint;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A connected group of rigid bodies, two bodies belong to the same island
+ * if there is a chain of constraints linking them. Islands never interact
+ * with each other, so every island gets its own constraint solver and
+ * can be solved independently of (and in parallel with) other islands.
+ * <p>
+ * Bodies and constraints are stored in slots, the slot of a body decides its solver columns.
+ * Removing something only empties its slot, so everything else keeps its place in the solver
+ * matrices and only new slots have to be filled in. Empty slots are compacted away
+ * once they make up more than half of the island.
+ */
+public class Island {
+    // Rest detection thresholds
+    private static final double SLEEP_VELOCITY = 1E-3;
+    private static final double SLEEP_FORCE = 1E-3;
+    private static final double SLEEP_ERROR = 1E-3;
+    // Amount of ticks an island has to stay at rest before it is put to sleep
+    public static final int SLEEP_TICKS = 40;
+
+    private static final int INITIAL_CAPACITY = 4;
+    // Amount of empty slots which are always allowed before compacting
+    private static final int COMPACT_SLACK = 16;
+
+    private RigidBody[] bodies;
+    private int bodySlots;
+    private int bodyCount;
+
+    private Constraint[] constraints;
+    private int constraintSlots;
+    private int constraintObjects;
+    // Amount of constraint rows
+    private int constraintCount;
+
+    private final ConstraintSolver solver;
+
+    // Set when bodies or constraints were added/removed and the solver matrices need to be updated
+    private boolean topologyChanged;
+    // Set when the solver matrices have to be built from scratch
+    private boolean rebuild;
+    // Set when something was removed, the island might have to be split
+    private boolean splitCheck;
+
+    private boolean sleeping;
+    // Tick at which the island fell asleep
+    private long sleepTick;
+    private volatile boolean wakeRequested;
+    private int restTicks;
+
+    public Island() {
+        bodies = new RigidBody[INITIAL_CAPACITY];
+        constraints = new Constraint[INITIAL_CAPACITY];
+        solver = new ConstraintSolver(this);
+        bodySlots = 0;
+        bodyCount = 0;
+        constraintSlots = 0;
+        constraintObjects = 0;
+        constraintCount = 0;
+        topologyChanged = true;
+        rebuild = true;
+        splitCheck = false;
+        sleeping = false;
+        restTicks = 0;
+    }
+
+    public void addBody(RigidBody body) {
+        if(bodySlots == bodies.length)
+            bodies = Arrays.copyOf(bodies, bodies.length * 2);
+        body.setIsland(this, bodySlots);
+        bodies[bodySlots++] = body;
+        ++bodyCount;
+        topologyChanged = true;
+    }
+
+    private void detachBody(int slot) {
+        final var body = bodies[slot];
+        bodies[slot] = null;
+        --bodyCount;
+        solver.removeBody(slot);
+        body.setIsland(null, -1);
+    }
+
+    public void removeBody(RigidBody body) {
+        if(body.getIsland() != this)
+            return;
+        detachBody(body.islandIndex());
+        topologyChanged = true;
+        splitCheck = true;
+    }
+
+    public void addConstraint(Constraint constraint) {
+        if(constraintSlots == constraints.length)
+            constraints = Arrays.copyOf(constraints, constraints.length * 2);
+        constraint.setIsland(this, constraintSlots);
+        constraints[constraintSlots++] = constraint;
+        ++constraintObjects;
+        constraintCount += constraint.internalConstraintCount();
+        topologyChanged = true;
+    }
+
+    private void detachConstraint(int slot) {
+        final var constraint = constraints[slot];
+        constraints[slot] = null;
+        --constraintObjects;
+        constraintCount -= constraint.internalConstraintCount();
+        solver.removeConstraint(slot, constraint);
+        constraint.setIsland(null, -1);
+    }
+
+    public void removeConstraint(Constraint constraint) {
+        if(constraint.getIsland() != this)
+            return;
+        detachConstraint(constraint.islandSlot());
+        topologyChanged = true;
+        splitCheck = true;
+    }
+
+    /**
+     * Moves all bodies and constraints of the given island into this island.
+     * @param other Island which will be emptied
+     */
+    public void merge(Island other) {
+        for(int i = 0; i < other.bodySlots; ++i) {
+            if(other.bodies[i] != null)
+                addBody(other.bodies[i]);
+        }
+        for(int i = 0; i < other.constraintSlots; ++i) {
+            if(other.constraints[i] != null)
+                addConstraint(other.constraints[i]);
+        }
+        splitCheck |= other.splitCheck;
+        other.clear();
+    }
+
+    private void clear() {
+        Arrays.fill(bodies, 0, bodySlots, null);
+        Arrays.fill(constraints, 0, constraintSlots, null);
+        bodySlots = 0;
+        bodyCount = 0;
+        constraintSlots = 0;
+        constraintObjects = 0;
+        constraintCount = 0;
+        topologyChanged = true;
+        rebuild = true;
+    }
+
+    /**
+     * Checks the connectivity of this island and moves every group of bodies
+     * which is no longer connected to the first body into a new island.
+     * Constraints which reference bodies that were removed from the island are detached.
+     * @param newIslands Output list for the newly created islands
+     * @param detached Output list for constraints which no longer belong to any island
+     */
+    public void split(List<Island> newIslands, Collection<Constraint> detached) {
+        splitCheck = false;
+        if(bodyCount == 0) {
+            // All bodies are gone, none of the constraints can be solved anymore
+            for(int i = 0; i < constraintSlots; ++i) {
+                final var constraint = constraints[i];
+                if(constraint != null) {
+                    constraint.setIsland(null, -1);
+                    detached.add(constraint);
+                }
+            }
+            clear();
+            return;
+        }
+
+        // Body slots are used as union-find node ids
+        final int[] parent = new int[bodySlots];
+        for(int i = 0; i < bodySlots; ++i)
+            parent[i] = i;
+
+        for(int i = 0; i < constraintSlots; ++i) {
+            final var constraint = constraints[i];
+            if(constraint == null)
+                continue;
+            if(!constraint.isIn(this)) {
+                // One of the bodies was removed from the simulation
+                detachConstraint(i);
+                detached.add(constraint);
+                continue;
+            }
+            final int root = find(parent, constraint.body(0).islandIndex());
+            for(int j = 1; j < constraint.bodyCount(); ++j)
+                parent[find(parent, constraint.body(j).islandIndex())] = root;
+        }
+
+        // Group bodies by their root, the group containing the first body stays in this island
+        int first = 0;
+        while(bodies[first] == null)
+            ++first;
+        final int mainRoot = find(parent, first);
+        final Island[] groups = new Island[bodySlots];
+        boolean created = false;
+        for(int i = first + 1; i < bodySlots; ++i) {
+            if(bodies[i] == null)
+                continue;
+            final int root = find(parent, i);
+            if(root == mainRoot || groups[root] != null)
+                continue;
+            groups[root] = new Island();
+            newIslands.add(groups[root]);
+            created = true;
+        }
+        if(!created)
+            return;
+
+        // Constraints are moved first, their group is found through the slot of their first body
+        for(int i = 0; i < constraintSlots; ++i) {
+            final var constraint = constraints[i];
+            if(constraint == null)
+                continue;
+            final int root = find(parent, constraint.body(0).islandIndex());
+            if(root == mainRoot)
+                continue;
+            detachConstraint(i);
+            groups[root].addConstraint(constraint);
+        }
+        for(int i = first + 1; i < bodySlots; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            final int root = find(parent, i);
+            if(root == mainRoot)
+                continue;
+            detachBody(i);
+            groups[root].addBody(body);
+        }
+        topologyChanged = true;
+        rebuild = true;
+    }
+
+    private static int find(int[] parent, int node) {
+        while(parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    // Moves all bodies and constraints to the front, reassigning their slots
+    private void compact() {
+        int target = 0;
+        for(int i = 0; i < bodySlots; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            bodies[target] = body;
+            body.setIsland(this, target++);
+        }
+        Arrays.fill(bodies, target, bodySlots, null);
+        bodySlots = target;
+
+        target = 0;
+        for(int i = 0; i < constraintSlots; ++i) {
+            final var constraint = constraints[i];
+            if(constraint == null)
+                continue;
+            constraints[target] = constraint;
+            constraint.setIsland(this, target++);
+        }
+        Arrays.fill(constraints, target, constraintSlots, null);
+        constraintSlots = target;
+    }
+
+    /**
+     * Updates the solver matrices if the topology of this island has changed.
+     * New bodies and constraints are appended to the existing matrices, they are
+     * only built from scratch after a split or when too many slots are empty.
+     */
+    public void prepare() {
+        if(!topologyChanged)
+            return;
+        topologyChanged = false;
+
+        if(constraintObjects == 0) {
+            solver.clear();
+            rebuild = true;
+            return;
+        }
+
+        if(rebuild || bodySlots > bodyCount * 2 + COMPACT_SLACK || constraintSlots > constraintObjects * 2 + COMPACT_SLACK) {
+            compact();
+            solver.rebuild();
+            rebuild = false;
+        } else {
+            solver.update();
+        }
+    }
+
+    /**
+     * Calculates constraint forces and accelerations of all bodies in this island.
+     */
+    public void step() {
+        if(sleeping) {
+            solver.iterationCount = 0;
+            solver.solveFailed = false;
+            return;
+        }
+        if(constraintCount != 0) {
+            final var event = new PhysicsEvents.IslandSolve();
+            event.begin();
+            solver.step();
+            if(event.shouldCommit()) {
+                event.bodies = bodyCount;
+                event.constraints = constraintCount;
+                event.iterations = solver.iterationCount;
+                event.failed = solver.solveFailed;
+                event.commit();
+            }
+            return;
+        }
+
+        // Nothing to solve, bodies are only affected by external forces
+        solver.iterationCount = 0;
+        solver.solveFailed = false;
+        for(int i = 0; i < bodySlots; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            final var state = body.getState();
+            state.setAcceleration(
+                    state.extForceX() * body.posInvMass(),
+                    state.extForceY() * body.posInvMass(),
+                    state.extForceA() * body.rotInvMass()
+            );
+            state.setCForce(0, 0, 0);
+        }
+    }
+
+    public void updateMass(RigidBody body) {
+        if(!topologyChanged && constraintCount != 0) {
+            // If topology has changed then the mass matrix
+            // gets updated when the solver is prepared
+            solver.updateMassMatrix(body.islandIndex(), body.posInvMass(), body.posInvMass(), body.rotInvMass());
+        }
+    }
+
+    private boolean atRest() {
+        for(int i = 0; i < bodySlots; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            final var state = body.getState();
+            if(Math.abs(state.velocityX()) > SLEEP_VELOCITY || Math.abs(state.velocityY()) > SLEEP_VELOCITY || Math.abs(state.velocityA()) > SLEEP_VELOCITY)
+                return false;
+        }
+        return !externalForceApplied() && (constraintCount == 0 || solver.maxError < SLEEP_ERROR);
+    }
+
+    private boolean externalForceApplied() {
+        for(int i = 0; i < bodySlots; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            final var state = body.getState();
+            if(Math.abs(state.extForceX()) > SLEEP_FORCE || Math.abs(state.extForceY()) > SLEEP_FORCE || Math.abs(state.extForceA()) > SLEEP_FORCE)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Should be called at the end of every simulation tick,
+     * puts the island to sleep if it stayed at rest for long enough.
+     * @param tick Number of the tick which just ended
+     */
+    public void updateRest(long tick) {
+        if(sleeping)
+            return;
+        if(!atRest()) {
+            restTicks = 0;
+            return;
+        }
+        if(++restTicks < SLEEP_TICKS)
+            return;
+
+        for(int i = 0; i < bodySlots; ++i) {
+            final var body = bodies[i];
+            if(body == null)
+                continue;
+            final var state = body.getState();
+            state.setVelocity(0, 0);
+            state.setVelocityA(0);
+            state.setAcceleration(0, 0, 0);
+        }
+        sleeping = true;
+        sleepTick = tick;
+    }
+
+    /**
+     * Wakes the island up if it was requested or if any of the bodies has an external force applied.
+     * Must only be called between simulation steps.
+     */
+    public void updateWake() {
+        if(sleeping && (wakeRequested || externalForceApplied()))
+            wake();
+        wakeRequested = false;
+    }
+
+    /**
+     * Wakes the island up immediately, must only be called between simulation steps.
+     */
+    public void wake() {
+        wakeRequested = false;
+        restTicks = 0;
+        sleeping = false;
+    }
+
+    /**
+     * Requests the island to be woken up at the start of the next simulation step,
+     * this method is safe to call at any point.
+     */
+    public void requestWake() {
+        wakeRequested = true;
+    }
+
+    public boolean isSleeping() {
+        return sleeping;
+    }
+
+    /**
+     * @return Tick at which the island fell asleep, 0 if it's awake
+     */
+    public long sleepTick() {
+        return sleeping ? sleepTick : 0;
+    }
+
+    public boolean needsSplitCheck() {
+        return splitCheck;
+    }
+
+    public boolean isEmpty() {
+        return bodyCount == 0;
+    }
+
+    public int bodyCount() {
+        return bodyCount;
+    }
+
+    public int constraintCount() {
+        return constraintCount;
+    }
+
+    // Body slots, empty slots are null
+    RigidBody[] bodySlots() {
+        return bodies;
+    }
+
+    int bodySlotCount() {
+        return bodySlots;
+    }
+
+    // Constraint slots, empty slots are null
+    Constraint[] constraintSlots() {
+        return constraints;
+    }
+
+    int constraintSlotCount() {
+        return constraintSlots;
+    }
+
+    public int iterationCount() {
+        return solver.iterationCount;
+    }
+
+    /**
+     * @return True if the last constraint solve ran out of iterations, the forces are then only approximate
+     */
+    public boolean solveFailed() {
+        return solver.solveFailed;
+    }
+
+    ConstraintSolver solver() {
+        return solver;
+    }
+}
@@ -0,0 +1,153 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Row oriented sparse matrix used for constraint Jacobians.
+ * Every constraint row references at most two bodies, so each row
+ * gets a small fixed number of entry slots. The sparsity pattern is
+ * built once after the matrix is created, constraints allocate their
+ * entries with {@link #slot(int, int)} and later write values directly
+ * into those slots.
+ */
+public class JacobianMatrix {
+    // Two bodies with 3 columns each
+    public static final int ROW_WIDTH = 6;
+
+    private int rows;
+    private int columns;
+
+    int[] rowLength;
+    int[] entryColumn;
+    double[] entryValue;
+
+    public JacobianMatrix(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        rowLength = new int[rows];
+        entryColumn = new int[rows * ROW_WIDTH];
+        entryValue = new double[rows * ROW_WIDTH];
+    }
+
+    /**
+     * Changes the size of this matrix keeping all existing entries,
+     * the row storage grows by doubling its capacity.
+     */
+    public void resize(int newRows, int newColumns) {
+        if(newRows > rowLength.length) {
+            final int capacity = Math.max(newRows, rowLength.length * 2);
+            rowLength = Arrays.copyOf(rowLength, capacity);
+            entryColumn = Arrays.copyOf(entryColumn, capacity * ROW_WIDTH);
+            entryValue = Arrays.copyOf(entryValue, capacity * ROW_WIDTH);
+        }
+        rows = newRows;
+        columns = newColumns;
+    }
+
+    /**
+     * Removes all entries of a row from the sparsity pattern.
+     */
+    public void clearRow(int row) {
+        final int start = row * ROW_WIDTH;
+        Arrays.fill(entryValue, start, start + rowLength[row], 0);
+        rowLength[row] = 0;
+    }
+
+    /**
+     * Adds an entry to the sparsity pattern.
+     * @param row Row of the entry
+     * @param column Column of the entry
+     * @return Slot index of the entry, to be used with {@link #set(int, double)}
+     */
+    public int slot(int row, int column) {
+        final int start = row * ROW_WIDTH;
+        final int end = start + rowLength[row];
+        for(int i = start; i < end; ++i) {
+            if(entryColumn[i] == column)
+                return i;
+        }
+        if(end == start + ROW_WIDTH)
+            throw new IllegalStateException("Jacobian row " + row + " has no free entry slots left");
+        entryColumn[end] = column;
+        ++rowLength[row];
+        return end;
+    }
+
+    public void set(int slot, double value) {
+        entryValue[slot] = value;
+    }
+
+    /**
+     * Calculates output = M * x
+     */
+    public void mult(double[] x, double[] output) {
+        for(int row = 0; row < rows; ++row) {
+            final int start = row * ROW_WIDTH;
+            final int end = start + rowLength[row];
+            double sum = 0;
+            for(int i = start; i < end; ++i)
+                sum += entryValue[i] * x[entryColumn[i]];
+            output[row] = sum;
+        }
+    }
+
+    /**
+     * Calculates output = M * diag(weights) * x
+     */
+    public void mult(double[] x, double[] weights, double[] output) {
+        for(int row = 0; row < rows; ++row) {
+            final int start = row * ROW_WIDTH;
+            final int end = start + rowLength[row];
+            double sum = 0;
+            for(int i = start; i < end; ++i) {
+                final int column = entryColumn[i];
+                sum += entryValue[i] * weights[column] * x[column];
+            }
+            output[row] = sum;
+        }
+    }
+
+    /**
+     * Calculates output = M_T * x
+     */
+    public void multTransposed(double[] x, double[] output) {
+        Arrays.fill(output, 0, columns, 0);
+        for(int row = 0; row < rows; ++row) {
+            final int start = row * ROW_WIDTH;
+            final int end = start + rowLength[row];
+            final double value = x[row];
+            for(int i = start; i < end; ++i)
+                output[entryColumn[i]] += entryValue[i] * value;
+        }
+    }
+
+    /**
+     * Calculates the weighted dot product of two rows, which is
+     * the entry at (row1, row2) of M * diag(weights) * M_T
+     */
+    public double rowDot(int row1, int row2, double[] weights) {
+        final int start1 = row1 * ROW_WIDTH;
+        final int end1 = start1 + rowLength[row1];
+        final int start2 = row2 * ROW_WIDTH;
+        final int end2 = start2 + rowLength[row2];
+        double sum = 0;
+        for(int i = start1; i < end1; ++i) {
+            final int column = entryColumn[i];
+            for(int j = start2; j < end2; ++j) {
+                if(entryColumn[j] == column) {
+                    sum += entryValue[i] * weights[column] * entryValue[j];
+                    break;
+                }
+            }
+        }
+        return sum;
+    }
+
+    public int numRows() {
+        return rows;
+    }
+
+    public int numColumns() {
+        return columns;
+    }
+}
@@ -0,0 +1,179 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import org.joml.Vector2d;
+import org.joml.Vector2fc;
+
+/**
+ * View of a single body inside of a {@link PhysicalSystem}. While the body
+ * is not a part of any world the state is kept in a private single entry system.
+ */
+public class PhysicalState {
+    private PhysicalSystem system;
+    private int index;
+
+    public PhysicalState() {
+        system = new PhysicalSystem(1);
+        index = 0;
+    }
+
+    void attach(PhysicalSystem newSystem, int newIndex) {
+        if(newSystem == system && newIndex == index)
+            return;
+        PhysicalSystem.copy(system, index, newSystem, newIndex);
+        system = newSystem;
+        index = newIndex;
+    }
+
+    void detach() {
+        final var detached = new PhysicalSystem(1);
+        PhysicalSystem.copy(system, index, detached, 0);
+        system.clear(index);
+        system = detached;
+        index = 0;
+    }
+
+    public double positionX() {
+        return system.positionX[index];
+    }
+
+    public double positionY() {
+        return system.positionY[index];
+    }
+
+    public double positionA() {
+        return system.positionA[index];
+    }
+
+    public void setPosition(double x, double y) {
+        system.positionX[index] = x;
+        system.positionY[index] = y;
+    }
+
+    public void setPositionX(double x) {
+        system.positionX[index] = x;
+    }
+
+    public void setPositionY(double y) {
+        system.positionY[index] = y;
+    }
+
+    public void setPositionA(double a) {
+        system.positionA[index] = a;
+    }
+
+    public double velocityX() {
+        return system.velocityX[index];
+    }
+
+    public double velocityY() {
+        return system.velocityY[index];
+    }
+
+    public double velocityA() {
+        return system.velocityA[index];
+    }
+
+    public void setVelocity(double x, double y) {
+        system.velocityX[index] = x;
+        system.velocityY[index] = y;
+    }
+
+    public void setVelocityA(double a) {
+        system.velocityA[index] = a;
+    }
+
+    public double accelerationX() {
+        return system.accelerationX[index];
+    }
+
+    public double accelerationY() {
+        return system.accelerationY[index];
+    }
+
+    public double accelerationA() {
+        return system.accelerationA[index];
+    }
+
+    public void setAcceleration(double x, double y, double a) {
+        system.accelerationX[index] = x;
+        system.accelerationY[index] = y;
+        system.accelerationA[index] = a;
+    }
+
+    public double extForceX() {
+        return system.extForceX[index];
+    }
+
+    public double extForceY() {
+        return system.extForceY[index];
+    }
+
+    public double extForceA() {
+        return system.extForceA[index];
+    }
+
+    public void setExtForce(double x, double y, double a) {
+        system.extForceX[index] = x;
+        system.extForceY[index] = y;
+        system.extForceA[index] = a;
+    }
+
+    public void setExtForceX(double x) {
+        system.extForceX[index] = x;
+    }
+
+    public double cForceX() {
+        return system.cForceX[index];
+    }
+
+    public double cForceY() {
+        return system.cForceY[index];
+    }
+
+    public double cForceA() {
+        return system.cForceA[index];
+    }
+
+    public void setCForce(double x, double y, double a) {
+        system.cForceX[index] = x;
+        system.cForceY[index] = y;
+        system.cForceA[index] = a;
+    }
+
+    public Vector2d position() {
+        return new Vector2d(positionX(), positionY());
+    }
+
+    public Vector2d velocity() {
+        return new Vector2d(velocityX(), velocityY());
+    }
+
+    public void worldPosition(Vector2fc local, Vector2d world) {
+        final var positionA = positionA();
+        final var thetaCos = Math.cos(positionA);
+        final var thetaSin = Math.sin(positionA);
+
+        world.set(
+                local.x() * thetaCos - thetaSin * local.y() + positionX(),
+                local.x() * thetaSin + thetaCos * local.y() + positionY()
+        );
+    }
+
+    public void applyForceAt(float forceX, float forceY, float localX, float localY) {
+        system.extForceX[index] += forceX;
+        system.extForceY[index] += forceY;
+
+        final var positionA = positionA();
+        final var thetaCos = Math.cos(positionA);
+        final var thetaSin = Math.sin(positionA);
+
+        final var wX = thetaCos * localX - thetaSin * localY + positionX();
+        final var wY = thetaSin * localX + thetaCos * localY + positionY();
+
+        system.extForceA[index] += (wY - positionY()) * -forceX + (wX - positionX()) * forceY;
+    }
+
+    public void copy(PhysicalState state) {
+        PhysicalSystem.copy(state.system, state.index, system, index);
+    }
+}
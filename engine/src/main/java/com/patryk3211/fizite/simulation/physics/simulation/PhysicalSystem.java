@@ -0,0 +1,156 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Packed (structure of arrays) storage of rigid body states,
+ * every array is indexed by the rigid body index. {@link PhysicalState}
+ * objects are views into this storage.
+ */
+public class PhysicalSystem {
+    double[] positionX;
+    double[] positionY;
+    double[] positionA;
+
+    double[] velocityX;
+    double[] velocityY;
+    double[] velocityA;
+
+    double[] accelerationX;
+    double[] accelerationY;
+    double[] accelerationA;
+
+    double[] extForceX;
+    double[] extForceY;
+    double[] extForceA;
+
+    double[] cForceX;
+    double[] cForceY;
+    double[] cForceA;
+
+    private PhysicalState[] states;
+    private int length;
+
+    public PhysicalSystem() {
+        this(0);
+    }
+
+    PhysicalSystem(int capacity) {
+        allocate(capacity);
+        states = new PhysicalState[capacity];
+        length = capacity;
+    }
+
+    private void allocate(int capacity) {
+        positionX = new double[capacity];
+        positionY = new double[capacity];
+        positionA = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        velocityA = new double[capacity];
+        accelerationX = new double[capacity];
+        accelerationY = new double[capacity];
+        accelerationA = new double[capacity];
+        extForceX = new double[capacity];
+        extForceY = new double[capacity];
+        extForceA = new double[capacity];
+        cForceX = new double[capacity];
+        cForceY = new double[capacity];
+        cForceA = new double[capacity];
+    }
+
+    private void grow(int capacity) {
+        positionX = Arrays.copyOf(positionX, capacity);
+        positionY = Arrays.copyOf(positionY, capacity);
+        positionA = Arrays.copyOf(positionA, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        velocityA = Arrays.copyOf(velocityA, capacity);
+        accelerationX = Arrays.copyOf(accelerationX, capacity);
+        accelerationY = Arrays.copyOf(accelerationY, capacity);
+        accelerationA = Arrays.copyOf(accelerationA, capacity);
+        extForceX = Arrays.copyOf(extForceX, capacity);
+        extForceY = Arrays.copyOf(extForceY, capacity);
+        extForceA = Arrays.copyOf(extForceA, capacity);
+        cForceX = Arrays.copyOf(cForceX, capacity);
+        cForceY = Arrays.copyOf(cForceY, capacity);
+        cForceA = Arrays.copyOf(cForceA, capacity);
+        states = Arrays.copyOf(states, capacity);
+    }
+
+    public void resize(int newSize) {
+        if(newSize == 0) {
+            // Detach all remaining states so that they keep their values
+            for(int i = 0; i < length; ++i) {
+                if(states[i] != null)
+                    states[i].detach();
+            }
+            allocate(0);
+            states = new PhysicalState[0];
+            length = 0;
+            return;
+        }
+
+        if(states.length >= newSize) {
+            length = newSize;
+            return;
+        }
+
+        // Grow by doubling the capacity to avoid reallocating on every added body
+        grow(Math.max(newSize, states.length * 2));
+        length = newSize;
+    }
+
+    public void setState(int index, PhysicalState state) {
+        final var previous = states[index];
+        if(previous != null && previous != state)
+            previous.detach();
+        states[index] = state;
+        if(state != null)
+            state.attach(this, index);
+    }
+
+    public PhysicalState[] getStates() {
+        return states;
+    }
+
+    public int size() {
+        return length;
+    }
+
+    static void copy(PhysicalSystem from, int fromIndex, PhysicalSystem to, int toIndex) {
+        to.positionX[toIndex] = from.positionX[fromIndex];
+        to.positionY[toIndex] = from.positionY[fromIndex];
+        to.positionA[toIndex] = from.positionA[fromIndex];
+        to.velocityX[toIndex] = from.velocityX[fromIndex];
+        to.velocityY[toIndex] = from.velocityY[fromIndex];
+        to.velocityA[toIndex] = from.velocityA[fromIndex];
+        to.accelerationX[toIndex] = from.accelerationX[fromIndex];
+        to.accelerationY[toIndex] = from.accelerationY[fromIndex];
+        to.accelerationA[toIndex] = from.accelerationA[fromIndex];
+        to.extForceX[toIndex] = from.extForceX[fromIndex];
+        to.extForceY[toIndex] = from.extForceY[fromIndex];
+        to.extForceA[toIndex] = from.extForceA[fromIndex];
+        to.cForceX[toIndex] = from.cForceX[fromIndex];
+        to.cForceY[toIndex] = from.cForceY[fromIndex];
+        to.cForceA[toIndex] = from.cForceA[fromIndex];
+    }
+
+    void clear(int index) {
+        positionX[index] = 0;
+        positionY[index] = 0;
+        positionA[index] = 0;
+        velocityX[index] = 0;
+        velocityY[index] = 0;
+        velocityA[index] = 0;
+        accelerationX[index] = 0;
+        accelerationY[index] = 0;
+        accelerationA[index] = 0;
+        extForceX[index] = 0;
+        extForceY[index] = 0;
+        extForceA[index] = 0;
+        cForceX[index] = 0;
+        cForceY[index] = 0;
+        cForceA[index] = 0;
+    }
+}
@@ -0,0 +1,105 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events of the physics simulation.
+ * Events which are not enabled in the running recording cost next to nothing,
+ * they can be inspected with any JFR tooling under the Fizite category.
+ */
+public final class PhysicsEvents {
+    private PhysicsEvents() {
+    }
+
+    @Name("fizite.PhysicsTick")
+    @Label("Physics Tick")
+    @Category({ "Fizite", "Physics" })
+    @StackTrace(false)
+    @Description("Simulation of a single tick of a physics world")
+    public static final class Tick extends Event {
+        @Label("Bodies")
+        public int bodies;
+        @Label("Islands")
+        public int islands;
+        @Label("Accepted Steps")
+        public int acceptedSteps;
+        @Label("Rejected Steps")
+        public int rejectedSteps;
+        @Label("Max Step Error")
+        public double maxStepError;
+        @Label("Degraded")
+        public boolean degraded;
+        @Label("Failed Solves")
+        @Description("Island solves which ran out of iterations")
+        public int failedSolves;
+    }
+
+    @Name("fizite.PhysicsSubstep")
+    @Label("Physics Substep")
+    @Category({ "Fizite", "Physics" })
+    @StackTrace(false)
+    @Description("Single integration step, including rejected attempts")
+    public static final class Substep extends Event {
+        @Label("Step Time")
+        @Description("Simulated time of the step in seconds")
+        public double stepTime;
+        @Label("Error")
+        @Description("Estimated local error relative to the tolerance")
+        public double error;
+        @Label("Rejected")
+        public boolean rejected;
+    }
+
+    @Name("fizite.ForceGeneration")
+    @Label("Force Generation")
+    @Category({ "Fizite", "Physics" })
+    @StackTrace(false)
+    public static final class ForceGeneration extends Event {
+        @Label("Generators")
+        public int generators;
+    }
+
+    @Name("fizite.ConstraintSolve")
+    @Label("Constraint Solve")
+    @Category({ "Fizite", "Physics" })
+    @StackTrace(false)
+    @Description("Constraint solve of all islands in a single integration stage")
+    public static final class ConstraintSolve extends Event {
+        @Label("Islands")
+        public int islands;
+        @Label("Largest Island")
+        @Description("Body count of the largest island")
+        public int largestIsland;
+        @Label("Max Iterations")
+        public int maxIterations;
+        @Label("Failed Islands")
+        @Description("Islands whose solve ran out of iterations")
+        public int failedIslands;
+    }
+
+    @Name("fizite.IslandSolve")
+    @Label("Island Solve")
+    @Category({ "Fizite", "Physics" })
+    @StackTrace(false)
+    @Description("Constraint solve of a single island, very frequent")
+    @Enabled(false)
+    public static final class IslandSolve extends Event {
+        @Label("Bodies")
+        public int bodies;
+        @Label("Constraints")
+        public int constraints;
+        @Label("Iterations")
+        public int iterations;
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name("fizite.StepHandlers")
+    @Label("Step Handlers")
+    @Category({ "Fizite", "Physics" })
+    @StackTrace(false)
+    public static final class StepHandlers extends Event {
+        @Label("Handlers")
+        public int handlers;
+    }
+}
@@ -0,0 +1,156 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import org.joml.Vector2d;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copy of all body states taken at the end of a simulation tick.
+ * The simulation keeps writing into its live state while other threads
+ * read the last published snapshot, so readers never see a half updated tick.
+ * Bodies are addressed by their {@link RigidBody#index()}.
+ * <p>
+ * Snapshots are handed out by {@link PhysicsWorld#snapshot()} and have to be closed
+ * once the reader is done with them. The world takes the next snapshots into the
+ * buffers of an older one which no reader holds anymore, instead of allocating new ones every tick.
+ */
+public final class PhysicsSnapshot implements AutoCloseable {
+    public static final PhysicsSnapshot EMPTY = new PhysicsSnapshot(0);
+
+    public record BodyState(double positionX, double positionY, double positionA, double velocityX, double velocityY, double velocityA) {
+        public Vector2d position() {
+            return new Vector2d(positionX, positionY);
+        }
+
+        public Vector2d velocity() {
+            return new Vector2d(velocityX, velocityY);
+        }
+    }
+
+    // Threads currently reading this snapshot, it's only reused once they all closed it
+    final AtomicInteger readers = new AtomicInteger();
+
+    // Number of the simulation tick this snapshot was taken after
+    private long tick;
+    private int size;
+
+    private double[] positionX;
+    private double[] positionY;
+    private double[] positionA;
+    private double[] velocityX;
+    private double[] velocityY;
+    private double[] velocityA;
+    private boolean[] present;
+    // Tick at which the island of the body fell asleep, 0 for awake bodies
+    private long[] sleepTick;
+
+    private PhysicsSnapshot(int capacity) {
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        positionX = new double[capacity];
+        positionY = new double[capacity];
+        positionA = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        velocityA = new double[capacity];
+        present = new boolean[capacity];
+        sleepTick = new long[capacity];
+    }
+
+    /**
+     * Copies the current state of the system into a snapshot.
+     * @param reuse Older snapshot whose buffers are used if no reader holds it anymore, may be null
+     */
+    static PhysicsSnapshot take(PhysicsSnapshot reuse, long tick, PhysicalSystem system, List<RigidBody> bodies) {
+        final int size = Math.min(system.size(), bodies.size());
+        final PhysicsSnapshot snapshot;
+        if(reuse != null && reuse != EMPTY && reuse.readers.get() == 0) {
+            snapshot = reuse;
+            if(snapshot.present.length < size)
+                snapshot.allocate(Math.max(size, snapshot.present.length * 2));
+        } else {
+            snapshot = new PhysicsSnapshot(size);
+        }
+        snapshot.tick = tick;
+        snapshot.size = size;
+        System.arraycopy(system.positionX, 0, snapshot.positionX, 0, size);
+        System.arraycopy(system.positionY, 0, snapshot.positionY, 0, size);
+        System.arraycopy(system.positionA, 0, snapshot.positionA, 0, size);
+        System.arraycopy(system.velocityX, 0, snapshot.velocityX, 0, size);
+        System.arraycopy(system.velocityY, 0, snapshot.velocityY, 0, size);
+        System.arraycopy(system.velocityA, 0, snapshot.velocityA, 0, size);
+        for(int i = 0; i < size; ++i) {
+            final var body = bodies.get(i);
+            snapshot.present[i] = body != null;
+            final var island = body != null ? body.getIsland() : null;
+            snapshot.sleepTick[i] = island != null ? island.sleepTick() : 0;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Releases this snapshot, it must not be read after this call.
+     */
+    @Override
+    public void close() {
+        readers.decrementAndGet();
+    }
+
+    public long tick() {
+        return tick;
+    }
+
+    /**
+     * Amount of body indices covered by this snapshot, some of them might be empty.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int index) {
+        return index >= 0 && index < size && present[index];
+    }
+
+    public boolean isSleeping(int index) {
+        return sleepTick[index] != 0;
+    }
+
+    /**
+     * @return Tick at which the island of the body fell asleep, 0 if it's awake. The body doesn't move
+     *         while its island sleeps, so two snapshots with the same sleep tick hold the same state.
+     */
+    public long sleepTick(int index) {
+        return sleepTick[index];
+    }
+
+    public double positionX(int index) {
+        return positionX[index];
+    }
+
+    public double positionY(int index) {
+        return positionY[index];
+    }
+
+    public double positionA(int index) {
+        return positionA[index];
+    }
+
+    public double velocityX(int index) {
+        return velocityX[index];
+    }
+
+    public double velocityY(int index) {
+        return velocityY[index];
+    }
+
+    public double velocityA(int index) {
+        return velocityA[index];
+    }
+
+    public BodyState body(int index) {
+        return new BodyState(positionX[index], positionY[index], positionA[index], velocityX[index], velocityY[index], velocityA[index]);
+    }
+}
@@ -0,0 +1,242 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+/**
+ * Classic RK4 integrator, every step is split into 4 stages with constraint forces solved in between.
+ * The midpoint derivatives of the second stage also give a second order solution,
+ * its difference from the RK4 result is used as an estimate of the local integration error.
+ */
+public class PhysicsSolver {
+    // Allowed local error of a single step, velocities additionally get a relative tolerance
+    private static final double POSITION_TOLERANCE = 1E-5;
+    private static final double VELOCITY_TOLERANCE = 1E-4;
+    private static final double VELOCITY_RELATIVE_TOLERANCE = 1E-4;
+
+    private PhysicalSystem system;
+
+    // Packed copies of positions and velocities, indexed the same way as the system
+    private double[] initialPositionX;
+    private double[] initialPositionY;
+    private double[] initialPositionA;
+    private double[] initialVelocityX;
+    private double[] initialVelocityY;
+    private double[] initialVelocityA;
+
+    private double[] intermediatePositionX;
+    private double[] intermediatePositionY;
+    private double[] intermediatePositionA;
+    private double[] intermediateVelocityX;
+    private double[] intermediateVelocityY;
+    private double[] intermediateVelocityA;
+
+    // Derivatives at the midpoint of the second stage
+    private double[] midpointVelocityX;
+    private double[] midpointVelocityY;
+    private double[] midpointVelocityA;
+    private double[] midpointAccelerationX;
+    private double[] midpointAccelerationY;
+    private double[] midpointAccelerationA;
+
+    private double deltaTime;
+
+    // Valid stages are 0, 1, 2, 3
+    private int currentStage;
+
+    private double stageTimeDelta;
+
+    // Error of the last step relative to the tolerance, the step should be repeated if it's above 1
+    private double error;
+
+    public PhysicsSolver() {
+        resize(0);
+    }
+
+    public void resize(int newSize) {
+        if(newSize != 0 && initialPositionX.length >= newSize)
+            // Don't decrease size TODO: Maybe do if it's a big difference
+            return;
+
+        initialPositionX = new double[newSize];
+        initialPositionY = new double[newSize];
+        initialPositionA = new double[newSize];
+        initialVelocityX = new double[newSize];
+        initialVelocityY = new double[newSize];
+        initialVelocityA = new double[newSize];
+
+        intermediatePositionX = new double[newSize];
+        intermediatePositionY = new double[newSize];
+        intermediatePositionA = new double[newSize];
+        intermediateVelocityX = new double[newSize];
+        intermediateVelocityY = new double[newSize];
+        intermediateVelocityA = new double[newSize];
+
+        midpointVelocityX = new double[newSize];
+        midpointVelocityY = new double[newSize];
+        midpointVelocityA = new double[newSize];
+        midpointAccelerationX = new double[newSize];
+        midpointAccelerationY = new double[newSize];
+        midpointAccelerationA = new double[newSize];
+    }
+
+    public void start(double deltaTime, PhysicalSystem system) {
+        this.system = system;
+        resize(system.size());
+
+        currentStage = 0;
+        error = 0;
+        this.deltaTime = deltaTime;
+    }
+
+    // Sleeping bodies and empty slots have zero velocity and acceleration,
+    // integrating them leaves their state unchanged, so all loops below
+    // can run over the whole arrays without any branches.
+    private static void halfStep(int count, double deltaTime, double[] position, double[] velocity, double[] acceleration,
+                                 double[] initialPosition, double[] initialVelocity) {
+        for(int i = 0; i < count; ++i) {
+            velocity[i] = acceleration[i] * deltaTime * 0.5 + initialVelocity[i];
+            position[i] = velocity[i] * deltaTime * 0.5 + initialPosition[i];
+        }
+    }
+
+    private static void angularStep(int count, double deltaTime, double[] position, double[] velocity, double[] acceleration,
+                                    double[] initialPosition, double[] initialVelocity) {
+        for(int i = 0; i < count; ++i) {
+            velocity[i] = initialVelocity[i] + deltaTime * acceleration[i];
+            position[i] = initialPosition[i] + deltaTime * velocity[i];
+        }
+    }
+
+    private static void accumulate(int count, double stageTimeDelta, double[] position, double[] velocity, double[] derivative,
+                                   double[] secondDerivative) {
+        for(int i = 0; i < count; ++i) {
+            velocity[i] += secondDerivative[i] * stageTimeDelta;
+            position[i] += derivative[i] * stageTimeDelta;
+        }
+    }
+
+    // Largest difference between the RK4 result and the midpoint method result
+    private static double positionError(int count, double deltaTime, double[] result, double[] initial, double[] midpointDerivative) {
+        double error = 0;
+        for(int i = 0; i < count; ++i)
+            error = Math.max(error, Math.abs(result[i] - initial[i] - deltaTime * midpointDerivative[i]));
+        return error / POSITION_TOLERANCE;
+    }
+
+    private static double velocityError(int count, double deltaTime, double[] result, double[] initial, double[] midpointDerivative) {
+        double error = 0;
+        for(int i = 0; i < count; ++i) {
+            final var difference = Math.abs(result[i] - initial[i] - deltaTime * midpointDerivative[i]);
+            error = Math.max(error, difference / (VELOCITY_TOLERANCE + VELOCITY_RELATIVE_TOLERANCE * Math.abs(result[i])));
+        }
+        return error;
+    }
+
+    public void step() {
+        if(currentStage >= 4)
+            currentStage = 0;
+        final var s = system;
+        final int count = s.size();
+        switch(currentStage) {
+            case 0:
+                stageTimeDelta = deltaTime / 6.0;
+                System.arraycopy(s.positionX, 0, initialPositionX, 0, count);
+                System.arraycopy(s.positionY, 0, initialPositionY, 0, count);
+                System.arraycopy(s.positionA, 0, initialPositionA, 0, count);
+                System.arraycopy(s.velocityX, 0, initialVelocityX, 0, count);
+                System.arraycopy(s.velocityY, 0, initialVelocityY, 0, count);
+                System.arraycopy(s.velocityA, 0, initialVelocityA, 0, count);
+
+                System.arraycopy(s.positionX, 0, intermediatePositionX, 0, count);
+                System.arraycopy(s.positionY, 0, intermediatePositionY, 0, count);
+                System.arraycopy(s.positionA, 0, intermediatePositionA, 0, count);
+                System.arraycopy(s.velocityX, 0, intermediateVelocityX, 0, count);
+                System.arraycopy(s.velocityY, 0, intermediateVelocityY, 0, count);
+                System.arraycopy(s.velocityA, 0, intermediateVelocityA, 0, count);
+                break;
+            case 1:
+            case 2:
+                stageTimeDelta = deltaTime / 3.0;
+                angularStep(count, deltaTime * 0.5, s.positionA, s.velocityA, s.accelerationA, initialPositionA, initialVelocityA);
+                halfStep(count, deltaTime, s.positionX, s.velocityX, s.accelerationX, initialPositionX, initialVelocityX);
+                halfStep(count, deltaTime, s.positionY, s.velocityY, s.accelerationY, initialPositionY, initialVelocityY);
+                break;
+            case 3:
+                stageTimeDelta = deltaTime / 6.0;
+                // Last stage is evaluated at the end of the step
+                angularStep(count, deltaTime, s.positionA, s.velocityA, s.accelerationA, initialPositionA, initialVelocityA);
+                halfStep(count, deltaTime * 2, s.positionX, s.velocityX, s.accelerationX, initialPositionX, initialVelocityX);
+                halfStep(count, deltaTime * 2, s.positionY, s.velocityY, s.accelerationY, initialPositionY, initialVelocityY);
+                break;
+            default:
+                stageTimeDelta = 0;
+        }
+    }
+
+    public void solve() {
+        final var s = system;
+        final int count = s.size();
+        accumulate(count, stageTimeDelta, intermediatePositionA, intermediateVelocityA, s.velocityA, s.accelerationA);
+        accumulate(count, stageTimeDelta, intermediatePositionX, intermediateVelocityX, s.velocityX, s.accelerationX);
+        accumulate(count, stageTimeDelta, intermediatePositionY, intermediateVelocityY, s.velocityY, s.accelerationY);
+
+        if(currentStage == 1) {
+            System.arraycopy(s.velocityX, 0, midpointVelocityX, 0, count);
+            System.arraycopy(s.velocityY, 0, midpointVelocityY, 0, count);
+            System.arraycopy(s.velocityA, 0, midpointVelocityA, 0, count);
+            System.arraycopy(s.accelerationX, 0, midpointAccelerationX, 0, count);
+            System.arraycopy(s.accelerationY, 0, midpointAccelerationY, 0, count);
+            System.arraycopy(s.accelerationA, 0, midpointAccelerationA, 0, count);
+        }
+
+        if(currentStage++ == 3) {
+            error = Math.max(error, positionError(count, deltaTime, intermediatePositionX, initialPositionX, midpointVelocityX));
+            error = Math.max(error, positionError(count, deltaTime, intermediatePositionY, initialPositionY, midpointVelocityY));
+            error = Math.max(error, positionError(count, deltaTime, intermediatePositionA, initialPositionA, midpointVelocityA));
+            error = Math.max(error, velocityError(count, deltaTime, intermediateVelocityX, initialVelocityX, midpointAccelerationX));
+            error = Math.max(error, velocityError(count, deltaTime, intermediateVelocityY, initialVelocityY, midpointAccelerationY));
+            error = Math.max(error, velocityError(count, deltaTime, intermediateVelocityA, initialVelocityA, midpointAccelerationA));
+
+            System.arraycopy(intermediateVelocityA, 0, s.velocityA, 0, count);
+            System.arraycopy(intermediateVelocityX, 0, s.velocityX, 0, count);
+            System.arraycopy(intermediateVelocityY, 0, s.velocityY, 0, count);
+            System.arraycopy(intermediatePositionX, 0, s.positionX, 0, count);
+            System.arraycopy(intermediatePositionY, 0, s.positionY, 0, count);
+
+            final var positionA = s.positionA;
+            for(int i = 0; i < count; ++i) {
+                var angle = intermediatePositionA[i];
+                if(angle > Math.PI * 2) {
+                    angle -= Math.PI * 2;
+                }
+                if(angle < Math.PI * -2) {
+                    angle += Math.PI * 2;
+                }
+                positionA[i] = angle;
+            }
+        }
+    }
+
+    /**
+     * Restores positions and velocities from before the last step.
+     */
+    public void reject() {
+        final var s = system;
+        final int count = s.size();
+        System.arraycopy(initialPositionX, 0, s.positionX, 0, count);
+        System.arraycopy(initialPositionY, 0, s.positionY, 0, count);
+        System.arraycopy(initialPositionA, 0, s.positionA, 0, count);
+        System.arraycopy(initialVelocityX, 0, s.velocityX, 0, count);
+        System.arraycopy(initialVelocityY, 0, s.velocityY, 0, count);
+        System.arraycopy(initialVelocityA, 0, s.velocityA, 0, count);
+    }
+
+    /**
+     * Estimated local error of the last finished step divided by the tolerance.
+     */
+    public double error() {
+        return error;
+    }
+
+    public boolean stepFinished() {
+        return currentStage >= 4;
+    }
+}
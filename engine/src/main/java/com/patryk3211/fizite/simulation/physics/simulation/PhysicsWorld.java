@@ -0,0 +1,715 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.Constraint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class PhysicsWorld {
+    private static final Logger LOGGER = LoggerFactory.getLogger("fizite");
+
+    // Default parameters
+    public static final double DELTA_TIME = 1.0f / 20.0f;
+    public static final int STEPS = 100;
+    // Limits of the step count in a single tick
+    public static final int MIN_STEP_COUNT = 10;
+    public static final int MAX_STEP_COUNT = 200;
+    // Step size controller parameters, the local error of the midpoint estimate is of 3rd order
+    private static final double STEP_SAFETY = 0.9;
+    private static final double STEP_MIN_FACTOR = 0.2;
+    private static final double STEP_MAX_FACTOR = 2;
+    // Minimum amount of work (bodies + constraint rows) before island solving is split between threads
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    // Shared by the island solver and the gas sweep of every dimension, created on first use
+    private static int solverThreads = Runtime.getRuntime().availableProcessors();
+    private static volatile ForkJoinPool solverPool;
+
+    private static class IslandSolveTask extends RecursiveAction {
+        private final Island[] islands;
+        private final int[] work;
+        private final int start;
+        private final int end;
+
+        public IslandSolveTask(Island[] islands, int[] work, int start, int end) {
+            this.islands = islands;
+            this.work = work;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start == 1 || work[end] - work[start] < PARALLEL_THRESHOLD) {
+                for(int i = start; i < end; ++i)
+                    islands[i].step();
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(new IslandSolveTask(islands, work, start, middle), new IslandSolveTask(islands, work, middle, end));
+        }
+    }
+
+    private final double deltaTime;
+    private final double minStepTime;
+    private final double maxStepTime;
+    // Step size chosen by the controller, it carries over between ticks
+    private double stepTime;
+    // Use the minimum step count and never reject steps, set when the simulation can't keep up
+    private boolean degraded;
+
+    private final PhysicsSolver physicsSolver;
+    private final PhysicalSystem system;
+
+    private final List<RigidBody> rigidBodies;
+    // Stack of free body indices, entries are checked when popped since
+    // a free index can also be taken by adding a body with an explicit index
+    private int[] freeIndices;
+    private int freeCount;
+    private final Registry<Constraint> constraints;
+    private boolean topologyChanged;
+    private int bodyCount;
+
+    private final List<Island> islands;
+    // Constraints which reference bodies that were removed from the world
+    private final Registry<Constraint> detachedConstraints;
+    private Island[] islandArray;
+    // Prefix sum of island work (body count + constraint rows), used to split parallel solving
+    private int[] islandWork;
+
+    private final Registry<IPhysicsStepHandler> stepHandlers;
+    private final Registry<IForceGenerator> forceGenerators;
+
+    // Last published state snapshot, read by other threads
+    private volatile PhysicsSnapshot snapshot;
+    // Snapshot published before the last one, its buffers are reused once no reader holds it
+    private PhysicsSnapshot spareSnapshot;
+    private long tickNumber;
+
+    // Profiling info
+    public long startTime;
+    public long[] constraintSolveTime;
+    public long[] forceGeneratorTime;
+    public long[] physicsStepTime;
+    public long[] physicsSolveTime;
+    public long[] stepHandlersTime;
+    public int[] iterationCount;
+    public long totalTime;
+    // Amount of recorded entries in the per stage and per step profiling arrays
+    public int stageFrameCount;
+    public int stepFrameCount;
+    // Only every n-th step is recorded in the profiling arrays, 0 disables them
+    private int sampleRate;
+    private int sampleCounter;
+
+    // Step statistics of the last tick
+    public int acceptedSteps;
+    public int rejectedSteps;
+    public double maxStepError;
+    // Island solves which ran out of iterations, counted in every stage of accepted and rejected steps
+    public int failedSolves;
+    // Exponential moving average of accepted steps per tick
+    public double averageSteps;
+
+    public PhysicsWorld() {
+        this(DELTA_TIME, STEPS);
+    }
+
+    public PhysicsWorld(double deltaTime, int steps) {
+        physicsSolver = new PhysicsSolver();
+        system = new PhysicalSystem();
+
+        rigidBodies = new ArrayList<>();
+        freeIndices = new int[16];
+        freeCount = 0;
+        constraints = new Registry<>();
+        stepHandlers = new Registry<>();
+        forceGenerators = new Registry<>();
+
+        islands = new ArrayList<>();
+        detachedConstraints = new Registry<>();
+        islandArray = new Island[0];
+        islandWork = new int[1];
+        topologyChanged = true;
+        bodyCount = 0;
+        snapshot = PhysicsSnapshot.EMPTY;
+        spareSnapshot = null;
+        tickNumber = 0;
+
+        this.deltaTime = deltaTime;
+        this.minStepTime = deltaTime / MAX_STEP_COUNT;
+        this.maxStepTime = deltaTime / MIN_STEP_COUNT;
+        this.stepTime = Math.max(Math.min(deltaTime / steps, maxStepTime), minStepTime);
+        this.averageSteps = deltaTime / stepTime;
+        this.sampleRate = 1;
+
+        constraintSolveTime = new long[steps * 4];
+        forceGeneratorTime = new long[steps * 4];
+        physicsStepTime = new long[steps * 4];
+        physicsSolveTime = new long[steps * 4];
+        iterationCount = new int[steps * 4];
+        stepHandlersTime = new long[steps];
+    }
+
+    private void ensureProfilingCapacity(int stageFrames, int stepFrames) {
+        if(stageFrames > physicsStepTime.length) {
+            final int capacity = Math.max(stageFrames, physicsStepTime.length * 2);
+            constraintSolveTime = Arrays.copyOf(constraintSolveTime, capacity);
+            forceGeneratorTime = Arrays.copyOf(forceGeneratorTime, capacity);
+            physicsStepTime = Arrays.copyOf(physicsStepTime, capacity);
+            physicsSolveTime = Arrays.copyOf(physicsSolveTime, capacity);
+            iterationCount = Arrays.copyOf(iterationCount, capacity);
+        }
+        if(stepFrames > stepHandlersTime.length)
+            stepHandlersTime = Arrays.copyOf(stepHandlersTime, Math.max(stepFrames, stepHandlersTime.length * 2));
+    }
+
+    // Calculates the size of the next step from the error of the last one
+    private double nextStepTime(double stepTime, double error) {
+        final double factor = error == 0 ? STEP_MAX_FACTOR : STEP_SAFETY * Math.pow(error, -1.0 / 3.0);
+        final double newStepTime = stepTime * Math.max(Math.min(factor, STEP_MAX_FACTOR), STEP_MIN_FACTOR);
+        return Math.max(Math.min(newStepTime, maxStepTime), minStepTime);
+    }
+
+    public void clear() {
+        system.resize(0);
+        physicsSolver.resize(0);
+        rigidBodies.clear();
+        freeCount = 0;
+        constraints.clear();
+        islands.clear();
+        detachedConstraints.clear();
+        islandArray = new Island[0];
+        islandWork = new int[1];
+        forceGenerators.clear();
+        stepHandlers.clear();
+        bodyCount = 0;
+        topologyChanged = true;
+        snapshot = PhysicsSnapshot.EMPTY;
+        spareSnapshot = null;
+    }
+
+    private void addToIsland(RigidBody body) {
+        final var island = new Island();
+        island.addBody(body);
+        islands.add(island);
+        topologyChanged = true;
+    }
+
+    private int popFreeIndex() {
+        while(freeCount > 0) {
+            final int index = freeIndices[--freeCount];
+            if(rigidBodies.get(index) == null)
+                return index;
+        }
+        return -1;
+    }
+
+    private void pushFreeIndex(int index) {
+        if(freeCount == freeIndices.length) {
+            // Drop entries which are no longer free or were pushed more than once before growing
+            final var seen = new boolean[rigidBodies.size()];
+            int count = 0;
+            for(int i = 0; i < freeCount; ++i) {
+                final int free = freeIndices[i];
+                if(rigidBodies.get(free) == null && !seen[free]) {
+                    seen[free] = true;
+                    freeIndices[count++] = free;
+                }
+            }
+            freeCount = count;
+            if(freeCount == freeIndices.length)
+                freeIndices = Arrays.copyOf(freeIndices, freeIndices.length * 2);
+        }
+        freeIndices[freeCount++] = index;
+    }
+
+    public void addRigidBody(RigidBody body) {
+        int index = popFreeIndex();
+        if(index == -1) {
+            index = rigidBodies.size();
+            rigidBodies.add(body);
+            system.resize(index + 1);
+        } else {
+            rigidBodies.set(index, body);
+        }
+        system.setState(index, body.getState());
+        body.assign(index, this);
+        addToIsland(body);
+        ++bodyCount;
+    }
+
+    public void addRigidBody(RigidBody body, int index) {
+        if(rigidBodies.size() == index) {
+            rigidBodies.add(body);
+            system.resize(index + 1);
+        } else if(rigidBodies.size() < index) {
+            while(rigidBodies.size() < index) {
+                rigidBodies.add(null);
+                pushFreeIndex(rigidBodies.size() - 1);
+            }
+            rigidBodies.add(body);
+            system.resize(index + 1);
+        } else if(rigidBodies.get(index) == null) {
+            rigidBodies.set(index, body);
+        } else {
+            throw new IllegalArgumentException("Given index is already in use");
+        }
+        system.setState(index, body.getState());
+        body.assign(index, this);
+        addToIsland(body);
+        ++bodyCount;
+    }
+
+    public void removeRigidBody(RigidBody body) {
+        rigidBodies.set(body.index(), null);
+        pushFreeIndex(body.index());
+        system.setState(body.index(), null);
+        final var island = body.getIsland();
+        if(island != null) {
+            island.wake();
+            island.removeBody(body);
+        }
+        --bodyCount;
+        topologyChanged = true;
+    }
+
+    public void addConstraint(Constraint constraint) {
+        constraints.add(constraint);
+        topologyChanged = true;
+
+        // Find the biggest island, all other islands connected by this constraint get merged into it
+        Island target = null;
+        for(int i = 0; i < constraint.bodyCount(); ++i) {
+            final var island = constraint.body(i).getIsland();
+            if(island == null) {
+                LOGGER.warn("Constraint added to the world references a body which isn't a part of it");
+                detachedConstraints.add(constraint);
+                return;
+            }
+            if(target == null || island.bodyCount() > target.bodyCount())
+                target = island;
+        }
+        assert target != null : "Constraint must affect at least one body";
+
+        for(int i = 0; i < constraint.bodyCount(); ++i) {
+            final var island = constraint.body(i).getIsland();
+            island.wake();
+            if(island != target)
+                target.merge(island);
+        }
+        target.addConstraint(constraint);
+    }
+
+    public void removeConstraint(Constraint constraint) {
+        if(constraints.remove(constraint)) {
+            final var island = constraint.getIsland();
+            if(island != null) {
+                island.wake();
+                island.removeConstraint(constraint);
+            } else
+                detachedConstraints.remove(constraint);
+            topologyChanged = true;
+        }
+    }
+
+    public void addStepHandler(IPhysicsStepHandler handler) {
+        stepHandlers.add(handler);
+    }
+
+    public void removeStepHandler(IPhysicsStepHandler handler) {
+        stepHandlers.remove(handler);
+    }
+
+    public void addForceGenerator(IForceGenerator generator) {
+        forceGenerators.add(generator);
+    }
+
+    public void removeForceGenerator(IForceGenerator generator) {
+        forceGenerators.remove(generator);
+    }
+
+    private void updateIslands() {
+        if(!topologyChanged)
+            return;
+
+        final List<Island> newIslands = new ArrayList<>();
+        for(final var island : islands) {
+            if(island.needsSplitCheck())
+                island.split(newIslands, detachedConstraints);
+        }
+        islands.addAll(newIslands);
+        islands.removeIf(Island::isEmpty);
+
+        islandArray = islands.toArray(new Island[0]);
+        islandWork = new int[islandArray.length + 1];
+        for(int i = 0; i < islandArray.length; ++i) {
+            final var island = islandArray[i];
+            island.prepare();
+            islandWork[i + 1] = islandWork[i] + island.bodyCount() + island.constraintCount();
+        }
+        topologyChanged = false;
+    }
+
+    private void solveIslands() {
+        if(islandArray.length == 1 || islandWork[islandArray.length] < PARALLEL_THRESHOLD) {
+            for(final var island : islandArray)
+                island.step();
+        } else {
+            solverPool().invoke(new IslandSolveTask(islandArray, islandWork, 0, islandArray.length));
+        }
+    }
+
+    private int largestIsland() {
+        int count = 0;
+        for(final var island : islandArray)
+            count = Math.max(count, island.bodyCount());
+        return count;
+    }
+
+    private int failedIslands() {
+        int count = 0;
+        for(final var island : islandArray) {
+            if(island.solveFailed())
+                ++count;
+        }
+        return count;
+    }
+
+    private int maxIterationCount() {
+        int count = 0;
+        for(final var island : islandArray)
+            count = Math.max(count, island.iterationCount());
+        return count;
+    }
+
+    public void simulate() {
+        final var tickEvent = new PhysicsEvents.Tick();
+        tickEvent.begin();
+        totalTime = -System.nanoTime();
+
+        startTime = -System.nanoTime();
+        updateIslands();
+
+        startTime += System.nanoTime();
+
+        int debugFrame = 0;
+        int stepFrame = 0;
+        acceptedSteps = 0;
+        rejectedSteps = 0;
+        maxStepError = 0;
+        failedSolves = 0;
+        double time = 0;
+        while(deltaTime - time > minStepTime * 1E-3) {
+            // Spread the remaining time evenly between steps of at most the controller's step size
+            final double remaining = deltaTime - time;
+            if(degraded)
+                stepTime = maxStepTime;
+            final double currentStepTime = remaining / Math.ceil(remaining / stepTime - 1E-9);
+            // Only every n-th step is timed for the timing report
+            final boolean sampled = sampleRate != 0 && sampleCounter++ % sampleRate == 0;
+
+            final var substepEvent = new PhysicsEvents.Substep();
+            substepEvent.begin();
+            if(bodyCount != 0) {
+                if(sampled)
+                    ensureProfilingCapacity(debugFrame + 4, stepFrame + 1);
+                for(final var island : islandArray)
+                    island.updateWake();
+                physicsSolver.start(currentStepTime, system);
+                do {
+                    final long stageStart = sampled ? System.nanoTime() : 0;
+                    // Physics part I
+                    physicsSolver.step();
+                    final long stepEnd = sampled ? System.nanoTime() : 0;
+
+                    // Generate external forces
+                    final var forceEvent = new PhysicsEvents.ForceGeneration();
+                    forceEvent.begin();
+                    forceGenerators.forEach(g -> g.apply(currentStepTime));
+                    if(forceEvent.shouldCommit()) {
+                        forceEvent.generators = forceGenerators.size();
+                        forceEvent.commit();
+                    }
+                    final long forceEnd = sampled ? System.nanoTime() : 0;
+
+                    // Calculate constraint forces
+                    final var constraintEvent = new PhysicsEvents.ConstraintSolve();
+                    constraintEvent.begin();
+                    solveIslands();
+                    final int failed = failedIslands();
+                    failedSolves += failed;
+                    if(constraintEvent.shouldCommit()) {
+                        constraintEvent.islands = islandArray.length;
+                        constraintEvent.largestIsland = largestIsland();
+                        constraintEvent.maxIterations = maxIterationCount();
+                        constraintEvent.failedIslands = failed;
+                        constraintEvent.commit();
+                    }
+                    final long constraintEnd = sampled ? System.nanoTime() : 0;
+
+                    // Physics part II
+                    physicsSolver.solve();
+
+                    if(sampled) {
+                        physicsStepTime[debugFrame] = stepEnd - stageStart;
+                        forceGeneratorTime[debugFrame] = forceEnd - stepEnd;
+                        constraintSolveTime[debugFrame] = constraintEnd - forceEnd;
+                        physicsSolveTime[debugFrame] = System.nanoTime() - constraintEnd;
+                        iterationCount[debugFrame] = maxIterationCount();
+                        ++debugFrame;
+                    }
+                } while (!physicsSolver.stepFinished());
+
+                final double error = physicsSolver.error();
+                stepTime = nextStepTime(currentStepTime, error);
+                final boolean rejected = error > 1 && !degraded && currentStepTime > minStepTime * (1 + 1E-9);
+                if(substepEvent.shouldCommit()) {
+                    substepEvent.stepTime = currentStepTime;
+                    substepEvent.error = error;
+                    substepEvent.rejected = rejected;
+                    substepEvent.commit();
+                }
+                if(rejected) {
+                    // Error is too big, repeat the step with a smaller step size
+                    physicsSolver.reject();
+                    ++rejectedSteps;
+                    continue;
+                }
+                maxStepError = Math.max(maxStepError, error);
+            } else {
+                if(sampled)
+                    ensureProfilingCapacity(debugFrame, stepFrame + 1);
+                stepTime = maxStepTime;
+            }
+            time += currentStepTime;
+
+            // Post-step
+            final long handlersStart = sampled ? System.nanoTime() : 0;
+            final var handlersEvent = new PhysicsEvents.StepHandlers();
+            handlersEvent.begin();
+            stepHandlers.forEach(h -> h.onStepEnd(currentStepTime));
+            if(handlersEvent.shouldCommit()) {
+                handlersEvent.handlers = stepHandlers.size();
+                handlersEvent.commit();
+            }
+            if(sampled)
+                stepHandlersTime[stepFrame++] = System.nanoTime() - handlersStart;
+            ++acceptedSteps;
+        }
+        stageFrameCount = debugFrame;
+        stepFrameCount = stepFrame;
+        averageSteps += (acceptedSteps - averageSteps) * 0.05;
+        ++tickNumber;
+        for(final var island : islandArray)
+            island.updateRest(tickNumber);
+        final var previous = snapshot;
+        snapshot = PhysicsSnapshot.take(spareSnapshot, tickNumber, system, rigidBodies);
+        spareSnapshot = previous;
+        stepHandlers.forEach(IPhysicsStepHandler::onTickEnd);
+        totalTime += System.nanoTime();
+        if(tickEvent.shouldCommit()) {
+            tickEvent.bodies = bodyCount;
+            tickEvent.islands = islandArray.length;
+            tickEvent.acceptedSteps = acceptedSteps;
+            tickEvent.rejectedSteps = rejectedSteps;
+            tickEvent.maxStepError = maxStepError;
+            tickEvent.degraded = degraded;
+            tickEvent.failedSolves = failedSolves;
+            tickEvent.commit();
+        }
+
+//        for(final var body : rigidBodies) {
+//            if(body == null)
+//                continue;
+//            if(body.externalForceReset) {
+//                final var state = body.getState();
+//                if(state.extForceA != 0) System.out.println("Reset angular force to 0");
+//                state.extForce.x = 0;
+//                state.extForce.y = 0;
+//                state.extForceA = 0;
+//            }
+//        }
+
+        debugWrite();
+    }
+
+    public List<RigidBody> bodies() {
+        return rigidBodies;
+    }
+
+    public Collection<Constraint> constraints() {
+        return constraints;
+    }
+
+    /**
+     * Latest state snapshot, published at the end of every tick. Safe to call from any thread,
+     * the snapshot has to be closed once the caller is done reading it.
+     */
+    public PhysicsSnapshot snapshot() {
+        while(true) {
+            final var snapshot = this.snapshot;
+            snapshot.readers.incrementAndGet();
+            // The snapshot might have been retired and reused before the reader was counted,
+            // it's only safe to read if it's still the published one
+            if(snapshot == this.snapshot)
+                return snapshot;
+            snapshot.readers.decrementAndGet();
+        }
+    }
+
+    public PhysicalSystem system() {
+        return system;
+    }
+
+    public int bodyCount() {
+        return bodyCount;
+    }
+
+    public double totalKineticEnergy() {
+        double totalEnergy = 0;
+        for(final var body : rigidBodies) {
+            totalEnergy += body.kineticEnergy();
+        }
+        return totalEnergy;
+    }
+
+    public void updateMass(RigidBody body) {
+        final var island = body.getIsland();
+        if(island != null)
+            island.updateMass(body);
+    }
+
+    public List<Island> islands() {
+        return islands;
+    }
+
+    /**
+     * Sets the amount of threads of the solver pool, only has an effect before the pool is first used.
+     */
+    public static void setSolverThreads(int threads) {
+        if(threads < 1)
+            throw new IllegalArgumentException("Solver pool needs at least one thread");
+        solverThreads = threads;
+    }
+
+    /**
+     * Pool which splits the work of a single simulation between threads, shared by all worlds
+     * and gas networks so that parallel dimensions don't each bring their own set of threads.
+     */
+    public static ForkJoinPool solverPool() {
+        var pool = solverPool;
+        if(pool == null) {
+            synchronized(PhysicsWorld.class) {
+                pool = solverPool;
+                if(pool == null) {
+                    pool = new ForkJoinPool(solverThreads, forkJoinPool -> {
+                        final var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                        thread.setName("Fizite Solver " + thread.getPoolIndex());
+                        return thread;
+                    }, null, false);
+                    solverPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Trades accuracy for speed, a degraded world always uses {@link #MIN_STEP_COUNT} steps per tick.
+     */
+    public void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Sets how often steps are timed for the profiling arrays, every n-th step is timed
+     * and 0 disables the timing. JFR events are not affected by this.
+     */
+    public void setSampleRate(int sampleRate) {
+        if(sampleRate < 0)
+            throw new IllegalArgumentException("Sample rate can't be negative");
+        this.sampleRate = sampleRate;
+        sampleCounter = 0;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Amount of steps taken during the last tick.
+     */
+    public int stepCount() {
+        return acceptedSteps;
+    }
+
+    public void fireStepHandler() {
+        stepHandlers.forEach(handler -> handler.onStepEnd(0));
+    }
+
+    // --------======== Debugging stuff ========--------
+
+    private OutputStreamWriter writer = null;
+    private int writerFrameCount = 0;
+    private Runnable finishCallback = null;
+
+    private static void dumpBody(OutputStreamWriter writer, RigidBody body) throws IOException {
+        final var state = body.getState();
+        writer.write("Body" + body.getMarker() + body.index() + "\t");
+        writer.write(state.positionX() + "," + state.positionY() + "," + state.positionA() + "\t");
+        writer.write(state.velocityX() + "," + state.velocityY() + "," + state.velocityA() + "\n");
+        dumpVector(writer, body.index() + 100, state.positionX(), state.positionY(), state.extForceX(), state.extForceY());
+        dumpVector(writer, body.index() + 200, state.positionX(), state.positionY(), state.cForceX(), state.cForceY());
+    }
+
+    private static void dumpVector(OutputStreamWriter writer, int index, double originX, double originY, double directionX, double directionY) throws IOException {
+        writer.write("Vector" + index + "\t");
+        writer.write(originX + "," + originY + "\t");
+        writer.write(directionX + "," + directionY + "\n");
+    }
+
+    public void addOutputWriter(int frameCount, Runnable finishCallback) {
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream("output.phys"));
+            writerFrameCount = frameCount;
+            this.finishCallback = finishCallback;
+        } catch (FileNotFoundException e) {
+            e.printStackTrace(System.err);
+        }
+    }
+
+    private void debugWrite() {
+        try {
+            if(writer != null) {
+                for (final var body : rigidBodies) {
+                    if(body == null)
+                        continue;
+                    dumpBody(writer, body);
+                }
+                writer.write("%\n");
+                writer.flush();
+                if (writerFrameCount-- <= 0) {
+                    writer.close();
+                    writer = null;
+                    if(finishCallback != null)
+                        finishCallback.run();
+                    finishCallback = null;
+                }
+            }
+        } catch(IOException e) {
+            e.printStackTrace(System.err);
+        }
+    }
+}
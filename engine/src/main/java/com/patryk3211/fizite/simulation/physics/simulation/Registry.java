@@ -0,0 +1,137 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Array backed collection with constant time removal which keeps insertion order.
+ * Every element gets a handle (its slot in the array), removing an element
+ * only clears its slot, the array gets compacted once more than half of it is empty.
+ * Elements are compared by identity.
+ * @param <T> Element type
+ */
+public class Registry<T> extends AbstractCollection<T> {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Object[] elements;
+    private final IdentityHashMap<T, Integer> handles;
+    // One past the last used slot
+    private int end;
+    private int size;
+
+    public Registry() {
+        elements = new Object[INITIAL_CAPACITY];
+        handles = new IdentityHashMap<>();
+        end = 0;
+        size = 0;
+    }
+
+    @Override
+    public boolean add(T element) {
+        if(handles.containsKey(element))
+            return false;
+        if(end == elements.length)
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        handles.put(element, end);
+        elements[end++] = element;
+        ++size;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        final var handle = handles.remove(element);
+        if(handle == null)
+            return false;
+        elements[handle] = null;
+        --size;
+        if(end > INITIAL_CAPACITY && size < end / 2)
+            compact();
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compact() {
+        int target = 0;
+        for(int i = 0; i < end; ++i) {
+            final var element = elements[i];
+            if(element == null)
+                continue;
+            if(target != i) {
+                elements[target] = element;
+                handles.put((T) element, target);
+            }
+            ++target;
+        }
+        Arrays.fill(elements, target, end, null);
+        end = target;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return handles.containsKey(element);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, 0, end, null);
+        handles.clear();
+        end = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super T> action) {
+        for(int i = 0; i < end; ++i) {
+            final var element = elements[i];
+            if(element != null)
+                action.accept((T) element);
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int next = skip(0);
+            private int current = -1;
+
+            private int skip(int index) {
+                while(index < end && elements[index] == null)
+                    ++index;
+                return index;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if(next >= end)
+                    throw new NoSuchElementException();
+                current = next;
+                next = skip(next + 1);
+                return (T) elements[current];
+            }
+
+            @Override
+            public void remove() {
+                if(current == -1)
+                    throw new IllegalStateException();
+                // Clear the slot without compacting, so that the iteration can continue
+                handles.remove(elements[current]);
+                elements[current] = null;
+                --size;
+                current = -1;
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RigidBody {
+    private static final Logger LOGGER = LoggerFactory.getLogger("fizite");
+
+    private final PhysicalState state;
+    private PhysicsWorld world;
+    private int rbIndex;
+    private Island island;
+    private int islandIndex;
+    private String marker;
+
+    private float mass;
+
+    private boolean lockPosition;
+
+    public RigidBody() {
+        this.state = new PhysicalState();
+        this.rbIndex = -1;
+        this.world = null;
+        this.island = null;
+        this.islandIndex = -1;
+        this.mass = 1;
+        this.lockPosition = false;
+        this.marker = "";
+    }
+
+    public void setMarker(String marker) {
+        this.marker = marker;
+    }
+
+    public String getMarker() {
+        return marker;
+    }
+
+    public float getMass() {
+        return mass;
+    }
+
+    private void updateMass() {
+        if(world != null) {
+            world.updateMass(this);
+        }
+    }
+
+    public float posInvMass() {
+        return lockPosition ? 0 : 1.0f / mass;
+    }
+
+    public float rotInvMass() {
+        // TODO: Change this to moment of inertia
+        return 1.0f / mass;
+    }
+
+    public void setMass(float mass) {
+        this.mass = mass;
+        updateMass();
+    }
+
+    public void lockPosition() {
+        this.lockPosition = true;
+        updateMass();
+    }
+
+    public int index() {
+        return rbIndex;
+    }
+
+    public void assign(int index, PhysicsWorld world) {
+        if(this.rbIndex != -1) {
+            LOGGER.warn("Assigning a RigidBody to a world even though it was already assigned one");
+        }
+        this.rbIndex = index;
+        this.world = world;
+    }
+
+    public void setIsland(Island island, int index) {
+        this.island = island;
+        this.islandIndex = index;
+    }
+
+    public Island getIsland() {
+        return island;
+    }
+
+    /**
+     * Requests the island of this body to be woken up, safe to call from any thread.
+     */
+    public void wake() {
+        final var island = this.island;
+        if(island != null)
+            island.requestWake();
+    }
+
+    /**
+     * Index of this body inside of its island, used for addressing constraint solver matrices.
+     * @return Local index
+     */
+    public int islandIndex() {
+        return islandIndex;
+    }
+
+    public PhysicalState getState() {
+        return state;
+    }
+
+    /**
+     * State of this body from the last snapshot published by its world, safe to call from any thread.
+     * Bodies which weren't simulated yet report their current state.
+     */
+    public PhysicsSnapshot.BodyState snapshotState() {
+        final var world = this.world;
+        if(world != null) {
+            try(final var snapshot = world.snapshot()) {
+                if(snapshot.contains(rbIndex))
+                    return snapshot.body(rbIndex);
+            }
+        }
+        return new PhysicsSnapshot.BodyState(state.positionX(), state.positionY(), state.positionA(), state.velocityX(), state.velocityY(), state.velocityA());
+    }
+
+    public double kineticEnergy() {
+        return ((state.velocityX() * state.velocityX() + state.velocityY() * state.velocityY()) * mass + state.velocityA() * state.velocityA() * mass) / 2;
+    }
+
+    public PhysicsWorld getWorld() {
+        return world;
+    }
+}
@@ -0,0 +1,126 @@
+package com.patryk3211.fizite.simulation.physics.simulation.constraints;
+
+import com.patryk3211.fizite.simulation.physics.simulation.JacobianMatrix;
+import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
+import org.ejml.data.DMatrixRMaj;
+import org.joml.Vector2f;
+
+public class BearingConstraint extends Constraint {
+    private final Vector2f anchor1;
+    private final Vector2f anchor2;
+
+    // Slots of the angle dependent Jacobian entries
+    private int angleSlot1X;
+    private int angleSlot1Y;
+    private int angleSlot2X;
+    private int angleSlot2Y;
+    private int angleDotSlot1X;
+    private int angleDotSlot1Y;
+    private int angleDotSlot2X;
+    private int angleDotSlot2Y;
+
+    public BearingConstraint(RigidBody body1, RigidBody body2, float anchor1x, float anchor1y, float anchor2x, float anchor2y) {
+        super(2, new RigidBody[] { body1, body2 });
+
+        anchor1 = new Vector2f(anchor1x, anchor1y);
+        anchor2 = new Vector2f(anchor2x, anchor2y);
+    }
+
+    protected BearingConstraint(int constraintCount, RigidBody[] bodies, float anchor1x, float anchor1y, float anchor2x, float anchor2y) {
+        super(constraintCount, bodies);
+        assert bodies.length >= 2;
+        assert constraintCount >= 2;
+
+        anchor1 = new Vector2f(anchor1x, anchor1y);
+        anchor2 = new Vector2f(anchor2x, anchor2y);
+    }
+
+    @Override
+    public void allocate(int row, JacobianMatrix J, JacobianMatrix JDot) {
+        final int column1 = bodies[0].islandIndex() * 3;
+        final int column2 = bodies[1].islandIndex() * 3;
+
+        // Changes to x and y based on body positions
+        J.set(J.slot(row, column1), 1);
+        J.set(J.slot(row + 1, column1 + 1), 1);
+        J.set(J.slot(row, column2), -1);
+        J.set(J.slot(row + 1, column2 + 1), -1);
+
+        // Changes to x and y based on body angles
+        angleSlot1X = J.slot(row, column1 + 2);
+        angleSlot1Y = J.slot(row + 1, column1 + 2);
+        angleSlot2X = J.slot(row, column2 + 2);
+        angleSlot2Y = J.slot(row + 1, column2 + 2);
+
+        angleDotSlot1X = JDot.slot(row, column1 + 2);
+        angleDotSlot1Y = JDot.slot(row + 1, column1 + 2);
+        angleDotSlot2X = JDot.slot(row, column2 + 2);
+        angleDotSlot2Y = JDot.slot(row + 1, column2 + 2);
+    }
+
+    @Override
+    public void calculate(int row, DMatrixRMaj C, JacobianMatrix J, JacobianMatrix JDot) {
+        final var state1 = bodies[0].getState();
+        final var state2 = bodies[1].getState();
+
+        final var b1Cos = Math.cos(state1.positionA());
+        final var b1Sin = Math.sin(state1.positionA());
+
+        final var b2Cos = Math.cos(state2.positionA());
+        final var b2Sin = Math.sin(state2.positionA());
+
+        final var world1X = anchor1.x * b1Cos - anchor1.y * b1Sin + state1.positionX();
+        final var world1Y = anchor1.y * b1Cos + anchor1.x * b1Sin + state1.positionY();
+        final var world2X = anchor2.x * b2Cos - anchor2.y * b2Sin + state2.positionX();
+        final var world2Y = anchor2.y * b2Cos + anchor2.x * b2Sin + state2.positionY();
+
+        // Changes to x and y based on body1 angle
+        J.set(angleSlot1X, -b1Sin * anchor1.x - b1Cos * anchor1.y);
+        J.set(angleSlot1Y, b1Cos * anchor1.x - b1Sin * anchor1.y);
+
+        // Changes to x and y based on body2 angle
+        J.set(angleSlot2X, b2Sin * anchor2.x + b2Cos * anchor2.y);
+        J.set(angleSlot2Y, -b2Cos * anchor2.x + b2Sin * anchor2.y);
+
+        // Changes to velocity based on body1 velocity
+        JDot.set(angleDotSlot1X, -b1Cos * state1.velocityA() * anchor1.x + b1Sin * state1.velocityA() * anchor1.y);
+        JDot.set(angleDotSlot1Y, -b1Sin * state1.velocityA() * anchor1.x - b1Cos * state1.velocityA() * anchor1.y);
+
+        // Changes to velocity based on body2 velocity
+        JDot.set(angleDotSlot2X, b2Cos * state2.velocityA() * anchor2.x - b2Sin * state2.velocityA() * anchor2.y);
+        JDot.set(angleDotSlot2Y, b2Sin * state2.velocityA() * anchor2.x + b2Cos * state2.velocityA() * anchor2.y);
+
+        // Additional position stabilization constraint
+        final double C1 = world1X - world2X;
+        final double C2 = world1Y - world2Y;
+
+        C.unsafe_set(row, 0, C1);
+        C.unsafe_set(row + 1, 0, C2);
+    }
+
+    @Override
+    public void setBodyPosition(int index) {
+        assert index >= 0 && index < 2 : "Index not within valid range";
+        final var masterIndex = 1 - index;
+        final var masterState = bodies[masterIndex].getState();
+        final var setState = bodies[index].getState();
+
+        final var masterAnchor = masterIndex == 0 ? anchor1 : anchor2;
+        final var setAnchor = index == 0 ? anchor1 : anchor2;
+
+        final var masterCos = Math.cos(masterState.positionA());
+        final var masterSin = Math.sin(masterState.positionA());
+        final var masterX = masterAnchor.x * masterCos - masterAnchor.y * masterSin + masterState.positionX();
+        final var masterY = masterAnchor.y * masterCos + masterAnchor.x * masterSin + masterState.positionY();
+
+        final var setCos = Math.cos(setState.positionA());
+        final var setSin = Math.sin(setState.positionA());
+        final var setX = setAnchor.x * setCos - setAnchor.y * setSin + setState.positionX();
+        final var setY = setAnchor.y * setCos + setAnchor.x * setSin + setState.positionY();
+
+        final var diffX = masterX - setX;
+        final var diffY = masterY - setY;
+
+        setState.setPosition(setState.positionX() + diffX, setState.positionY() + diffY);
+    }
+}
@@ -0,0 +1,96 @@
+package com.patryk3211.fizite.simulation.physics.simulation.constraints;
+
+import com.patryk3211.fizite.simulation.physics.simulation.Island;
+import com.patryk3211.fizite.simulation.physics.simulation.JacobianMatrix;
+import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
+import org.ejml.data.DMatrixRMaj;
+
+public abstract class Constraint {
+    protected final RigidBody[] bodies;
+    private final int constraintCount;
+    private final double[] lambda;
+    private Island island;
+    private int islandSlot;
+
+    protected Constraint(int constraintCount, RigidBody[] bodies) {
+        this.bodies = bodies.clone();
+        this.constraintCount = constraintCount;
+        this.lambda = new double[constraintCount];
+        this.islandSlot = -1;
+    }
+
+    /**
+     * Allocates the Jacobian entries used by this constraint, called every time the solver matrices are rebuilt.
+     * Matrix columns of a body are given by {@link RigidBody#islandIndex()} times 3.
+     * Entries with constant values can be written here, they are not modified by the solver.
+     * @param index Index of constraint, first row allocated in matrices for this constraint
+     * @param J Jacobian matrix
+     * @param JDot Jacobian dot matrix
+     */
+    public abstract void allocate(int index, JacobianMatrix J, JacobianMatrix JDot);
+
+    /**
+     * Calculates constraint matrices used for constraint solving,
+     * only the slots returned during {@link #allocate} may be written to.
+     * @param index Index of constraint, first row allocated in matrices for this constraint
+     * @param C Position constraint matrix
+     * @param J Jacobian matrix
+     * @param JDot Jacobian dot matrix
+     */
+    public abstract void calculate(int index, DMatrixRMaj C, JacobianMatrix J, JacobianMatrix JDot);
+
+    /**
+     * Forces the position of a given body to one that satisfies this constraint.
+     * @param index Index of body between 0 and constraint's body count
+     */
+    public abstract void setBodyPosition(int index);
+
+    public int internalConstraintCount() {
+        return constraintCount;
+    }
+
+    /**
+     * Lagrange multipliers of this constraint from the last solve, one for every internal constraint.
+     * They are used as the initial guess when the solver matrices get rebuilt.
+     */
+    public final double[] lambda() {
+        return lambda;
+    }
+
+    public final RigidBody body(int index) {
+        return bodies[index];
+    }
+
+    public final int bodyCount() {
+        return bodies.length;
+    }
+
+    public Island getIsland() {
+        return island;
+    }
+
+    public void setIsland(Island island, int slot) {
+        this.island = island;
+        this.islandSlot = slot;
+    }
+
+    /**
+     * Slot of this constraint in its island, it decides which solver rows are used by this constraint.
+     */
+    public int islandSlot() {
+        return islandSlot;
+    }
+
+    /**
+     * Checks if all bodies affected by this constraint belong to the given island.
+     * @param island Island to check
+     * @return True if all bodies are in the island
+     */
+    public boolean isIn(Island island) {
+        for(final var body : bodies) {
+            if(body.getIsland() != island)
+                return false;
+        }
+        return true;
+    }
+}
@@ -1,8 +1,8 @@
 package com.patryk3211.fizite.simulation.physics.simulation.constraints;
 
+import com.patryk3211.fizite.simulation.physics.simulation.JacobianMatrix;
 import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
 import org.ejml.data.DMatrixRMaj;
-import org.ejml.data.DMatrixSparseCSC;
 
 public class PistonConstraint extends Constraint {
     private final float position;
@@ -25,35 +25,39 @@ public class PistonConstraint extends Constraint {
     }
 
     @Override
-    public void calculate(int row, DMatrixRMaj C, DMatrixSparseCSC J, DMatrixSparseCSC JDot) {
-        final int column = bodies[0].index() * 3;
-        final var state = bodies[0].getState();
+    public void allocate(int row, JacobianMatrix J, JacobianMatrix JDot) {
+        final int column = bodies[0].islandIndex() * 3;
+
+        J.set(J.slot(row, column + 1), 1);
+        J.set(J.slot(row + 1, column + 2), 1);
 
-        J.unsafe_set(row, column + 1, 1);
-        J.unsafe_set(row + 1, column + 2, 1);
+        JDot.set(JDot.slot(row + 1, column + 2), 1);
+    }
 
-        JDot.unsafe_set(row + 1, column + 2, 1);
+    @Override
+    public void calculate(int row, DMatrixRMaj C, JacobianMatrix J, JacobianMatrix JDot) {
+        final var state = bodies[0].getState();
 
 //        final var C2 = Math.max(state.position.x - maxPosition, 0);
 //        if(C2 != 0) {
-////            JDot.unsafe_set(row + 2, column, 1);
-//            J.unsafe_set(row + 2, column, 0.1);
+////            JDot.set(row + 2, column, 1);
+//            J.set(row + 2, column, 0.1);
 //            C.unsafe_set(row + 2, 0, C2);
 //        } else {
-//            JDot.unsafe_set(row + 2, column, 0);
-//            J.unsafe_set(row + 2, column, 0);
+//            JDot.set(row + 2, column, 0);
+//            J.set(row + 2, column, 0);
 //            C.unsafe_set(row + 2, 0, 0);
 //        }
 
-        C.unsafe_set(row, 0, state.position.y - position);
-        C.unsafe_set(row + 1, 0, state.positionA);
+        C.unsafe_set(row, 0, state.positionY() - position);
+        C.unsafe_set(row + 1, 0, state.positionA());
     }
 
     @Override
     public void setBodyPosition(int index) {
         assert index == 0;
         final var state = bodies[0].getState();
-        state.position.y = position;
-        state.positionA = 0;
+        state.setPositionY(position);
+        state.setPositionA(0);
     }
 }
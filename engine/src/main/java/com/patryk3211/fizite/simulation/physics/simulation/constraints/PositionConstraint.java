@@ -1,8 +1,8 @@
 package com.patryk3211.fizite.simulation.physics.simulation.constraints;
 
+import com.patryk3211.fizite.simulation.physics.simulation.JacobianMatrix;
 import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
 import org.ejml.data.DMatrixRMaj;
-import org.ejml.data.DMatrixSparseCSC;
 import org.joml.Vector2f;
 
 public class PositionConstraint extends Constraint {
@@ -23,22 +23,25 @@ public class PositionConstraint extends Constraint {
     }
 
     @Override
-    public void calculate(int row, DMatrixRMaj C, DMatrixSparseCSC J, DMatrixSparseCSC JDot) {
-        final int column = bodies[0].index() * 3;
-        final var state = bodies[0].getState();
+    public void allocate(int row, JacobianMatrix J, JacobianMatrix JDot) {
+        final int column = bodies[0].islandIndex() * 3;
+
+        J.set(J.slot(row, column), 1);
+        J.set(J.slot(row + 1, column + 1), 1);
+    }
 
-        J.unsafe_set(row, column, 1);
-        J.unsafe_set(row + 1, column + 1, 1);
+    @Override
+    public void calculate(int row, DMatrixRMaj C, JacobianMatrix J, JacobianMatrix JDot) {
+        final var state = bodies[0].getState();
 
-        C.unsafe_set(row, 0, state.position.x - position.x);
-        C.unsafe_set(row + 1, 0, state.position.y - position.y);
+        C.unsafe_set(row, 0, state.positionX() - position.x);
+        C.unsafe_set(row + 1, 0, state.positionY() - position.y);
     }
 
     @Override
     public void setBodyPosition(int index) {
         assert index == 0;
         final var state = bodies[0].getState();
-        state.position.x = position.x;
-        state.position.y = position.y;
+        state.setPosition(position.x, position.y);
     }
 }
@@ -1,8 +1,8 @@
 package com.patryk3211.fizite.simulation.physics.simulation.constraints;
 
+import com.patryk3211.fizite.simulation.physics.simulation.JacobianMatrix;
 import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
 import org.ejml.data.DMatrixRMaj;
-import org.ejml.data.DMatrixSparseCSC;
 
 public class RotationConstraint extends Constraint {
     public RotationConstraint(RigidBody body1, RigidBody body2) {
@@ -16,15 +16,18 @@ public class RotationConstraint extends Constraint {
     }
 
     @Override
-    public void calculate(int row, DMatrixRMaj C, DMatrixSparseCSC J, DMatrixSparseCSC JDot) {
-        final var column1 = bodies[0].index() * 3;
-        final var column2 = bodies[1].index() * 3;
+    public void allocate(int row, JacobianMatrix J, JacobianMatrix JDot) {
+        final var column1 = bodies[0].islandIndex() * 3;
+        final var column2 = bodies[1].islandIndex() * 3;
 
-        final var a1 = bodies[0].getState().positionA;
-        final var a2 = bodies[1].getState().positionA;
+        J.set(J.slot(row, column1 + 2), 1);
+        J.set(J.slot(row, column2 + 2), -1);
+    }
 
-        J.unsafe_set(row, column1 + 2, 1);
-        J.unsafe_set(row, column2 + 2, -1);
+    @Override
+    public void calculate(int row, DMatrixRMaj C, JacobianMatrix J, JacobianMatrix JDot) {
+        final var a1 = bodies[0].getState().positionA();
+        final var a2 = bodies[1].getState().positionA();
 
         final var aDiff = a1 - a2;
         C.unsafe_set(row, 0, (aDiff + Math.PI) % (2 * Math.PI) - Math.PI);
@@ -36,6 +39,6 @@ public class RotationConstraint extends Constraint {
         final var masterIndex = 1 - index;
         final var masterState = bodies[masterIndex].getState();
         final var setState = bodies[index].getState();
-        setState.positionA = masterState.positionA;
+        setState.setPositionA(masterState.positionA());
     }
 }
@@ -1,8 +1,8 @@
 package com.patryk3211.fizite.simulation.physics.simulation.constraints;
 
+import com.patryk3211.fizite.simulation.physics.simulation.JacobianMatrix;
 import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
 import org.ejml.data.DMatrixRMaj;
-import org.ejml.data.DMatrixSparseCSC;
 
 public class WeldConstraint extends BearingConstraint {
     public WeldConstraint(RigidBody body1, RigidBody body2, float anchor1x, float anchor1y, float anchor2x, float anchor2y) {
@@ -16,19 +16,25 @@ public class WeldConstraint extends BearingConstraint {
     }
 
     @Override
-    public void calculate(int row, DMatrixRMaj C, DMatrixSparseCSC J, DMatrixSparseCSC JDot) {
-        final int column1 = bodies[0].index() * 3;
-        final int column2 = bodies[1].index() * 3;
+    public void allocate(int row, JacobianMatrix J, JacobianMatrix JDot) {
+        final int column1 = bodies[0].islandIndex() * 3;
+        final int column2 = bodies[1].islandIndex() * 3;
 
+        super.allocate(row, J, JDot);
+
+        // Apply additional constraints to keep the two bodies inline
+        J.set(J.slot(row + 2, column1 + 2), 1);
+        J.set(J.slot(row + 2, column2 + 2), -1);
+    }
+
+    @Override
+    public void calculate(int row, DMatrixRMaj C, JacobianMatrix J, JacobianMatrix JDot) {
         final var state1 = bodies[0].getState();
         final var state2 = bodies[1].getState();
 
         super.calculate(row, C, J, JDot);
 
-        // Apply additional constraints to keep the two bodies inline
-        J.unsafe_set(row + 2, column1 + 2, 1);
-        J.unsafe_set(row + 2, column2 + 2, -1);
-        C.unsafe_set(row + 2, 0, state1.positionA - state2.positionA);
+        C.unsafe_set(row + 2, 0, state1.positionA() - state2.positionA());
     }
 
     @Override
@@ -0,0 +1,161 @@
+package com.patryk3211.fizite.simulation.runner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Machine description loaded from a scenario file.
+ * Every non-empty line is a keyword followed by key=value arguments, # starts a comment.
+ * <pre>
+ * ticks 400
+ * warmup 40
+ * crankshaft-chain count=4 length=8 speed=2
+ * engine count=2 cylinders=4 pipe=16 pressure=600000
+ * pipe count=1 cells=256 width=16 pressure=300000
+ * </pre>
+ */
+public class Scenario {
+    public static final int DEFAULT_TICKS = 400;
+    public static final int DEFAULT_WARMUP = 40;
+
+    public static class Machine {
+        private final String type;
+        private final int count;
+        private final Map<String, String> arguments;
+        private final int line;
+
+        private Machine(String type, Map<String, String> arguments, int line) {
+            this.type = type;
+            this.arguments = arguments;
+            this.line = line;
+            this.count = getInt("count", 1);
+            if(count < 0)
+                throw error("count can't be negative");
+        }
+
+        public String type() {
+            return type;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public int line() {
+            return line;
+        }
+
+        public double getDouble(String key, double defaultValue) {
+            final var value = arguments.get(key);
+            if(value == null)
+                return defaultValue;
+            try {
+                return Double.parseDouble(value);
+            } catch(NumberFormatException e) {
+                throw error("'" + value + "' is not a valid number for " + key);
+            }
+        }
+
+        public int getInt(String key, int defaultValue) {
+            final var value = arguments.get(key);
+            if(value == null)
+                return defaultValue;
+            try {
+                return Integer.parseInt(value);
+            } catch(NumberFormatException e) {
+                throw error("'" + value + "' is not a valid integer for " + key);
+            }
+        }
+
+        public IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Line " + line + " (" + type + "): " + message);
+        }
+    }
+
+    private final String name;
+    private int ticks;
+    private int warmup;
+    private final List<Machine> machines;
+
+    private Scenario(String name) {
+        this.name = name;
+        this.ticks = DEFAULT_TICKS;
+        this.warmup = DEFAULT_WARMUP;
+        this.machines = new ArrayList<>();
+    }
+
+    public static Scenario load(Path path) throws IOException {
+        final var scenario = new Scenario(path.getFileName().toString());
+        final var lines = Files.readAllLines(path);
+        for(int i = 0; i < lines.size(); ++i) {
+            var line = lines.get(i);
+            final int comment = line.indexOf('#');
+            if(comment != -1)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if(line.isEmpty())
+                continue;
+            scenario.parseLine(line, i + 1);
+        }
+        return scenario;
+    }
+
+    private void parseLine(String line, int lineNumber) {
+        final var tokens = line.split("\\s+");
+        final var keyword = tokens[0];
+        switch(keyword) {
+            case "ticks", "warmup" -> {
+                if(tokens.length != 2)
+                    throw new IllegalArgumentException("Line " + lineNumber + ": " + keyword + " expects a single value");
+                final int value;
+                try {
+                    value = Integer.parseInt(tokens[1]);
+                } catch(NumberFormatException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": '" + tokens[1] + "' is not a valid integer");
+                }
+                if(value < 0)
+                    throw new IllegalArgumentException("Line " + lineNumber + ": " + keyword + " can't be negative");
+                if(keyword.equals("ticks"))
+                    ticks = value;
+                else
+                    warmup = value;
+            }
+            default -> {
+                final Map<String, String> arguments = new HashMap<>();
+                for(int i = 1; i < tokens.length; ++i) {
+                    final int separator = tokens[i].indexOf('=');
+                    if(separator <= 0)
+                        throw new IllegalArgumentException("Line " + lineNumber + ": expected key=value but got '" + tokens[i] + "'");
+                    arguments.put(tokens[i].substring(0, separator), tokens[i].substring(separator + 1));
+                }
+                machines.add(new Machine(keyword, arguments, lineNumber));
+            }
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int ticks() {
+        return ticks;
+    }
+
+    public void setTicks(int ticks) {
+        this.ticks = ticks;
+    }
+
+    public int warmup() {
+        return warmup;
+    }
+
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    public List<Machine> machines() {
+        return machines;
+    }
+}
@@ -0,0 +1,166 @@
+package com.patryk3211.fizite.simulation.runner;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs scenario files without Minecraft and reports the simulation performance.
+ * <pre>
+ * ScenarioRunner [--ticks n] [--warmup n] [--parallel-gas] [--implicit-gas] scenario...
+ * </pre>
+ */
+public class ScenarioRunner {
+    private static final double TICK_RATE = 20;
+
+    private static void usage() {
+        System.err.println("Usage: ScenarioRunner [--ticks n] [--warmup n] [--parallel-gas] [--implicit-gas] <scenario file>...");
+    }
+
+    public static void main(String[] args) {
+        Integer ticks = null;
+        Integer warmup = null;
+        boolean parallelGas = false;
+        boolean implicitGas = false;
+        final List<Path> files = new ArrayList<>();
+        try {
+            for(int i = 0; i < args.length; ++i) {
+                switch(args[i]) {
+                    case "--ticks" -> ticks = Integer.parseInt(args[++i]);
+                    case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                    case "--parallel-gas" -> parallelGas = true;
+                    case "--implicit-gas" -> implicitGas = true;
+                    default -> files.add(Path.of(args[i]));
+                }
+            }
+        } catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            usage();
+            System.exit(2);
+        }
+        if(files.isEmpty()) {
+            usage();
+            System.exit(2);
+        }
+
+        boolean failed = false;
+        for(final var file : files) {
+            try {
+                final var scenario = Scenario.load(file);
+                if(ticks != null)
+                    scenario.setTicks(ticks);
+                if(warmup != null)
+                    scenario.setWarmup(warmup);
+                run(scenario, parallelGas, implicitGas);
+            } catch(Exception e) {
+                System.err.println("Scenario " + file + " failed: " + e.getMessage());
+                e.printStackTrace(System.err);
+                failed = true;
+            }
+        }
+        if(failed)
+            System.exit(1);
+    }
+
+    private static long usedHeap() {
+        final var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for(final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(gc.getCollectionCount(), 0);
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for(final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(gc.getCollectionTime(), 0);
+        return time;
+    }
+
+    private static long allocatedBytes() {
+        if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+            return threads.getCurrentThreadAllocatedBytes();
+        return -1;
+    }
+
+    private static void run(Scenario scenario, boolean parallelGas, boolean implicitGas) {
+        System.gc();
+        final long heapBefore = usedHeap();
+        long setupTime = -System.nanoTime();
+        final var world = new ScenarioWorld(scenario);
+        world.gas().setParallel(parallelGas);
+        world.gas().setImplicit(implicitGas);
+        setupTime += System.nanoTime();
+        final var physics = world.physics();
+
+        for(int i = 0; i < scenario.warmup(); ++i)
+            world.tick();
+        System.gc();
+        final long heapAfter = usedHeap();
+
+        final int ticks = scenario.ticks();
+        final long[] tickTimes = new long[ticks];
+        long steps = 0;
+        long rejected = 0;
+        long stages = 0;
+        long iterations = 0;
+        int maxIterations = 0;
+        long failedSolves = 0;
+        long gasSubsteps = 0;
+        long gasActive = 0;
+
+        final long gcCountStart = gcCount();
+        final long gcTimeStart = gcTime();
+        final long allocatedStart = allocatedBytes();
+        final long start = System.nanoTime();
+        for(int i = 0; i < ticks; ++i) {
+            gasSubsteps += world.gas().substepCount();
+            final long tickStart = System.nanoTime();
+            world.tick();
+            tickTimes[i] = System.nanoTime() - tickStart;
+            gasActive += world.gas().activeCount();
+
+            steps += physics.acceptedSteps;
+            rejected += physics.rejectedSteps;
+            failedSolves += physics.failedSolves;
+            for(int j = 0; j < physics.stageFrameCount; ++j) {
+                final int count = physics.iterationCount[j];
+                iterations += count;
+                maxIterations = Math.max(maxIterations, count);
+            }
+            stages += physics.stageFrameCount;
+        }
+        final long totalTime = System.nanoTime() - start;
+        final long allocated = allocatedStart < 0 ? -1 : allocatedBytes() - allocatedStart;
+        final long gcCount = gcCount() - gcCountStart;
+        final long gcTime = gcTime() - gcTimeStart;
+
+        Arrays.sort(tickTimes);
+        final double ticksPerSecond = ticks / (totalTime / 1E9);
+
+        System.out.println("Scenario " + scenario.name());
+        System.out.printf("  World: %d machines, %d bodies, %d constraints, %d islands, %d gas cells, %d gas boundaries in %d colours%n",
+                world.machineCount(), physics.bodyCount(), physics.constraints().size(), physics.islands().size(), world.cellCount(), world.boundaryCount(), world.gas().colorCount());
+        System.out.printf("  Setup: %.2f ms, %d warmup ticks%n", setupTime / 1E6, scenario.warmup());
+        if(ticks == 0)
+            return;
+        System.out.printf("  Ticks: %d in %.3f s, %.1f ticks/s (%.1fx real time)%n",
+                ticks, totalTime / 1E9, ticksPerSecond, ticksPerSecond / TICK_RATE);
+        System.out.printf("  Tick time: avg %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                totalTime / 1E6 / ticks, tickTimes[ticks / 2] / 1E6, tickTimes[Math.min(ticks * 99 / 100, ticks - 1)] / 1E6, tickTimes[ticks - 1] / 1E6);
+        System.out.printf("  Steps: %.1f per tick, %d rejected%n", (double) steps / ticks, rejected);
+        System.out.printf("  Gas: %.1f substeps per tick, %.1f active boundaries, %d cells compacted into pipe runs%n",
+                (double) gasSubsteps / ticks, (double) gasActive / ticks, world.gas().compactedCount());
+        System.out.printf("  Constraint iterations: %.2f avg, %d max per stage, %d failed island solves%n",
+                stages == 0 ? 0 : (double) iterations / stages, maxIterations, failedSolves);
+        System.out.printf("  Memory: %.2f MB retained by the world, %s allocated per tick by the runner thread, %d GCs (%d ms)%n",
+                (heapAfter - heapBefore) / 1048576.0, allocated < 0 ? "unknown" : String.format("%.1f KB", allocated / 1024.0 / ticks), gcCount, gcTime);
+        System.out.printf("  Final state: kinetic energy %.6e J, gas %.6e mol%n", physics.totalKineticEnergy(), world.totalMoles());
+    }
+}
@@ -0,0 +1,212 @@
+package com.patryk3211.fizite.simulation.runner;
+
+import com.patryk3211.fizite.simulation.gas.GasBoundary;
+import com.patryk3211.fizite.simulation.gas.GasCell;
+import com.patryk3211.fizite.simulation.gas.GasNetwork;
+import com.patryk3211.fizite.simulation.gas.GasSimulator;
+import com.patryk3211.fizite.simulation.physics.simulation.FrictionModel;
+import com.patryk3211.fizite.simulation.physics.simulation.IPhysicsStepHandler;
+import com.patryk3211.fizite.simulation.physics.simulation.PhysicsWorld;
+import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.BearingConstraint;
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.PistonConstraint;
+import com.patryk3211.fizite.simulation.physics.simulation.constraints.RotationConstraint;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+
+/**
+ * Physics world and gas network built from a {@link Scenario}.
+ * Machines mirror the blocks of the mod: crank shafts are position locked bodies
+ * joined by rotation constraints, cylinders are a connecting rod and a piston driven by
+ * the pressure of a gas cell and pipes are chains or grids of gas cells.
+ */
+public class ScenarioWorld {
+    private static final Vector3dc AXIS_X = new Vector3d(1, 0, 0);
+    private static final Vector3dc AXIS_Z = new Vector3d(0, 0, 1);
+    private static final double ROOM_TEMPERATURE = 293.15;
+
+    // Dimensions of the copper blocks
+    private static final double PIPE_VOLUME = 4;
+    private static final double PISTON_AREA = 0.25;
+    private static final double PISTON_TOP_VOLUME = 0.125;
+    // Crank radius 0.5 with a connecting rod of length 2, the piston reaches x = 2.5 at the top dead center
+    private static final double CYLINDER_ORIGIN = 2.5;
+
+    private final PhysicsWorld physics;
+    private final GasNetwork gas;
+    private int machineCount;
+
+    public ScenarioWorld(Scenario scenario) {
+        physics = new PhysicsWorld();
+        physics.setSampleRate(1);
+        gas = new GasNetwork();
+
+        // Gas runs its own substeps from the physics step time, the same as in game
+        physics.addStepHandler(new IPhysicsStepHandler() {
+            @Override
+            public void onStepEnd(double deltaTime) {
+                gas.advance(deltaTime);
+            }
+
+            @Override
+            public void onTickEnd() {
+                gas.planSubsteps(PhysicsWorld.DELTA_TIME);
+            }
+        });
+
+        for(final var machine : scenario.machines()) {
+            for(int i = 0; i < machine.count(); ++i) {
+                switch(machine.type()) {
+                    case "crankshaft-chain" -> crankshaftChain(machine);
+                    case "engine" -> engine(machine);
+                    case "pipe" -> pipe(machine);
+                    default -> throw machine.error("Unknown machine type");
+                }
+                ++machineCount;
+            }
+        }
+    }
+
+    private static void fill(GasCell cell, double pressure, double temperature) {
+        final double moles = pressure * cell.getVolume() / (GasSimulator.GAS_CONSTANT * temperature);
+        cell.set(0.5 * 3 * moles * GasSimulator.GAS_CONSTANT * temperature, moles, 0, 0, 0);
+    }
+
+    private GasCell addCell(double volume, double pressure) {
+        final var cell = new GasCell(volume);
+        fill(cell, pressure, ROOM_TEMPERATURE);
+        gas.addCell(cell);
+        return cell;
+    }
+
+    private void connect(GasCell cell1, GasCell cell2, Vector3dc direction) {
+        gas.add(new GasBoundary(cell1, cell2, 1, 1, direction, 1));
+    }
+
+    private RigidBody[] shafts(int length, double speed) {
+        final var shafts = new RigidBody[length];
+        for(int i = 0; i < length; ++i) {
+            final var shaft = new RigidBody();
+            shaft.setMarker("Shaft");
+            shaft.lockPosition();
+            shaft.getState().setVelocityA(speed);
+            physics.addRigidBody(shaft);
+            if(i > 0)
+                physics.addConstraint(new RotationConstraint(shafts[i - 1], shaft));
+            shafts[i] = shaft;
+        }
+        return shafts;
+    }
+
+    private void crankshaftChain(Scenario.Machine machine) {
+        final int length = machine.getInt("length", 8);
+        if(length < 1)
+            throw machine.error("length must be at least 1");
+        shafts(length, machine.getDouble("speed", 2));
+    }
+
+    private void cylinder(RigidBody shaft, GasCell supply) {
+        final var rod = new RigidBody();
+        rod.setMarker("Rod");
+        rod.getState().setPositionX(1.5);
+        physics.addRigidBody(rod);
+
+        final var piston = new RigidBody();
+        piston.setMarker("Piston");
+        piston.getState().setPositionX(CYLINDER_ORIGIN);
+        physics.addRigidBody(piston);
+
+        physics.addConstraint(new BearingConstraint(shaft, rod, 0.5f, 0, -1, 0));
+        physics.addConstraint(new BearingConstraint(rod, piston, 1, 0, 0, 0));
+        physics.addConstraint(new PistonConstraint(piston, 0, 0));
+
+        final var chamber = addCell(PISTON_TOP_VOLUME, GasSimulator.ATMOSPHERIC_PRESSURE);
+        chamber.setCoupled(true);
+        connect(supply, chamber, AXIS_Z);
+
+        physics.addStepHandler(deltaTime -> {
+            final var chamberLength = CYLINDER_ORIGIN - piston.getState().positionX();
+            chamber.changeVolumeTo(PISTON_TOP_VOLUME + Math.max(chamberLength * PISTON_AREA, 0));
+        });
+        physics.addForceGenerator(deltaTime -> {
+            final var state = piston.getState();
+            final double force = (chamber.pressure() - GasSimulator.ATMOSPHERIC_PRESSURE) * PISTON_AREA;
+            final double friction = FrictionModel.DEFAULT.calculate(state.velocityX(), 0) * -Math.signum(state.velocityX());
+            if(Double.isNaN(force) || Double.isInfinite(force))
+                return;
+            state.setExtForceX(-force + friction);
+        });
+    }
+
+    private void engine(Scenario.Machine machine) {
+        final int cylinders = machine.getInt("cylinders", 4);
+        final int pipeLength = machine.getInt("pipe", 8);
+        final double pressure = machine.getDouble("pressure", 6 * GasSimulator.ATMOSPHERIC_PRESSURE);
+        if(cylinders < 1)
+            throw machine.error("cylinders must be at least 1");
+        if(pipeLength < 1)
+            throw machine.error("pipe must be at least 1");
+
+        // The first pipe cell is a reservoir which is kept at the supply pressure
+        final var pipe = new GasCell[pipeLength];
+        for(int i = 0; i < pipeLength; ++i) {
+            pipe[i] = addCell(PIPE_VOLUME, i == 0 ? pressure : GasSimulator.ATMOSPHERIC_PRESSURE);
+            if(i > 0)
+                connect(pipe[i - 1], pipe[i], AXIS_X);
+        }
+        final var reservoir = pipe[0];
+        physics.addStepHandler(deltaTime -> fill(reservoir, pressure, ROOM_TEMPERATURE));
+
+        final var shafts = shafts(cylinders, machine.getDouble("speed", 2));
+        for(final var shaft : shafts)
+            cylinder(shaft, pipe[pipeLength - 1]);
+    }
+
+    private void pipe(Scenario.Machine machine) {
+        final int count = machine.getInt("cells", 64);
+        final int width = machine.getInt("width", count);
+        final double pressure = machine.getDouble("pressure", 3 * GasSimulator.ATMOSPHERIC_PRESSURE);
+        if(count < 1)
+            throw machine.error("cells must be at least 1");
+        if(width < 1)
+            throw machine.error("width must be at least 1");
+
+        // Cells are laid out in rows of the given width, only the first cell starts pressurized
+        final var network = new GasCell[count];
+        for(int i = 0; i < count; ++i) {
+            network[i] = addCell(PIPE_VOLUME, i == 0 ? pressure : GasSimulator.ATMOSPHERIC_PRESSURE);
+            if(i % width != 0)
+                connect(network[i - 1], network[i], AXIS_X);
+            if(i >= width)
+                connect(network[i - width], network[i], AXIS_Z);
+        }
+    }
+
+    public void tick() {
+        physics.simulate();
+    }
+
+    public PhysicsWorld physics() {
+        return physics;
+    }
+
+    public int machineCount() {
+        return machineCount;
+    }
+
+    public int cellCount() {
+        return gas.cellCount();
+    }
+
+    public GasNetwork gas() {
+        return gas;
+    }
+
+    public int boundaryCount() {
+        return gas.boundaryCount();
+    }
+
+    public double totalMoles() {
+        return gas.totalMoles();
+    }
+}
@@ -0,0 +1,307 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the packed gas flow kernel against the original {@link Vector3d} implementation
+ * and makes sure that it doesn't allocate.
+ */
+public class GasFlowTest {
+    private static final int PAIRS = 20000;
+    private static final int STEPS = 20;
+
+    /**
+     * Cell of the original implementation, only the in place mutations of the shared vectors
+     * (which corrupted the state of the old code) are replaced by copies.
+     */
+    private static class ReferenceCell {
+        double kineticEnergy;
+        double totalMoles;
+        final double volume;
+        final Vector3d momentum;
+        final double molarMass = 1;
+
+        ReferenceCell(GasCell cell) {
+            kineticEnergy = cell.getMoleculeKineticEnergy();
+            totalMoles = cell.getTotalMoles();
+            volume = cell.getVolume();
+            momentum = cell.getMomentum(new Vector3d());
+        }
+
+        double pressure() {
+            if(volume == 0) return 0;
+            else return kineticEnergy / (0.5 * 3 * volume);
+        }
+
+        double temperature() {
+            if(totalMoles == 0) return 0;
+            else return kineticEnergy / (0.5 * 3 * totalMoles * GasSimulator.GAS_CONSTANT);
+        }
+
+        double dynamicPressure(Vector3d direction) {
+            if(totalMoles == 0 || kineticEnergy == 0 || volume == 0) return 0;
+            final Vector3d dirMmt = new Vector3d(momentum).mul(direction);
+            final double mass = mass();
+            final double v = (dirMmt.x + dirMmt.y + dirMmt.z) / mass;
+            final double density = mass / volume;
+            final double staticPressure = pressure();
+
+            final double speedOfSoundSqr = staticPressure * GasSimulator.HEAT_CAPACITY_RATIO / density;
+            final double machNumberSqr = v * v / speedOfSoundSqr;
+
+            final double x = 1 + ((GasSimulator.HEAT_CAPACITY_RATIO - 1) / 2) * machNumberSqr;
+            return staticPressure * Math.sqrt(x * x * x * x * x) - staticPressure;
+        }
+
+        double mass() {
+            return totalMoles * molarMass;
+        }
+
+        double speedOfSound() {
+            final double density = mass() / volume;
+            if(density == 0)
+                return 0;
+            return Math.sqrt(pressure() * GasSimulator.HEAT_CAPACITY_RATIO / density);
+        }
+
+        double momentumKineticEnergy() {
+            final double mass = mass();
+            if(mass == 0)
+                return 0;
+
+            final double vX = momentum.x / mass;
+            final double vY = momentum.y / mass;
+            final double vZ = momentum.z / mass;
+            final double vSqr = vX * vX + vY * vY + vZ * vZ;
+
+            return 0.5 * vSqr * mass;
+        }
+    }
+
+    private static double referenceFlowRate(double p0, double p1, double t0) {
+        if(p0 == 0)
+            return 0;
+
+        final double pressureRatio = p1 / p0;
+        double flowRate;
+        if(pressureRatio < GasSimulator.CHOKED_FLOW_LIMIT) {
+            flowRate = GasSimulator.CHOKED_FLOW_RATIO / Math.sqrt(GasSimulator.GAS_CONSTANT * t0);
+        } else {
+            final double pRatioPower = Math.pow(pressureRatio, 1 / GasSimulator.HEAT_CAPACITY_RATIO);
+            final double HCR_CONST = (2 * GasSimulator.HEAT_CAPACITY_RATIO) / (GasSimulator.HEAT_CAPACITY_RATIO - 1);
+            flowRate = pRatioPower * (pRatioPower - pressureRatio);
+            if(flowRate == 0)
+                return 0;
+            flowRate = Math.sqrt(HCR_CONST * flowRate / (GasSimulator.GAS_CONSTANT * t0));
+        }
+
+        return flowRate * p0;
+    }
+
+    private static void referenceFlow(double dT, double flowConstant, ReferenceCell cell1, ReferenceCell cell2,
+                                      double crossSection1, double crossSection2, Vector3d direction) {
+        final double c1p = cell1.pressure() + cell1.dynamicPressure(direction);
+        final double c2p = cell2.pressure() + cell2.dynamicPressure(new Vector3d(direction).negate());
+        final double c1t = cell1.temperature();
+        final double c2t = cell2.temperature();
+
+        if(Double.isNaN(c1p) || Double.isNaN(c2p))
+            return;
+
+        final ReferenceCell source, sink;
+        final double p0, p1, t0, c0, c1;
+        final Vector3d actualDir;
+        if(c1p >= c2p) {
+            source = cell1;
+            sink = cell2;
+            p0 = c1p;
+            p1 = c2p;
+            t0 = c1t;
+            c0 = crossSection1;
+            c1 = crossSection2;
+            actualDir = new Vector3d(direction);
+        } else {
+            source = cell2;
+            sink = cell1;
+            p0 = c2p;
+            p1 = c1p;
+            t0 = c2t;
+            c0 = crossSection2;
+            c1 = crossSection1;
+            actualDir = new Vector3d(direction).negate();
+        }
+
+        double flow = dT * referenceFlowRate(p0, p1, t0) * flowConstant;
+        flow = Math.min(flow, 0.9 * source.totalMoles);
+        final double flowFraction = flow == 0 ? 0 : flow / source.totalMoles;
+        final double fractionMass = flowFraction * source.mass();
+        final double fractionVolume = flowFraction * source.volume;
+
+        if(flow > 0) {
+            final double EkMomentum0 = source.momentumKineticEnergy() + sink.momentumKineticEnergy();
+
+            final double EkMole = source.kineticEnergy / source.totalMoles;
+            source.totalMoles += -flow;
+            source.kineticEnergy += -EkMole * flow;
+            sink.totalMoles += flow;
+            sink.kineticEnergy += EkMole * flow;
+
+            final Vector3d momentumDelta = new Vector3d(source.momentum).mul(flowFraction);
+            sink.momentum.add(momentumDelta);
+            source.momentum.add(momentumDelta.negate());
+
+            final double EkMomentum1 = source.momentumKineticEnergy() + sink.momentumKineticEnergy();
+            sink.kineticEnergy += EkMomentum0 - EkMomentum1;
+        }
+
+        final double sinkMass = sink.mass();
+        final double sourceMass = source.mass();
+
+        final double sinkSpeedOfSound = sink.speedOfSound();
+        final double sourceSpeedOfSound = source.speedOfSound();
+
+        final Vector3d sinkInitialMomentum = new Vector3d(sink.momentum);
+        final Vector3d sourceInitialMomentum = new Vector3d(source.momentum);
+
+        if(c1 > 0) {
+            final double sinkFractionVelocity = Math.min(fractionVolume / c1 / dT, sinkSpeedOfSound);
+            final double sinkFractionMomentum = sinkFractionVelocity * fractionMass;
+            sink.momentum.add(new Vector3d(sinkFractionMomentum).mul(actualDir));
+        }
+
+        if(c0 > 0) {
+            final double sourceFractionVelocity = Math.min(fractionVolume / c0 / dT, sourceSpeedOfSound);
+            final double sourceFractionMomentum = sourceFractionVelocity * fractionMass;
+            source.momentum.add(new Vector3d(sourceFractionMomentum).mul(actualDir));
+        }
+
+        if(sourceMass > 0) {
+            final Vector3d sourceVelocity0 = new Vector3d();
+            final Vector3d sourceVelocity1 = new Vector3d();
+            sourceInitialMomentum.div(sourceMass, sourceVelocity0);
+            source.momentum.div(sourceMass, sourceVelocity1);
+
+            final double v0Sum = sourceVelocity0.x * sourceVelocity0.x + sourceVelocity0.y * sourceVelocity0.y + sourceVelocity0.z * sourceVelocity0.z;
+            final double v1Sum = sourceVelocity1.x * sourceVelocity1.x + sourceVelocity1.y * sourceVelocity1.y + sourceVelocity1.z * sourceVelocity1.z;
+            source.kineticEnergy += -0.5 * sourceMass * (v1Sum - v0Sum);
+        }
+
+        if(sinkMass > 0) {
+            final Vector3d sinkVelocity0 = new Vector3d();
+            final Vector3d sinkVelocity1 = new Vector3d();
+            sinkInitialMomentum.div(sinkMass, sinkVelocity0);
+            sink.momentum.div(sinkMass, sinkVelocity1);
+
+            final double v0Sum = sinkVelocity0.x * sinkVelocity0.x + sinkVelocity0.y * sinkVelocity0.y + sinkVelocity0.z * sinkVelocity0.z;
+            final double v1Sum = sinkVelocity1.x * sinkVelocity1.x + sinkVelocity1.y * sinkVelocity1.y + sinkVelocity1.z * sinkVelocity1.z;
+            sink.kineticEnergy += -0.5 * sinkMass * (v1Sum - v0Sum);
+        }
+
+        if(source.kineticEnergy < 0)
+            source.kineticEnergy = 0;
+        if(sink.kineticEnergy < 0)
+            sink.kineticEnergy = 0;
+    }
+
+    private static GasCell randomCell(Random random) {
+        final double volume = 0.1 + random.nextDouble() * 2;
+        final var cell = new GasCell(volume);
+        // Some cells are empty, which the kernel has to handle separately
+        if(random.nextInt(10) == 0)
+            return cell;
+        final double pressure = random.nextDouble() * 5 * GasSimulator.ATMOSPHERIC_PRESSURE;
+        final double temperature = 200 + random.nextDouble() * 400;
+        final double energy = pressure * 1.5 * volume;
+        final double moles = energy / (1.5 * GasSimulator.GAS_CONSTANT * temperature);
+        final double speed = random.nextDouble() * 100 * moles;
+        cell.set(energy, moles, (random.nextDouble() * 2 - 1) * speed, (random.nextDouble() * 2 - 1) * speed, (random.nextDouble() * 2 - 1) * speed);
+        return cell;
+    }
+
+    private static Vector3d randomDirection(Random random) {
+        // Most boundaries are axis aligned, the flow doesn't depend on it though
+        if(random.nextBoolean()) {
+            final var direction = new Vector3d();
+            direction.setComponent(random.nextInt(3), random.nextBoolean() ? 1 : -1);
+            return direction;
+        }
+        return new Vector3d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+    }
+
+    private static double randomCrossSection(Random random) {
+        return random.nextInt(8) == 0 ? 0 : random.nextDouble();
+    }
+
+    private static void assertSameState(ReferenceCell expected, GasCell actual, String message) {
+        assertEquals(Double.doubleToRawLongBits(expected.kineticEnergy), Double.doubleToRawLongBits(actual.getMoleculeKineticEnergy()), message + " kinetic energy");
+        assertEquals(Double.doubleToRawLongBits(expected.totalMoles), Double.doubleToRawLongBits(actual.getTotalMoles()), message + " moles");
+        assertEquals(Double.doubleToRawLongBits(expected.momentum.x), Double.doubleToRawLongBits(actual.momentumX()), message + " momentum x");
+        assertEquals(Double.doubleToRawLongBits(expected.momentum.y), Double.doubleToRawLongBits(actual.momentumY()), message + " momentum y");
+        assertEquals(Double.doubleToRawLongBits(expected.momentum.z), Double.doubleToRawLongBits(actual.momentumZ()), message + " momentum z");
+    }
+
+    @Test
+    public void matchesReferenceImplementation() {
+        final var random = new Random(0x6A5F10L);
+        for(int pair = 0; pair < PAIRS; ++pair) {
+            final var network = new GasNetwork();
+            final var boundary = new GasBoundary(randomCell(random), randomCell(random),
+                    randomCrossSection(random), randomCrossSection(random), randomDirection(random), random.nextDouble());
+            network.add(boundary);
+            final var cell1 = boundary.cell1();
+            final var cell2 = boundary.cell2();
+            final var reference1 = new ReferenceCell(cell1);
+            final var reference2 = new ReferenceCell(cell2);
+            final var direction = new Vector3d(boundary.directionX(), boundary.directionY(), boundary.directionZ());
+
+            for(int step = 0; step < STEPS; ++step) {
+                final double deltaTime = 1E-4 + random.nextDouble() * 5E-2;
+                referenceFlow(deltaTime, boundary.getFlowConstant(), reference1, reference2,
+                        boundary.crossSection1(), boundary.crossSection2(), direction);
+                GasSimulator.flow(network, boundary.index(), deltaTime);
+
+                final String message = "Pair " + pair + ", step " + step + ",";
+                assertSameState(reference1, cell1, message + " cell 1");
+                assertSameState(reference2, cell2, message + " cell 2");
+            }
+        }
+    }
+
+    @Test
+    public void doesNotAllocate() {
+        final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final var random = new Random(42);
+        final var network = new GasNetwork();
+        final var boundary = new GasBoundary(randomCell(random), randomCell(random), 0.5, 0.5, new Vector3d(1, 0, 0), 0.1);
+        network.add(boundary);
+        final var cell1 = boundary.cell1();
+        final var cell2 = boundary.cell2();
+        final int index = boundary.index();
+
+        // Let the JIT compile the kernel first
+        for(int i = 0; i < 200000; ++i) {
+            if((i & 1023) == 0) {
+                cell1.set(3E5, 100, 10, 0, 0);
+                cell2.set(1E5, 40, 0, 5, 0);
+            }
+            GasSimulator.flow(network, index, 1E-3);
+        }
+
+        final long before = threads.getCurrentThreadAllocatedBytes();
+        for(int i = 0; i < 1000000; ++i) {
+            if((i & 1023) == 0) {
+                cell1.set(3E5, 100, 10, 0, 0);
+                cell2.set(1E5, 40, 0, 5, 0);
+            }
+            GasSimulator.flow(network, index, 1E-3);
+        }
+        final long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertEquals(0, allocated, "Bytes allocated by a million flow calls");
+    }
+}
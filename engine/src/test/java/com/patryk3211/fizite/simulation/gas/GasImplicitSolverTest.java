@@ -0,0 +1,162 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.joml.Vector3d;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the implicit pressure solve of gas networks, the smaller sizes are solved
+ * with the sparse Cholesky factorization and the larger ones with the conjugate gradient.
+ */
+public class GasImplicitSolverTest {
+    private static final double TICK_TIME = 0.05;
+    private static final double TEMPERATURE = 293.15;
+    private static final Vector3d X = new Vector3d(1, 0, 0);
+    private static final Vector3d Z = new Vector3d(0, 0, 1);
+
+    private static void fill(GasCell cell, double pressure, double temperature) {
+        final double moles = pressure * cell.getVolume() / (GasSimulator.GAS_CONSTANT * temperature);
+        cell.set(0.5 * 3 * moles * GasSimulator.GAS_CONSTANT * temperature, moles, 0, 0, 0);
+    }
+
+    /**
+     * Grid of cells with a few extra diagonal connections, so that the matrix isn't banded.
+     */
+    private static List<GasBoundary> grid(GasNetwork network, GasCell[] cells, int size, Random random) {
+        final List<GasBoundary> boundaries = new ArrayList<>();
+        for(int i = 0; i < cells.length; ++i) {
+            if(i % size != 0)
+                boundaries.add(new GasBoundary(cells[i - 1], cells[i], 1, 1, X, 0.2 + random.nextDouble()));
+            if(i >= size)
+                boundaries.add(new GasBoundary(cells[i - size], cells[i], 1, 1, Z, 0.2 + random.nextDouble()));
+        }
+        for(int i = 0; i < size; ++i) {
+            final int a = random.nextInt(cells.length);
+            final int b = random.nextInt(cells.length);
+            if(a != b)
+                boundaries.add(new GasBoundary(cells[a], cells[b], 1, 1, X, 0.2 + random.nextDouble()));
+        }
+        boundaries.forEach(network::add);
+        return boundaries;
+    }
+
+    private static double totalEnergy(GasCell[] cells) {
+        double energy = 0;
+        for(final var cell : cells)
+            energy += cell.getMoleculeKineticEnergy() + cell.momentumKineticEnergy();
+        return energy;
+    }
+
+    /**
+     * With a single temperature the pressures at the end of the step are the unknowns of the solve,
+     * so the final state has to satisfy n' = n - dt * G * (p'_1 - p'_2) summed over the boundaries of every cell.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = { 12, 32 })
+    public void solvesBackwardEulerStep(int size) {
+        final var random = new Random(7);
+        final var network = new GasNetwork();
+        final var cells = new GasCell[size * size];
+        for(int i = 0; i < cells.length; ++i) {
+            cells[i] = new GasCell(0.5 + random.nextDouble() * 4);
+            fill(cells[i], GasSimulator.ATMOSPHERIC_PRESSURE * (0.5 + random.nextDouble() * 5), TEMPERATURE);
+        }
+        final var boundaries = grid(network, cells, size, random);
+
+        final double[] moles = new double[cells.length];
+        for(int i = 0; i < cells.length; ++i)
+            moles[i] = cells[i].getTotalMoles();
+        final double[] conductance = new double[boundaries.size()];
+        for(int i = 0; i < conductance.length; ++i) {
+            final var boundary = boundaries.get(i);
+            final double pressure1 = boundary.cell1().pressure();
+            final double pressure2 = boundary.cell2().pressure();
+            conductance[i] = boundary.getFlowConstant() * (pressure1 >= pressure2
+                    ? GasSimulator.conductance(pressure1, pressure2, boundary.cell1().temperature(), 1E-3)
+                    : GasSimulator.conductance(pressure2, pressure1, boundary.cell2().temperature(), 1E-3));
+        }
+
+        final int[] indices = new int[boundaries.size()];
+        for(int i = 0; i < indices.length; ++i)
+            indices[i] = boundaries.get(i).index();
+        final boolean[] balanced = new boolean[network.boundaryCount()];
+        new GasImplicitSolver(network).solve(indices, indices.length, null, TICK_TIME, 1E-4, balanced);
+
+        final double[] residual = new double[cells.length];
+        for(int i = 0; i < cells.length; ++i)
+            residual[i] = cells[i].getTotalMoles() - moles[i];
+        for(int i = 0; i < conductance.length; ++i) {
+            final var boundary = boundaries.get(i);
+            final double flow = TICK_TIME * conductance[i] * (boundary.cell1().pressure() - boundary.cell2().pressure());
+            residual[boundary.cell1().index()] += flow;
+            residual[boundary.cell2().index()] -= flow;
+        }
+        for(int i = 0; i < cells.length; ++i)
+            assertEquals(0, residual[i], 1E-9 * moles[i], "Residual of cell " + i);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 12, 32 })
+    public void conservesGasAndEnergy(int size) {
+        final var random = new Random(11);
+        final var network = new GasNetwork();
+        network.setImplicit(true);
+        final var cells = new GasCell[size * size];
+        for(int i = 0; i < cells.length; ++i) {
+            cells[i] = new GasCell(0.5 + random.nextDouble() * 4);
+            // Mixed temperatures, empty cells and bulk motion
+            if(random.nextInt(8) != 0)
+                fill(cells[i], GasSimulator.ATMOSPHERIC_PRESSURE * (0.5 + random.nextDouble() * 5), 200 + random.nextDouble() * 400);
+            cells[i].changeMomentum(random.nextGaussian() * 10, random.nextGaussian() * 10, random.nextGaussian() * 10);
+        }
+        grid(network, cells, size, random);
+
+        final double moles = network.totalMoles();
+        final double energy = totalEnergy(cells);
+        for(int tick = 0; tick < 200; ++tick) {
+            network.simulate(TICK_TIME);
+            for(final var cell : cells) {
+                assertTrue(cell.getTotalMoles() >= 0, "Negative amount of gas");
+                assertTrue(cell.getMoleculeKineticEnergy() >= 0, "Negative energy");
+            }
+        }
+        assertEquals(moles, network.totalMoles(), 1E-9 * moles);
+        assertEquals(energy, totalEnergy(cells), 1E-9 * energy);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 64, 512 })
+    public void reachesEquilibrium(int length) {
+        final var network = new GasNetwork();
+        network.setImplicit(true);
+        final var cells = new GasCell[length];
+        for(int i = 0; i < length; ++i) {
+            cells[i] = new GasCell(1);
+            fill(cells[i], i < length / 2 ? 5 * GasSimulator.ATMOSPHERIC_PRESSURE : GasSimulator.ATMOSPHERIC_PRESSURE, TEMPERATURE);
+            if(i > 0)
+                network.add(new GasBoundary(cells[i - 1], cells[i], 1, 1, X, 1));
+        }
+
+        int ticks = 0;
+        while(network.activeCount() > 0) {
+            network.simulate(TICK_TIME);
+            assertTrue(++ticks < 20000, "Network didn't settle");
+        }
+
+        double min = Double.POSITIVE_INFINITY, max = 0;
+        for(final var cell : cells) {
+            min = Math.min(min, cell.pressure());
+            max = Math.max(max, cell.pressure());
+        }
+        // Every boundary fell asleep within the balance tolerance, the spread adds up along the pipe
+        assertTrue(max / min - 1 < length * GasNetwork.DEFAULT_BALANCE_TOLERANCE, "Pressure spread " + (max / min - 1));
+        final double expected = 3 * GasSimulator.ATMOSPHERIC_PRESSURE;
+        assertEquals(expected, 0.5 * (min + max), 1E-3 * expected);
+    }
+}
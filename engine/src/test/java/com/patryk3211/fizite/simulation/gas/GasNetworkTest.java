@@ -0,0 +1,349 @@
+package com.patryk3211.fizite.simulation.gas;
+
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the bookkeeping of gas networks, the compaction of pipe runs into groups
+ * and that none of it creates or loses gas.
+ */
+public class GasNetworkTest {
+    private static final double TICK_TIME = 0.05;
+    private static final double TEMPERATURE = 293.15;
+    private static final Vector3d X = new Vector3d(1, 0, 0);
+    private static final Vector3d Z = new Vector3d(0, 0, 1);
+
+    private static void fill(GasCell cell, double pressure) {
+        final double moles = pressure * cell.getVolume() / (GasSimulator.GAS_CONSTANT * TEMPERATURE);
+        cell.set(0.5 * 3 * moles * GasSimulator.GAS_CONSTANT * TEMPERATURE, moles, 0, 0, 0);
+    }
+
+    private static GasCell tank(List<GasCell> cells, double pressure) {
+        final var cell = new GasCell(4);
+        fill(cell, pressure);
+        cells.add(cell);
+        return cell;
+    }
+
+    /**
+     * Straight run of cells between two cells, the pressure falls linearly along it.
+     * @return Boundaries of the run, from the first cell to the last one
+     */
+    private static List<GasBoundary> pipe(GasNetwork network, List<GasCell> cells, GasCell from, GasCell to, int length) {
+        final List<GasBoundary> boundaries = new ArrayList<>();
+        final double pressure1 = from.pressure();
+        final double pressure2 = to.pressure();
+        var previous = from;
+        for(int i = 0; i <= length; ++i) {
+            final GasCell next;
+            if(i < length) {
+                next = new GasCell(0.25);
+                fill(next, pressure1 + (pressure2 - pressure1) * (i + 1) / (length + 1));
+                cells.add(next);
+            } else {
+                next = to;
+            }
+            final var boundary = new GasBoundary(previous, next, 0.1, 0.1, X, 0.05);
+            network.add(boundary);
+            boundaries.add(boundary);
+            previous = next;
+        }
+        return boundaries;
+    }
+
+    /**
+     * Two tanks joined by a long pipe, a shorter pipe leads from the second tank to a third one.
+     * @return All cells of the network
+     */
+    private static List<GasCell> pipes(GasNetwork network) {
+        final List<GasCell> cells = new ArrayList<>();
+        final var tank1 = tank(cells, GasSimulator.ATMOSPHERIC_PRESSURE * 3);
+        final var tank2 = tank(cells, GasSimulator.ATMOSPHERIC_PRESSURE);
+        final var tank3 = tank(cells, GasSimulator.ATMOSPHERIC_PRESSURE * 2);
+        pipe(network, cells, tank1, tank2, 40);
+        pipe(network, cells, tank2, tank3, 21);
+        return cells;
+    }
+
+    /**
+     * Square grid of cells, every cell is connected to its four neighbours.
+     * @param random Source of the pressure differences, null for a grid at rest
+     */
+    private static GasCell[] grid(GasNetwork network, int size, double flowConstant, Random random) {
+        final var cells = new GasCell[size * size];
+        for(int i = 0; i < cells.length; ++i) {
+            cells[i] = new GasCell(0.5);
+            fill(cells[i], GasSimulator.ATMOSPHERIC_PRESSURE * (random == null ? 1 : 1 + random.nextDouble() * 0.05));
+            if(i % size != 0)
+                network.add(new GasBoundary(cells[i - 1], cells[i], 0.1, 0.1, X, flowConstant));
+            if(i >= size)
+                network.add(new GasBoundary(cells[i - size], cells[i], 0.1, 0.1, Z, flowConstant));
+        }
+        return cells;
+    }
+
+    private static double totalEnergy(GasCell[] cells) {
+        return totalEnergy(List.of(cells));
+    }
+
+    private static double totalMoles(GasCell[] cells) {
+        return totalMoles(List.of(cells));
+    }
+
+    private static double totalEnergy(List<GasCell> cells) {
+        double energy = 0;
+        for(final var cell : cells)
+            energy += cell.getMoleculeKineticEnergy() + cell.momentumKineticEnergy();
+        return energy;
+    }
+
+    private static double totalMoles(List<GasCell> cells) {
+        double moles = 0;
+        for(final var cell : cells)
+            moles += cell.getTotalMoles();
+        return moles;
+    }
+
+    @Test
+    public void conservesGasAcrossCompaction() {
+        final var network = new GasNetwork();
+        final var cells = pipes(network);
+        final double moles = totalMoles(cells);
+        final double energy = totalEnergy(cells);
+
+        network.planSubsteps(TICK_TIME);
+        assertTrue(network.compactedCount() > 0);
+        assertEquals(moles, totalMoles(cells), moles * 1E-12);
+        assertEquals(moles, network.totalMoles(), moles * 1E-12);
+        assertEquals(energy, totalEnergy(cells), energy * 1E-12);
+
+        for(int tick = 0; tick < 400; ++tick) {
+            network.advance(TICK_TIME);
+            if(tick % 25 == 0) {
+                // Changes from the outside give the cells of a group their own state back
+                final int compacted = network.compactedCount();
+                for(int i = 0; i < cells.size(); ++i) {
+                    final var cell = cells.get((tick + i) % cells.size());
+                    if(network.share(cell.index()) < 1) {
+                        cell.changeEnergy(0);
+                        break;
+                    }
+                }
+                assertTrue(network.compactedCount() < compacted, "Tick " + tick);
+            }
+            assertEquals(moles, totalMoles(cells), moles * 1E-9, "Tick " + tick);
+            assertEquals(moles, network.totalMoles(), moles * 1E-9, "Tick " + tick);
+            assertEquals(energy, totalEnergy(cells), energy * 1E-9, "Tick " + tick);
+        }
+    }
+
+    @Test
+    public void keepsBookkeepingThroughChanges() {
+        final var network = new GasNetwork();
+        final var cells = pipes(network);
+        network.checkConsistency();
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+        final int compacted = network.compactedCount();
+        assertTrue(compacted > 0);
+
+        // Only the touched run is compacted again, to the same groups
+        cells.get(10).changeEnergy(0);
+        network.checkConsistency();
+        assertTrue(network.compactedCount() < compacted);
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+        assertEquals(compacted, network.compactedCount());
+
+        for(int tick = 0; tick < 100; ++tick) {
+            network.advance(TICK_TIME);
+            network.checkConsistency();
+        }
+
+        // A branch in the middle of the long pipe splits it into two runs
+        final var branch = tank(cells, GasSimulator.ATMOSPHERIC_PRESSURE * 5);
+        final var branchBoundary = new GasBoundary(cells.get(23), branch, 0.1, 0.1, new Vector3d(0, 1, 0), 0.05);
+        network.add(branchBoundary);
+        network.checkConsistency();
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+        assertTrue(network.compactedCount() < compacted);
+        for(int tick = 0; tick < 50; ++tick) {
+            network.advance(TICK_TIME);
+            network.checkConsistency();
+        }
+
+        network.remove(branchBoundary);
+        network.checkConsistency();
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+
+        // Coupled cells and changed boundaries can't be a part of a group
+        cells.get(40).setCoupled(true);
+        network.checkConsistency();
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+        for(int tick = 0; tick < 50; ++tick) {
+            network.advance(TICK_TIME);
+            network.checkConsistency();
+        }
+        cells.get(40).setCoupled(false);
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+
+        network.setSegmentLength(8);
+        network.checkConsistency();
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+        assertTrue(network.compactedCount() > compacted);
+
+        network.setSegmentLength(0);
+        network.checkConsistency();
+        assertEquals(0, network.compactedCount());
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+        assertEquals(0, network.compactedCount());
+    }
+
+    @Test
+    public void changedBoundaryBreaksRun() {
+        final var network = new GasNetwork();
+        final List<GasCell> cells = new ArrayList<>();
+        final var tank1 = tank(cells, GasSimulator.ATMOSPHERIC_PRESSURE * 3);
+        final var tank2 = tank(cells, GasSimulator.ATMOSPHERIC_PRESSURE);
+        final var boundaries = pipe(network, cells, tank1, tank2, 20);
+        network.planSubsteps(TICK_TIME);
+        final int compacted = network.compactedCount();
+
+        boundaries.get(10).setFlowConstant(0.1);
+        network.checkConsistency();
+        network.planSubsteps(TICK_TIME);
+        network.checkConsistency();
+        assertTrue(network.compactedCount() > 0);
+        assertTrue(network.compactedCount() < compacted);
+    }
+
+    /**
+     * Segments of a single cell are no compaction at all, so the results have to be the same to the last bit.
+     */
+    @Test
+    public void singleCellSegmentsMatchNoCompaction() {
+        final var network1 = new GasNetwork();
+        final var network2 = new GasNetwork();
+        network1.setSegmentLength(1);
+        network2.setSegmentLength(0);
+        final var cells1 = pipes(network1);
+        final var cells2 = pipes(network2);
+
+        for(int tick = 0; tick < 300; ++tick) {
+            if(tick % 40 == 0) {
+                cells1.get(tick / 40 + 5).changeEnergy(1);
+                cells2.get(tick / 40 + 5).changeEnergy(1);
+            }
+            network1.advance(TICK_TIME);
+            network2.advance(TICK_TIME);
+            if(tick == 0) {
+                network1.planSubsteps(TICK_TIME);
+                network2.planSubsteps(TICK_TIME);
+            }
+            assertEquals(0, network1.compactedCount());
+            assertEquals(network2.activeCount(), network1.activeCount(), "Tick " + tick);
+            for(int i = 0; i < cells1.size(); ++i) {
+                final var cell1 = cells1.get(i);
+                final var cell2 = cells2.get(i);
+                final String message = "Tick " + tick + ", cell " + i;
+                assertEquals(Double.doubleToRawLongBits(cell2.getMoleculeKineticEnergy()), Double.doubleToRawLongBits(cell1.getMoleculeKineticEnergy()), message);
+                assertEquals(Double.doubleToRawLongBits(cell2.getTotalMoles()), Double.doubleToRawLongBits(cell1.getTotalMoles()), message);
+                assertEquals(Double.doubleToRawLongBits(cell2.momentumX()), Double.doubleToRawLongBits(cell1.momentumX()), message);
+            }
+        }
+    }
+
+    @Test
+    public void networkAtRestStaysAsleep() {
+        final var network = new GasNetwork();
+        final var cells = grid(network, 20, 0.05, null);
+        network.planSubsteps(TICK_TIME);
+        // New boundaries are checked once and go to sleep
+        network.advance(TICK_TIME);
+        assertEquals(0, network.activeCount());
+
+        final var before = new GasCell.Snapshot[cells.length];
+        for(int i = 0; i < cells.length; ++i)
+            before[i] = cells[i].snapshot();
+        for(int tick = 0; tick < 100; ++tick) {
+            network.advance(TICK_TIME);
+            assertEquals(0, network.activeCount(), "Tick " + tick);
+        }
+        for(int i = 0; i < cells.length; ++i)
+            assertEquals(before[i], cells[i].snapshot(), "Cell " + i);
+    }
+
+    @Test
+    public void disturbanceWakesNeighbours() {
+        final var network = new GasNetwork();
+        final var cells = grid(network, 20, 0.05, null);
+        network.planSubsteps(TICK_TIME);
+        network.advance(TICK_TIME);
+        assertEquals(0, network.activeCount());
+
+        // Middle of the grid, all four boundaries of the cell wake up
+        cells[10 * 20 + 10].changeEnergy(cells[10 * 20 + 10].getMoleculeKineticEnergy() * 0.1);
+        assertEquals(4, network.activeCount());
+        // Every sweep which moves gas wakes the boundaries of the cells around it
+        network.planSubsteps(TICK_TIME);
+        network.simulate(network.substepCount() > 0 ? TICK_TIME / network.substepCount() : TICK_TIME);
+        assertEquals(4 + 12, network.activeCount());
+        network.checkConsistency();
+
+        // The pressure wave spreads over the grid
+        for(int tick = 0; tick < 20; ++tick) {
+            network.advance(TICK_TIME);
+            network.checkConsistency();
+        }
+        assertTrue(network.activeCount() > 16 * 4, "Only " + network.activeCount() + " boundaries were woken");
+    }
+
+    /**
+     * A grid large enough for the parallel sweep, its colours are simulated in a different order than the serial
+     * sweep, so the states drift apart a little, but the same gas has to end up in the same places.
+     */
+    @Test
+    public void parallelSweepMatchesSerial() {
+        final var serial = new GasNetwork();
+        final var parallel = new GasNetwork();
+        parallel.setParallel(true);
+        // Slow flows, so that the order of the boundaries only changes the result a little
+        final var serialCells = grid(serial, 64, 0.002, new Random(12));
+        final var parallelCells = grid(parallel, 64, 0.002, new Random(12));
+        // Only the active boundaries go through the sweep, so some of the grid is left asleep
+        for(int i = 0; i < serialCells.length / 4; ++i) {
+            fill(serialCells[i], GasSimulator.ATMOSPHERIC_PRESSURE);
+            fill(parallelCells[i], GasSimulator.ATMOSPHERIC_PRESSURE);
+        }
+        final double moles = totalMoles(parallelCells);
+        final double energy = totalEnergy(parallelCells);
+        serial.planSubsteps(TICK_TIME);
+        parallel.planSubsteps(TICK_TIME);
+        assertTrue(parallel.activeCount() >= 4096);
+
+        for(int tick = 0; tick < 5; ++tick) {
+            serial.advance(TICK_TIME);
+            parallel.advance(TICK_TIME);
+            assertEquals(moles, totalMoles(parallelCells), moles * 1E-9, "Tick " + tick);
+            assertEquals(energy, totalEnergy(parallelCells), energy * 1E-9, "Tick " + tick);
+            parallel.checkConsistency();
+        }
+        for(int i = 0; i < serialCells.length; ++i) {
+            final double pressure = serialCells[i].pressure();
+            assertEquals(pressure, parallelCells[i].pressure(), pressure * 1E-3, "Cell " + i);
+            assertEquals(serialCells[i].getTotalMoles(), parallelCells[i].getTotalMoles(), serialCells[i].getTotalMoles() * 1E-3, "Cell " + i);
+        }
+    }
+}
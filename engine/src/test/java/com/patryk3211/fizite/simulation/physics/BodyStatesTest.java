@@ -0,0 +1,131 @@
+package com.patryk3211.fizite.simulation.physics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips of the body state packet through the same encoding the clients receive.
+ */
+public class BodyStatesTest {
+    private static byte[] write(BodyStates states) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        states.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static BodyStates roundTrip(BodyStates states) throws IOException {
+        final var input = new DataInputStream(new ByteArrayInputStream(write(states)));
+        final var read = BodyStates.read(input);
+        assertEquals(-1, input.read(), "Packet wasn't read fully");
+        return read;
+    }
+
+    private static void assertSameStates(BodyStates expected, BodyStates actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.index(i), actual.index(i), "Index of entry " + i);
+            assertEquals(expected.rawPositionX(i), actual.rawPositionX(i), "Position X of entry " + i);
+            assertEquals(expected.rawPositionY(i), actual.rawPositionY(i), "Position Y of entry " + i);
+            assertEquals(expected.rawPositionA(i), actual.rawPositionA(i), "Angle of entry " + i);
+            assertEquals(expected.rawVelocityX(i), actual.rawVelocityX(i), "Velocity X of entry " + i);
+            assertEquals(expected.rawVelocityY(i), actual.rawVelocityY(i), "Velocity Y of entry " + i);
+            assertEquals(expected.rawVelocityA(i), actual.rawVelocityA(i), "Angular velocity of entry " + i);
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyPacket() throws IOException {
+        final var states = new BodyStates(0);
+        assertArrayEquals(new byte[] { 0 }, write(states));
+        assertEquals(0, roundTrip(states).size());
+    }
+
+    @Test
+    public void roundTripsNegativeValues() throws IOException {
+        final var states = new BodyStates(4);
+        states.add(0, -1, -2, -3, -4, -5, -6);
+        states.add(1, -4096, 4096, -65536, 65536, -1024, 1024);
+        states.add(2, BodyStates.quantizePosition(-123.456), BodyStates.quantizePosition(-0.0001), BodyStates.quantizeAngle(-Math.PI),
+                BodyStates.quantizeVelocity(-7.5), BodyStates.quantizeVelocity(-0.25), BodyStates.quantizeVelocity(-100));
+        final var read = roundTrip(states);
+        assertSameStates(states, read);
+        assertEquals(-123.456, read.positionX(2), 0.5 / BodyStates.POSITION_SCALE);
+        assertEquals(-Math.PI, read.positionA(2), 0.5 / BodyStates.ANGLE_SCALE);
+        assertEquals(-7.5, read.velocityX(2));
+    }
+
+    @Test
+    public void roundTripsIndexRanges() throws IOException {
+        final var states = new BodyStates(0);
+        // A range at zero, a single body, a range after a large gap and a range right after a gap of one
+        final int[] indices = { 0, 1, 2, 5, 1000, 1001, 1002, 1003, 1005, 1006, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+        for(int i = 0; i < indices.length; ++i)
+            states.add(indices[i], i, -i, i * 3, -i * 5, i * 7, -i * 11);
+        final var read = roundTrip(states);
+        assertSameStates(states, read);
+        for(int i = 0; i < indices.length; ++i)
+            assertEquals(i, read.find(indices[i]));
+        assertEquals(-1, read.find(3));
+        assertEquals(-1, read.find(1004));
+    }
+
+    @Test
+    public void roundTripsRangeStartingAfterZero() throws IOException {
+        final var states = new BodyStates(2);
+        states.add(7, 1, 2, 3, 4, 5, 6);
+        states.add(8, 6, 5, 4, 3, 2, 1);
+        // One range, a gap of 7 and a length of 2, then the six values of both bodies
+        final byte[] bytes = write(states);
+        assertEquals(3 + 12, bytes.length);
+        assertEquals(1, bytes[0]);
+        assertEquals(7, bytes[1]);
+        assertEquals(2, bytes[2]);
+        assertSameStates(states, roundTrip(states));
+    }
+
+    @Test
+    public void roundTripsLargeValues() throws IOException {
+        final var states = new BodyStates(4);
+        states.add(0, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1, 1L << 62, -(1L << 62));
+        states.add(1, Integer.MIN_VALUE, Integer.MAX_VALUE, (long) Integer.MIN_VALUE - 1, (long) Integer.MAX_VALUE + 1, 1L << 35, -(1L << 35));
+        states.add(2, 63, -64, 64, -65, 8191, -8192);
+        assertSameStates(states, roundTrip(states));
+    }
+
+    @Test
+    public void writesMinecraftVarInts() throws IOException {
+        final var states = new BodyStates(1);
+        // Zig-zag maps 150 to 300, which is 0xAC 0x02, and -1 to 1, the index 300 with a length of one
+        states.add(300, 150, -1, 0, Long.MIN_VALUE, 0, 0);
+        final byte[] bytes = write(states);
+        final byte[] expected = {
+                1, (byte) 0xAC, 0x02, 1,
+                (byte) 0xAC, 0x02, 1, 0,
+                // Long.MIN_VALUE zig-zags to -1, all ten bytes of a var long
+                -1, -1, -1, -1, -1, -1, -1, -1, -1, 0x01,
+                0, 0
+        };
+        assertArrayEquals(expected, bytes);
+    }
+
+    @Test
+    public void rejectsTruncatedPacket() throws IOException {
+        final var states = new BodyStates(1);
+        states.add(3, 1000, 2000, 3000, 4000, 5000, 6000);
+        final byte[] bytes = write(states);
+        final var input = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+        assertThrows(EOFException.class, () -> BodyStates.read(input));
+    }
+
+    @Test
+    public void estimatesEntrySize() throws IOException {
+        final var states = new BodyStates(1);
+        states.add(0, -70000, 3, Long.MAX_VALUE, 0, -1, 1 << 20);
+        // The range header of a single body packet is the count, the gap and the length
+        final int valueBytes = write(states).length - 3;
+        assertTrue(BodyStates.entrySize(-70000, 3, Long.MAX_VALUE, 0, -1, 1 << 20) >= valueBytes);
+    }
+}
@@ -0,0 +1,250 @@
+package com.patryk3211.fizite.simulation.physics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the prediction of client states and how acknowledgements move sent states into the baseline.
+ */
+public class SyncBaselineTest {
+    private static final double TICK_TIME = 0.05;
+    private static final long POSITION_TOLERANCE = BodyStates.quantizePosition(1E-2);
+    private static final long ANGLE_TOLERANCE = BodyStates.quantizeAngle(1E-2);
+    private static final long VELOCITY_TOLERANCE = BodyStates.quantizeVelocity(5E-2);
+
+    private static BodyStates states(int index, double position, double velocity) {
+        final var states = new BodyStates(1);
+        states.add(index, BodyStates.quantizePosition(position), 0, 0, BodyStates.quantizeVelocity(velocity), 0, 0);
+        return states;
+    }
+
+    private static boolean differs(SyncBaseline baseline, int index, long tick, double position, double velocity) {
+        return differs(baseline, index, tick, false, position, velocity);
+    }
+
+    private static boolean differs(SyncBaseline baseline, int index, long tick, boolean sleeping, double position, double velocity) {
+        return baseline.differs(index, tick, sleeping ? 1 : 0, BodyStates.quantizePosition(position), 0, 0, BodyStates.quantizeVelocity(velocity), 0, 0,
+                POSITION_TOLERANCE, ANGLE_TOLERANCE, VELOCITY_TOLERANCE);
+    }
+
+    /**
+     * Runs the syncs of resting bodies every second tick, every packet is acknowledged right away.
+     * @return Largest amount of bodies sent in one sync, after the first one
+     */
+    private static int syncResting(SyncBaseline baseline, int bodies, int ticks, boolean sleeping, int[] sentTotal) {
+        int maxSent = 0;
+        for(int tick = 0; tick < ticks; tick += 2) {
+            final var states = new BodyStates(0);
+            for(int i = 0; i < bodies; ++i) {
+                if(differs(baseline, i, tick, sleeping, i, 0))
+                    states.add(i, BodyStates.quantizePosition(i), 0, 0, 0, 0, 0);
+            }
+            if(tick > 0) {
+                sentTotal[0] += states.size();
+                maxSent = Math.max(maxSent, states.size());
+            }
+            if(states.size() > 0)
+                baseline.acknowledge(baseline.send(states, tick));
+        }
+        return maxSent;
+    }
+
+    @Test
+    public void unknownBodiesDiffer() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        assertTrue(differs(baseline, 0, 0, 0, 0));
+        assertTrue(differs(baseline, -1, 0, 0, 0));
+    }
+
+    @Test
+    public void predictsWithConstantVelocity() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        baseline.acknowledge(baseline.send(states(3, 10, 2), 100));
+
+        // 20 ticks are a second, so the body moved by its velocity
+        assertFalse(differs(baseline, 3, 120, 12, 2));
+        assertTrue(differs(baseline, 3, 120, 10, 2));
+        assertTrue(differs(baseline, 3, 120, 12, 2.5));
+    }
+
+    @Test
+    public void predictsFromSentStates() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        baseline.acknowledge(baseline.send(states(0, 0, 0), 0));
+        baseline.send(states(0, 5, 1), 10);
+
+        // The packet is still on its way, the body isn't sent again
+        assertFalse(differs(baseline, 0, 30, 6, 1));
+        assertTrue(differs(baseline, 0, 30, 0, 0));
+    }
+
+    @Test
+    public void keepsNewerStateOnOutOfOrderAcknowledgement() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        final int first = baseline.send(states(0, 0, 0), 10);
+        final int second = baseline.send(states(0, 5, 0), 20);
+
+        baseline.acknowledge(second);
+        baseline.acknowledge(first);
+        assertFalse(differs(baseline, 0, 40, 5, 0));
+        assertTrue(differs(baseline, 0, 40, 0, 0));
+    }
+
+    @Test
+    public void acknowledgesOlderPacketOfOtherBodies() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        final int first = baseline.send(states(1, 1, 0), 10);
+        final int second = baseline.send(states(2, 2, 0), 20);
+
+        baseline.acknowledge(second);
+        baseline.acknowledge(first);
+        assertFalse(differs(baseline, 1, 40, 1, 0));
+        assertFalse(differs(baseline, 2, 40, 2, 0));
+    }
+
+    @Test
+    public void ignoresUnknownSequences() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        // Nothing was sent yet
+        baseline.acknowledge(0);
+        baseline.acknowledge(-1);
+        baseline.acknowledge(Integer.MAX_VALUE);
+        assertTrue(differs(baseline, 0, 0, 0, 0));
+
+        final int sequence = baseline.send(states(0, 0, 0), 0);
+        baseline.acknowledge(sequence + 1);
+        baseline.acknowledge(sequence);
+        // A repeated acknowledgement doesn't bring back the old state
+        baseline.acknowledge(baseline.send(states(0, 3, 0), 10));
+        baseline.acknowledge(sequence);
+        assertFalse(differs(baseline, 0, 10, 3, 0));
+    }
+
+    @Test
+    public void ignoresAcknowledgementsOfDroppedPackets() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        final int dropped = baseline.send(states(0, 0, 0), 0);
+        // Enough packets of another body to push the first one out of the pending packets
+        for(int i = 1; i <= 16; ++i)
+            baseline.acknowledge(baseline.send(states(1, i, 0), i));
+
+        baseline.acknowledge(dropped);
+        // The body never got into the baseline, so it's sent again
+        assertTrue(differs(baseline, 0, 20, 0, 0));
+        assertFalse(differs(baseline, 1, 20, 16, 0));
+    }
+
+    @Test
+    public void resendsOldStates() {
+        final var baseline = new SyncBaseline(TICK_TIME, 40);
+        baseline.acknowledge(baseline.send(states(0, 1, 0), 10));
+        assertFalse(differs(baseline, 0, 49, 1, 0));
+        assertTrue(differs(baseline, 0, 50, 1, 0));
+
+        // The heartbeat restarts with every send
+        baseline.send(states(0, 1, 0), 50);
+        assertFalse(differs(baseline, 0, 89, 1, 0));
+        assertTrue(differs(baseline, 0, 90, 1, 0));
+    }
+
+    @Test
+    public void predictsSpinningBodyAcrossWrap() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        final double velocity = 3;
+        final var states = new BodyStates(1);
+        states.add(0, 0, 0, BodyStates.quantizeAngle(6), 0, 0, BodyStates.quantizeVelocity(velocity));
+        baseline.acknowledge(baseline.send(states, 0));
+
+        // The solver keeps the angle within two turns, the same way as PhysicsSolver
+        for(int tick = 1; tick <= 200; ++tick) {
+            double angle = 6 + velocity * tick * TICK_TIME;
+            while(angle > Math.PI * 2)
+                angle -= Math.PI * 2;
+            assertFalse(baseline.differs(0, tick, 0, 0, 0, BodyStates.quantizeAngle(angle), 0, 0, BodyStates.quantizeVelocity(velocity),
+                    POSITION_TOLERANCE, ANGLE_TOLERANCE, VELOCITY_TOLERANCE), "Tick " + tick);
+            // Half a turn off is still a difference
+            assertTrue(baseline.differs(0, tick, 0, 0, 0, BodyStates.quantizeAngle(angle + Math.PI), 0, 0, BodyStates.quantizeVelocity(velocity),
+                    POSITION_TOLERANCE, ANGLE_TOLERANCE, VELOCITY_TOLERANCE), "Tick " + tick);
+        }
+    }
+
+    @Test
+    public void idleSleepingBodiesAreNotSent() {
+        final var baseline = new SyncBaseline(TICK_TIME, 40);
+        final int[] sent = new int[1];
+        syncResting(baseline, 64, 10000, true, sent);
+        assertEquals(0, sent[0]);
+    }
+
+    @Test
+    public void spreadsHeartbeatsOfAwakeBodies() {
+        final var baseline = new SyncBaseline(TICK_TIME, 40);
+        final int[] sent = new int[1];
+        final int maxSent = syncResting(baseline, 64, 2000, false, sent);
+        // Every body comes back at most once in 20 ticks, but never all of them at once
+        assertTrue(sent[0] > 0);
+        assertTrue(sent[0] <= 64 * 2000 / 20, "Sent " + sent[0] + " states");
+        assertTrue(maxSent < 64, "Sent " + maxSent + " states in one sync");
+    }
+
+    @Test
+    public void resendsUnacknowledgedSleepingBodies() {
+        final var baseline = new SyncBaseline(TICK_TIME, 40);
+        baseline.acknowledge(baseline.send(states(0, 0, 0), 0));
+        // The packet with the final resting state gets lost
+        baseline.send(states(0, 1, 0), 10);
+        assertFalse(differs(baseline, 0, 30, true, 1, 0));
+        assertTrue(differs(baseline, 0, 50, true, 1, 0));
+    }
+
+    @Test
+    public void settlesAcknowledgedSleepingBodies() {
+        final var baseline = new SyncBaseline(TICK_TIME, 40);
+        final long position = BodyStates.quantizePosition(2);
+        final int first = baseline.send(states(0, 2, 0), 10);
+        // Not acknowledged yet, so the body has to be checked again
+        assertFalse(baseline.differs(0, 20, 15, position, 0, 0, 0, 0, 0, POSITION_TOLERANCE, ANGLE_TOLERANCE, VELOCITY_TOLERANCE));
+        assertFalse(baseline.settled(0, 15));
+
+        baseline.acknowledge(first);
+        assertFalse(baseline.differs(0, 20, 15, position, 0, 0, 0, 0, 0, POSITION_TOLERANCE, ANGLE_TOLERANCE, VELOCITY_TOLERANCE));
+        assertTrue(baseline.settled(0, 15));
+        // Another sleep of the island, or an awake one, is checked again
+        assertFalse(baseline.settled(0, 16));
+        assertFalse(baseline.settled(0, 0));
+        assertFalse(baseline.settled(1, 15));
+
+        final int second = baseline.send(states(0, 3, 0), 30);
+        assertFalse(baseline.settled(0, 15));
+        baseline.acknowledge(second);
+        assertFalse(baseline.differs(0, 40, 35, BodyStates.quantizePosition(3), 0, 0, 0, 0, 0, POSITION_TOLERANCE, ANGLE_TOLERANCE, VELOCITY_TOLERANCE));
+        assertTrue(baseline.settled(0, 35));
+        baseline.forget(0);
+        assertFalse(baseline.settled(0, 35));
+    }
+
+    @Test
+    public void forgetsBodies() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        baseline.acknowledge(baseline.send(states(4, 1, 0), 0));
+        assertFalse(differs(baseline, 4, 0, 1, 0));
+
+        baseline.forget(4);
+        assertTrue(differs(baseline, 4, 0, 1, 0));
+        baseline.forget(100);
+        baseline.forget(-1);
+    }
+
+    @Test
+    public void countsSkippedSyncs() {
+        final var baseline = new SyncBaseline(TICK_TIME, 0);
+        baseline.skip(7);
+        baseline.skip(7);
+        assertEquals(2, baseline.waited(7));
+        assertEquals(0, baseline.waited(100));
+
+        baseline.send(states(7, 0, 0), 0);
+        assertEquals(0, baseline.waited(7));
+    }
+}
@@ -0,0 +1,48 @@
+package com.patryk3211.fizite.simulation.physics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyncClockTest {
+    @Test
+    public void movesDelayedPacketsForward() {
+        final var clock = new SyncClock(20);
+        assertEquals(0, clock.behind(1000, 10));
+
+        // Server is 1000 ticks ahead, the first packet sets the offset
+        clock.observe(1000, 0);
+        assertEquals(0, clock.behind(1000, 0));
+        // A packet delayed by 3 ticks
+        clock.observe(1007, 10);
+        assertEquals(3, clock.behind(1007, 10));
+        // A faster packet raises the offset, the slow ones are then further behind
+        clock.observe(1012, 11);
+        assertEquals(0, clock.behind(1012, 11));
+        assertEquals(1, clock.behind(1011, 11));
+    }
+
+    @Test
+    public void followsServerFallingBehind() {
+        final var clock = new SyncClock(20);
+        clock.observe(500, 0);
+        // The server lost 5 ticks, every packet arrives 5 ticks later than expected
+        long clientTick = 0;
+        for(int i = 0; i < 200; ++i) {
+            ++clientTick;
+            clock.observe(495 + clientTick, clientTick);
+        }
+        assertEquals(0, clock.behind(495 + clientTick, clientTick));
+    }
+
+    @Test
+    public void resets() {
+        final var clock = new SyncClock(20);
+        clock.observe(500, 0);
+        clock.reset();
+        assertEquals(0, clock.behind(0, 100));
+        clock.observe(0, 100);
+        assertEquals(0, clock.behind(0, 100));
+        assertEquals(2, clock.behind(0, 102));
+    }
+}
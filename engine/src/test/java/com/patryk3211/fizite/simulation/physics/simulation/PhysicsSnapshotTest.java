@@ -0,0 +1,55 @@
+package com.patryk3211.fizite.simulation.physics.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that held snapshots stay intact while the world reuses the buffers of released ones.
+ */
+public class PhysicsSnapshotTest {
+    private static PhysicsWorld movingBody() {
+        final var world = new PhysicsWorld();
+        final var body = new RigidBody();
+        body.getState().setVelocity(1, 0);
+        world.addRigidBody(body);
+        return world;
+    }
+
+    @Test
+    public void heldSnapshotIsNotOverwritten() {
+        final var world = movingBody();
+        world.simulate();
+        final var held = world.snapshot();
+        final long tick = held.tick();
+        final double position = held.positionX(0);
+
+        for(int i = 0; i < 4; ++i) {
+            world.simulate();
+            try(final var latest = world.snapshot()) {
+                assertNotSame(held, latest);
+                assertTrue(latest.positionX(0) > position);
+            }
+        }
+        assertEquals(tick, held.tick());
+        assertEquals(position, held.positionX(0));
+        held.close();
+    }
+
+    @Test
+    public void reusesReleasedSnapshots() {
+        final var world = movingBody();
+        world.simulate();
+        final PhysicsSnapshot first;
+        try(final var snapshot = world.snapshot()) {
+            first = snapshot;
+        }
+        world.simulate();
+        world.simulate();
+        try(final var snapshot = world.snapshot()) {
+            assertSame(first, snapshot);
+            assertEquals(3, snapshot.tick());
+            assertTrue(snapshot.contains(0));
+        }
+    }
+}
@@ -57,7 +57,7 @@ public class ClientGasStorage extends GasStorage {
     public static void onDisconnect() {
         Fizite.LOGGER.info("Clearing client gas simulation");
         gas.registeredCapabilities.clear();
-        gas.collectedBoundaries.clear();
+        gas.network.clear();
         gas.gasCellSync.clear();
         gas.newCells.clear();
     }
@@ -96,28 +96,27 @@ public class ClientNetworking {
 
     private static void handleSyncState(Networking.ClientSyncState packet, ClientAccess access) {
         final var bodies = ClientPhysicsStorage.get().simulation().bodies();
+        // States are moved forward with constant velocities, the same way the server predicts them
+        final double time = ClientPhysicsStorage.get().syncTicksBehind(packet.tick()) * (double) Simulator.TICK_RATE;
 
-        final var indices = packet.bodyIndices();
-        for(int i = 0; i < indices.length; ++i) {
-            final var position = packet.positions()[i];
-            final var velocity = packet.velocities()[i];
-            final var angle = packet.angles()[i];
-            final var angularVelocity = packet.angularVelocities()[i];
-
-            if(bodies.size() > indices[i]) {
-                final var body = bodies.get(indices[i]);
+        final var states = packet.states();
+        for(int i = 0; i < states.size(); ++i) {
+            final int index = states.index(i);
+            if(bodies.size() > index) {
+                final var body = bodies.get(index);
                 if (body != null) {
                     final var state = body.getState();
-                    state.position.x = position.x;
-                    state.position.y = position.y;
-                    state.velocity.x = velocity.x;
-                    state.velocity.y = velocity.y;
-                    state.positionA = angle;
-                    state.velocityA = angularVelocity;
+                    state.setPosition(states.positionX(i) + states.velocityX(i) * time, states.positionY(i) + states.velocityY(i) * time);
+                    state.setVelocity(states.velocityX(i), states.velocityY(i));
+                    state.setPositionA(states.positionA(i) + states.velocityA(i) * time);
+                    state.setVelocityA(states.velocityA(i));
+                    body.wake();
                 }
             }
         }
 
         ClientPhysicsStorage.get().postUpdate();
+        // The server only sends the bodies again once they drift away from the acknowledged states
+        Networking.CHANNEL.clientHandle().send(new Networking.ServerAckSyncState(packet.sequence()));
     }
 }
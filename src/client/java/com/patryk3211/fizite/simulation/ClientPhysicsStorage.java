@@ -3,6 +3,7 @@ package com.patryk3211.fizite.simulation;
 import com.patryk3211.fizite.Fizite;
 import com.patryk3211.fizite.simulation.physics.PhysicsCapability;
 import com.patryk3211.fizite.simulation.physics.PhysicsStorage;
+import com.patryk3211.fizite.simulation.physics.SyncClock;
 import com.patryk3211.fizite.simulation.physics.simulation.PhysicsWorld;
 import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
 import net.minecraft.client.world.ClientWorld;
@@ -12,13 +13,17 @@ import org.joml.Vector3d;
 
 public class ClientPhysicsStorage extends PhysicsStorage {
     private static ClientPhysicsStorage physics;
+    // Ticks of late packets after which the server tick offset goes down by one
+    private static final int CLOCK_DECAY_TICKS = 20;
 
+    private final SyncClock syncClock;
     private Vector3d[] prevPositions;
     private Vector3d[] prevVelocities;
 
     public ClientPhysicsStorage() {
         clientStorage = this;
         physics = this;
+        syncClock = new SyncClock(CLOCK_DECAY_TICKS);
     }
 
     public static ClientPhysicsStorage get() {
@@ -35,6 +40,7 @@ public class ClientPhysicsStorage extends PhysicsStorage {
         Fizite.LOGGER.info("Clearing client physics simulation");
         physics.dataMap.clear();
         physics.simulation.clear();
+        physics.syncClock.reset();
     }
 
     public static void recordClientFrames(int frameCount, Runnable finishedPhysicsRecording) {
@@ -45,6 +51,18 @@ public class ClientPhysicsStorage extends PhysicsStorage {
         return simulation;
     }
 
+    /**
+     * @return Ticks the states of the given server tick have to be simulated forward to match the client simulation
+     */
+    public long syncTicksBehind(long serverTick) {
+        final long clientTick;
+        try(final var snapshot = simulation.snapshot()) {
+            clientTick = snapshot.tick();
+        }
+        syncClock.observe(serverTick, clientTick);
+        return syncClock.behind(serverTick, clientTick);
+    }
+
     @Override
     public void add(BlockPos position, PhysicsCapability capability) {
         ClientNetworking.sendBlockEntityRequest(position);
@@ -78,19 +96,19 @@ public class ClientPhysicsStorage extends PhysicsStorage {
                 prevVelocities[i] = new Vector3d();
             }
             final var pos = prevPositions[i];
-            pos.x = states[i].position.x;
-            pos.y = states[i].position.y;
-            pos.z = states[i].positionA;
+            pos.x = states[i].positionX();
+            pos.y = states[i].positionY();
+            pos.z = states[i].positionA();
             final var vel = prevVelocities[i];
-            vel.x = states[i].velocity.x;
-            vel.y = states[i].velocity.y;
-            vel.z = states[i].velocityA;
+            vel.x = states[i].velocityX();
+            vel.y = states[i].velocityY();
+            vel.z = states[i].velocityA();
         }
     }
 
     public Vector2d lerpPos(RigidBody body, float partialTicks) {
         final var state = body.getState();
-        final var pCurrent = new Vector2d(state.position.x, state.position.y);
+        final var pCurrent = new Vector2d(state.positionX(), state.positionY());
         if(prevPositions == null)
             return pCurrent;
         if(body.index() < 0 || body.index() >= prevPositions.length)
@@ -106,7 +124,7 @@ public class ClientPhysicsStorage extends PhysicsStorage {
 
     public double lerpAngle(RigidBody body, float partialTicks) {
         final var state = body.getState();
-        final var pCurrent = state.positionA;
+        final var pCurrent = state.positionA();
         if(prevPositions == null)
             return pCurrent;
         if(body.index() < 0 || body.index() >= prevPositions.length)
@@ -0,0 +1,50 @@
+package com.patryk3211.fizite.simulation.physics;
+
+import com.patryk3211.fizite.simulation.Networking;
+import com.patryk3211.fizite.simulation.Simulator;
+import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of the physics state sync packet from the published snapshot.
+ * The player never acknowledges a packet and sees every body without a byte budget, so every body is sent every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncPacketBenchmark {
+    @Param({ "100", "1000", "10000" })
+    public int bodies;
+
+    private ServerPhysicsStorage storage;
+    private SyncBaseline baseline;
+    private int[] indices;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storage = new ServerPhysicsStorage();
+        baseline = new SyncBaseline(Simulator.TICK_RATE, 0);
+        indices = new int[bodies];
+        final var world = storage.physicsSimulation();
+        for(int i = 0; i < bodies; ++i) {
+            final var body = new RigidBody();
+            // Moving bodies never fall asleep
+            body.getState().setPosition(i, 0);
+            body.getState().setVelocity(1, 0);
+            world.addRigidBody(body);
+            indices[i] = body.index();
+        }
+        // Publishes the first snapshot
+        world.simulate();
+    }
+
+    @Benchmark
+    public Networking.ClientSyncState makeSyncPacket() {
+        return storage.makeSyncPacket(baseline, indices, null, bodies, Integer.MAX_VALUE, 1E-3, 1E-2);
+    }
+}
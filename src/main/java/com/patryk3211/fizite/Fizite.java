@@ -24,6 +24,7 @@ public class Fizite implements ModInitializer {
 	@Override
 	public void onInitialize() {
 		LOGGER.info("Starting Fizite");
+		FiziteConfig.load();
 
 		FieldRegistrationHandler.register(AllBlocks.class, MOD_ID, false);
 		FieldRegistrationHandler.register(AllItems.class, MOD_ID, false);
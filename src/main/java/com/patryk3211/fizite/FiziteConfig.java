@@ -0,0 +1,159 @@
+package com.patryk3211.fizite;
+
+import com.patryk3211.fizite.simulation.gas.GasNetwork;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Properties;
+
+public class FiziteConfig {
+    private static final String FILE_NAME = Fizite.MOD_ID + ".properties";
+
+    // Amount of threads used to simulate dimensions in parallel
+    public static int simulationThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+    // Amount of threads shared by all dimensions to split the island solve and the gas sweep of one dimension
+    public static int solverThreads = Runtime.getRuntime().availableProcessors();
+    // Amount of server ticks the simulation is allowed to run behind before the server waits for it
+    public static int maxSimulationLag = 2;
+    // Wall clock time in milliseconds a dimension may spend simulating during one server tick
+    public static int simulationBudget = 40;
+    // Maximum amount of extra ticks simulated in one server tick to catch up after lag
+    public static int catchUpTicks = 2;
+    // Drop to the minimum step count while a dimension overruns its budget
+    public static boolean degradeOnOverrun = true;
+    // Only every n-th physics step is timed for the timing report, 0 disables the timing
+    public static int profilingSampleRate = 8;
+    // Fraction of a gas cell a pressure wave may cross in one gas substep, lower values run more substeps
+    public static double gasCourantNumber = GasNetwork.DEFAULT_COURANT_NUMBER;
+    // Maximum amount of gas substeps in one tick
+    public static int gasMaxSubsteps = GasNetwork.DEFAULT_MAX_SUBSTEPS;
+    // Split the flow sweep of large gas networks between multiple threads
+    public static boolean gasParallelSweep = true;
+    // Relative pressure difference below which a gas boundary stops being simulated, 0 simulates all boundaries
+    public static double gasBalanceTolerance = GasNetwork.DEFAULT_BALANCE_TOLERANCE;
+    // Maximum amount of straight pipe blocks simulated as one gas cell, 1 disables the compaction
+    public static int gasPipeSegmentLength = GasNetwork.DEFAULT_SEGMENT_LENGTH;
+    // Solve the gas pressures implicitly once per tick instead of running flow substeps
+    public static boolean gasImplicitSolve = false;
+    // Bodies are sent to a player again once their position (in blocks) or angle (in radians) drifts further than this
+    // from what the client predicts, the tolerances grow with the distance of the machine from the player
+    public static double syncPositionTolerance = 1E-2;
+    // Same for the linear and angular velocities
+    public static double syncVelocityTolerance = 5E-2;
+    // Ticks between the checks of the client predictions, only drifting bodies are sent
+    public static int physicsSyncInterval = 2;
+    // Ticks after which a body is sent again even if the client prediction still matches it,
+    // this bounds the drift of the client simulation, 0 disables it
+    public static int syncMaxAge = 40;
+    // Ticks between the scans of the chunks players track, machines are also found right after they are placed
+    public static int syncInterestInterval = 20;
+    // Approximate size limit (in bytes) of the physics and gas sync packets sent to a single player,
+    // nearer and faster machines go first, the rest waits for the next sync
+    public static int syncByteBudget = 16384;
+
+    public static void load() {
+        final var path = FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+        final var properties = new Properties();
+        if(Files.exists(path)) {
+            try(Reader reader = Files.newBufferedReader(path)) {
+                properties.load(reader);
+            } catch(IOException e) {
+                Fizite.LOGGER.error("Failed to read config file " + path, e);
+            }
+        }
+
+        simulationThreads = Math.max(1, getInt(properties, "simulationThreads", simulationThreads));
+        solverThreads = Math.max(1, getInt(properties, "solverThreads", solverThreads));
+        maxSimulationLag = Math.max(0, getInt(properties, "maxSimulationLag", maxSimulationLag));
+        simulationBudget = Math.max(1, getInt(properties, "simulationBudget", simulationBudget));
+        catchUpTicks = Math.max(0, getInt(properties, "catchUpTicks", catchUpTicks));
+        degradeOnOverrun = getBoolean(properties, "degradeOnOverrun", degradeOnOverrun);
+        profilingSampleRate = Math.max(0, getInt(properties, "profilingSampleRate", profilingSampleRate));
+        gasCourantNumber = getDouble(properties, "gasCourantNumber", gasCourantNumber);
+        if(!(gasCourantNumber > 0)) {
+            Fizite.LOGGER.warn("Config option gasCourantNumber must be positive, using " + GasNetwork.DEFAULT_COURANT_NUMBER);
+            gasCourantNumber = GasNetwork.DEFAULT_COURANT_NUMBER;
+        }
+        gasMaxSubsteps = Math.max(1, getInt(properties, "gasMaxSubsteps", gasMaxSubsteps));
+        gasParallelSweep = getBoolean(properties, "gasParallelSweep", gasParallelSweep);
+        gasBalanceTolerance = getDouble(properties, "gasBalanceTolerance", gasBalanceTolerance);
+        if(!(gasBalanceTolerance >= 0)) {
+            Fizite.LOGGER.warn("Config option gasBalanceTolerance can't be negative, using " + GasNetwork.DEFAULT_BALANCE_TOLERANCE);
+            gasBalanceTolerance = GasNetwork.DEFAULT_BALANCE_TOLERANCE;
+        }
+        gasPipeSegmentLength = Math.max(1, getInt(properties, "gasPipeSegmentLength", gasPipeSegmentLength));
+        gasImplicitSolve = getBoolean(properties, "gasImplicitSolve", gasImplicitSolve);
+        syncPositionTolerance = Math.max(0, getDouble(properties, "syncPositionTolerance", syncPositionTolerance));
+        syncVelocityTolerance = Math.max(0, getDouble(properties, "syncVelocityTolerance", syncVelocityTolerance));
+        syncByteBudget = Math.max(256, getInt(properties, "syncByteBudget", syncByteBudget));
+        physicsSyncInterval = Math.max(1, getInt(properties, "physicsSyncInterval", physicsSyncInterval));
+        syncMaxAge = Math.max(0, getInt(properties, "syncMaxAge", syncMaxAge));
+        syncInterestInterval = Math.max(1, getInt(properties, "syncInterestInterval", syncInterestInterval));
+
+        // Write the file back so that new options show up with their defaults
+        properties.setProperty("simulationThreads", Integer.toString(simulationThreads));
+        properties.setProperty("solverThreads", Integer.toString(solverThreads));
+        properties.setProperty("maxSimulationLag", Integer.toString(maxSimulationLag));
+        properties.setProperty("simulationBudget", Integer.toString(simulationBudget));
+        properties.setProperty("catchUpTicks", Integer.toString(catchUpTicks));
+        properties.setProperty("degradeOnOverrun", Boolean.toString(degradeOnOverrun));
+        properties.setProperty("profilingSampleRate", Integer.toString(profilingSampleRate));
+        properties.setProperty("gasCourantNumber", Double.toString(gasCourantNumber));
+        properties.setProperty("gasMaxSubsteps", Integer.toString(gasMaxSubsteps));
+        properties.setProperty("gasParallelSweep", Boolean.toString(gasParallelSweep));
+        properties.setProperty("gasBalanceTolerance", Double.toString(gasBalanceTolerance));
+        properties.setProperty("gasPipeSegmentLength", Integer.toString(gasPipeSegmentLength));
+        properties.setProperty("gasImplicitSolve", Boolean.toString(gasImplicitSolve));
+        properties.setProperty("syncPositionTolerance", Double.toString(syncPositionTolerance));
+        properties.setProperty("syncVelocityTolerance", Double.toString(syncVelocityTolerance));
+        properties.setProperty("syncByteBudget", Integer.toString(syncByteBudget));
+        properties.setProperty("physicsSyncInterval", Integer.toString(physicsSyncInterval));
+        properties.setProperty("syncMaxAge", Integer.toString(syncMaxAge));
+        properties.setProperty("syncInterestInterval", Integer.toString(syncInterestInterval));
+        try(Writer writer = Files.newBufferedWriter(path)) {
+            properties.store(writer, "Fizite configuration");
+        } catch(IOException e) {
+            Fizite.LOGGER.error("Failed to write config file " + path, e);
+        }
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue) {
+        final var value = properties.getProperty(key);
+        if(value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch(NumberFormatException e) {
+            Fizite.LOGGER.warn("Invalid value '" + value + "' for config option " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static double getDouble(Properties properties, String key, double defaultValue) {
+        final var value = properties.getProperty(key);
+        if(value == null)
+            return defaultValue;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch(NumberFormatException e) {
+            Fizite.LOGGER.warn("Invalid value '" + value + "' for config option " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static boolean getBoolean(Properties properties, String key, boolean defaultValue) {
+        final var value = properties.getProperty(key);
+        if(value == null)
+            return defaultValue;
+        final var trimmed = value.trim();
+        if(trimmed.equalsIgnoreCase("true"))
+            return true;
+        if(trimmed.equalsIgnoreCase("false"))
+            return false;
+        Fizite.LOGGER.warn("Invalid value '" + value + "' for config option " + key + ", using " + defaultValue);
+        return defaultValue;
+    }
+}
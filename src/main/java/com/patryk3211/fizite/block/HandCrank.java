@@ -59,15 +59,15 @@ public class HandCrank extends ModdedBlock implements BlockEntityProvider {
             return ActionResult.PASS;
         // Apply force if desired speed is not yet achieved
         final var forceGenerator = entity.getCapability(DeferredForceGenerator.class);
-        final var bodyState = entity.getCapability(PhysicsCapability.class).body(0).getState();
+        final var bodyState = entity.getCapability(PhysicsCapability.class).body(0).snapshotState();
 
         float applyForce = 0;
         if(player.isSneaking()) {
-            if(bodyState.velocityA > -6) {
+            if(bodyState.velocityA() > -6) {
                 applyForce = -150;
             }
         } else {
-            if(bodyState.velocityA < 6) {
+            if(bodyState.velocityA() < 6) {
                 applyForce = 150;
             }
         }
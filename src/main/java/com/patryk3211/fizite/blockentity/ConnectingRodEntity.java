@@ -25,7 +25,7 @@ public class ConnectingRodEntity extends CapabilitiesBlockEntity {
             .forBlock(AllBlocks.CONNECTING_ROD)
             .with(() -> new SimplePhysicsCapability(ZONES, rb -> {
                 rb.setMarker("Rod");
-                rb.getState().position.x = 1;
+                rb.getState().setPositionX(1);
                 return null;
             }, true));
 
@@ -55,13 +55,13 @@ public class CylinderEntity extends CapabilitiesBlockEntity {
         if(state.get(Properties.FACING).getDirection() == Direction.AxisDirection.POSITIVE) {
             return new SimplePhysicsCapability(ZONES_POSITIVE, rb -> {
                 rb.setMarker("Piston");
-                rb.getState().position.x = -2;
+                rb.getState().setPositionX(-2);
                 return new Constraint[]{new PistonConstraint(rb, 0, 0)};
             }, false);
         } else {
             return new SimplePhysicsCapability(ZONES_NEGATIVE, rb -> {
                 rb.setMarker("Piston");
-                rb.getState().position.x = 2;
+                rb.getState().setPositionX(2);
                 return new Constraint[]{new PistonConstraint(rb, 0, 0)};
             }, false);
         }
@@ -85,7 +85,7 @@ public class CylinderEntity extends CapabilitiesBlockEntity {
 
         private float calculateVolume() {
             final var body = entity.getCapability(PhysicsCapability.class).body(0);
-            final var currentPos = body.getState().position.x;
+            final var currentPos = body.getState().positionX();
             final var chamberLength = origin - currentPos;
             return (float) (tdcVolume + Math.max(chamberLength * pistonArea, 0));
         }
@@ -94,6 +94,8 @@ public class CylinderEntity extends CapabilitiesBlockEntity {
         public void onLoad() {
             super.onLoad();
             gas = entity.getCapability(GasCapability.class);
+            // The chamber volume follows the piston, so its gas has to keep up with the physics steps
+            gas.cells().get(0).setCoupled(true);
         }
 
         @Override
@@ -136,10 +138,10 @@ public class CylinderEntity extends CapabilitiesBlockEntity {
 
             // Pa = N / m²
             final double force = pressureDifference * pistonArea * forceDirection;
-            final double frictionForce = calculateFriction(body.getState().velocity.x);
+            final double frictionForce = calculateFriction(body.getState().velocityX());
             if(Double.isNaN(force) || Double.isInfinite(force))
                 return;
-            body.getState().extForce.x = -force + frictionForce;
+            body.getState().setExtForceX(-force + frictionForce);
         }
     }
 
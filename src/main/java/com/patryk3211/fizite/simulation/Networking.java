@@ -1,22 +1,31 @@
 package com.patryk3211.fizite.simulation;
 
 import com.patryk3211.fizite.Fizite;
+import com.patryk3211.fizite.FiziteConfig;
 import com.patryk3211.fizite.capability.CapabilitiesBlockEntity;
 import com.patryk3211.fizite.simulation.gas.GasCapability;
 import com.patryk3211.fizite.simulation.gas.GasCell;
+import com.patryk3211.fizite.simulation.physics.BodyStates;
 import com.patryk3211.fizite.simulation.physics.IPhysicsProvider;
 import com.patryk3211.fizite.simulation.physics.PhysicsCapability;
 import com.patryk3211.fizite.simulation.physics.PhysicsStorage;
+import com.patryk3211.fizite.simulation.physics.ServerPhysicsStorage;
 import io.wispforest.owo.network.OwoNetChannel;
 import io.wispforest.owo.network.ServerAccess;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.wispforest.owo.network.serialization.PacketBufSerializer;
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Vec2f;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 public class Networking {
@@ -25,12 +34,14 @@ public class Networking {
     public record GasState(long cellId, double Ek, double n, double V_x, double V_y, double V_z) { }
 
     public record ClientAddBlockEntity(BlockPos entityPosition, int[] rigidBodyIndices) { }
-    public record ClientSyncState(int[] bodyIndices, Vec2f[] positions, Vec2f[] velocities, float[] angles, float[] angularVelocities) { }
+    // Tick is the server simulation tick of the states
+    public record ClientSyncState(int sequence, long tick, BodyStates states) { }
     public record ClientGetSimulation(BlockPos[] entities, int[][] rigidBodyIndices) { }
     public record ClientSyncGasState(GasState[] states) { }
     public record ServerRequestBlockEntity(BlockPos entityPosition) { }
     public record ServerAddGasSyncPosition(BlockPos position) { }
     public record ServerRemoveGasSyncPosition(long id) { }
+    public record ServerAckSyncState(int sequence) { }
 
     private static class WaitListEntry {
         public static final int PHYSICS_FLAG = 1;
@@ -47,7 +58,25 @@ public class Networking {
     }
     private static final Map<RegistryKey<World>, Map<BlockPos, WaitListEntry>> waitingForEntity = new HashMap<>();
 
-    private static final Map<ServerPlayerEntity, Map<Long, GasCell>> playerGasSync = new HashMap<>();
+    // Size of a serialized gas state
+    private static final int GAS_STATE_BYTES = 48;
+
+    private static class GasSyncEntry {
+        public final BlockPos position;
+        public final GasCell cell;
+        // Syncs this cell was left out of because of the byte budget
+        public int waited;
+
+        public GasSyncEntry(BlockPos position, GasCell cell) {
+            this.position = position;
+            this.cell = cell;
+        }
+    }
+    private static final Map<ServerPlayerEntity, Map<Long, GasSyncEntry>> playerGasSync = new HashMap<>();
+    // Scratch buffers of the gas sync, reused for every player and only touched on the server thread
+    private static GasSyncEntry[] gasSyncEntries = new GasSyncEntry[16];
+    private static long[] gasSyncIds = new long[16];
+    private static long[] gasSyncOrder = new long[16];
 
     private static void setWaitFlag(RegistryKey<World> world, BlockPos pos, ServerPlayerEntity player, int flags) {
         var worldEntry = waitingForEntity.computeIfAbsent(world, k -> new HashMap<>());
@@ -98,13 +127,18 @@ public class Networking {
     public static void initialize() {
         CHANNEL = OwoNetChannel.create(new Identifier(Fizite.MOD_ID, "physics"));
 
-        PacketBufSerializer.register(Vec2f.class, (packetByteBuf, vec) -> {
-            packetByteBuf.writeFloat(vec.x);
-            packetByteBuf.writeFloat(vec.y);
+        PacketBufSerializer.register(BodyStates.class, (packetByteBuf, states) -> {
+            try {
+                states.write(new ByteBufOutputStream(packetByteBuf));
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }, packetByteBuf -> {
-            float x = packetByteBuf.readFloat();
-            float y = packetByteBuf.readFloat();
-            return new Vec2f(x, y);
+            try {
+                return BodyStates.read(new ByteBufInputStream(packetByteBuf));
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
         });
         PacketBufSerializer.register(GasState.class, (packetByteBuf, gasState) -> {
             packetByteBuf.writeLong(gasState.cellId);
@@ -130,6 +164,11 @@ public class Networking {
         CHANNEL.registerServerbound(ServerRequestBlockEntity.class, Networking::handleRequestBlockEntity);
         CHANNEL.registerServerbound(ServerAddGasSyncPosition.class, Networking::handleAddGasSync);
         CHANNEL.registerServerbound(ServerRemoveGasSyncPosition.class, Networking::handleRemoveGasSync);
+        CHANNEL.registerServerbound(ServerAckSyncState.class, Networking::handleAckSyncState);
+    }
+
+    private static void handleAckSyncState(ServerAckSyncState packet, ServerAccess access) {
+        ServerPhysicsStorage.acknowledge(access.player(), packet.sequence);
     }
 
     private static void handleRemoveGasSync(ServerRemoveGasSyncPosition packet, ServerAccess access) {
@@ -157,7 +196,8 @@ public class Networking {
         }
 
         final var playerCells = playerGasSync.computeIfAbsent(access.player(), k -> new HashMap<>());
-        capEntity.getCapability(GasCapability.class).cells().forEach(cell -> playerCells.put(cell.getSyncId(), cell));
+        final var position = packet.position.toImmutable();
+        capEntity.getCapability(GasCapability.class).cells().forEach(cell -> playerCells.put(cell.getSyncId(), new GasSyncEntry(position, cell)));
     }
 
     private static void handleRequestBlockEntity(ServerRequestBlockEntity packet, ServerAccess access) {
@@ -213,7 +253,7 @@ public class Networking {
         entry.players.forEach((player, flags) -> {
             if((flags & WaitListEntry.GAS_FLAG) != 0) {
                 final var playerCells = playerGasSync.computeIfAbsent(player, k -> new HashMap<>());
-                capability.cells().forEach(cell -> playerCells.put(cell.getSyncId(), cell));
+                capability.cells().forEach(cell -> playerCells.put(cell.getSyncId(), new GasSyncEntry(pos, cell)));
             }
         });
         clearWaitFlag(world, pos, WaitListEntry.GAS_FLAG);
@@ -238,11 +278,52 @@ public class Networking {
 
     private static void syncGas() {
         playerGasSync.forEach((player, syncStates) -> {
-            final List<Networking.GasState> packetData = new LinkedList<>();
-            syncStates.forEach((id, cell) -> {
-                final var momentum = cell.getMomentum();
-                packetData.add(new GasState(id, cell.getMoleculeKineticEnergy(), cell.getTotalMoles(), momentum.x, momentum.y, momentum.z));
-            });
+            // Cells of chunks the player stopped tracking are dropped, the client asks for them again when it loads the chunk
+            final var world = player.getServerWorld();
+            final Map<Long, Boolean> tracked = new HashMap<>();
+            syncStates.values().removeIf(entry -> !tracked.computeIfAbsent(ChunkPos.toLong(entry.position),
+                    chunk -> PlayerLookup.tracking(world, new ChunkPos(chunk)).contains(player)));
+
+            // Nearer cells go first, cells waiting for a long time catch up with them
+            final var playerPos = player.getPos();
+            final int count = syncStates.size();
+            if(gasSyncOrder.length < count) {
+                final int capacity = Math.max(count, gasSyncOrder.length * 2);
+                gasSyncEntries = new GasSyncEntry[capacity];
+                gasSyncIds = new long[capacity];
+                gasSyncOrder = new long[capacity];
+            }
+            int i = 0;
+            for(final var entry : syncStates.entrySet()) {
+                final var syncEntry = entry.getValue();
+                final double distance = playerPos.distanceTo(Vec3d.ofCenter(syncEntry.position));
+                // Bits of a non negative float sort the same way as its value
+                final float priority = (float) (distance / (1 + syncEntry.waited));
+                gasSyncEntries[i] = syncEntry;
+                gasSyncIds[i] = entry.getKey();
+                gasSyncOrder[i] = (long) Float.floatToRawIntBits(priority) << 32 | i;
+                ++i;
+            }
+            Arrays.sort(gasSyncOrder, 0, count);
+
+            final List<Networking.GasState> packetData = new ArrayList<>();
+            int bytes = 0;
+            for(int k = 0; k < count; ++k) {
+                final int index = (int) gasSyncOrder[k];
+                final var syncEntry = gasSyncEntries[index];
+                if(!packetData.isEmpty() && bytes + GAS_STATE_BYTES > FiziteConfig.syncByteBudget) {
+                    ++syncEntry.waited;
+                    continue;
+                }
+                bytes += GAS_STATE_BYTES;
+                syncEntry.waited = 0;
+                final var state = syncEntry.cell.snapshot();
+                packetData.add(new GasState(gasSyncIds[index], state.kineticEnergy(), state.totalMoles(), state.momentumX(), state.momentumY(), state.momentumZ()));
+            }
+            // Don't keep the cells of removed machines alive
+            Arrays.fill(gasSyncEntries, 0, count, null);
+            if(packetData.isEmpty())
+                return;
             final var packet = new Networking.ClientSyncGasState(packetData.toArray(new Networking.GasState[0]));
             Networking.CHANNEL.serverHandle(player).send(packet);
         });
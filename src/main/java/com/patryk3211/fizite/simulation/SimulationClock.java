@@ -0,0 +1,127 @@
+package com.patryk3211.fizite.simulation;
+
+import com.patryk3211.fizite.FiziteConfig;
+
+/**
+ * Keeps a simulation running at a fixed rate of {@link Simulator#TICK_RATE} in wall clock time.
+ * Elapsed time is collected in an accumulator and every run simulates as many fixed ticks as
+ * the accumulator holds. Ticks missed because of server lag are caught up with at most
+ * {@link FiziteConfig#catchUpTicks} extra ticks per run and only while the run is still within
+ * its wall clock budget, any time beyond that is dropped. When a run overruns its budget the clock
+ * can switch into a degraded mode, in which the simulation uses its minimum step count,
+ * until runs fit comfortably into the budget again.
+ */
+public class SimulationClock {
+    // Amount of consecutive runs under half of the budget required to leave the degraded mode
+    private static final int RECOVERY_RUNS = 20;
+
+    private final double tickTime;
+    // Wall clock time of the last run start, 0 if the clock hasn't run yet
+    private long lastTime;
+    // Simulation time which still has to be simulated
+    private double accumulator;
+    private long runStart;
+    private int runTicks;
+    private boolean degraded;
+    private int calmRuns;
+
+    // Telemetry
+    public long simulatedTicks;
+    public long catchUpTicks;
+    public long skippedRuns;
+    public long budgetOverruns;
+    public long degradedTicks;
+    // Simulation time which couldn't be caught up with, in seconds
+    public double droppedTime;
+    public long lastRunTime;
+    public long maxRunTime;
+
+    public SimulationClock() {
+        this(Simulator.TICK_RATE);
+    }
+
+    public SimulationClock(double tickTime) {
+        this.tickTime = tickTime;
+    }
+
+    private static long budget() {
+        return FiziteConfig.simulationBudget * 1000000L;
+    }
+
+    /**
+     * Starts a run and adds the wall clock time elapsed since the last run to the accumulator.
+     */
+    public void begin(long now) {
+        final double elapsed = lastTime == 0 ? tickTime : (now - lastTime) / 1E9;
+        lastTime = now;
+        runStart = now;
+        runTicks = 0;
+
+        accumulator += elapsed;
+        // Ticks are rounded to the nearest one, the extra half tick keeps the catch-up limit exact
+        final double maxAccumulator = tickTime * (FiziteConfig.catchUpTicks + 1.5);
+        if(accumulator > maxAccumulator) {
+            droppedTime += accumulator - maxAccumulator;
+            accumulator = maxAccumulator;
+        }
+    }
+
+    /**
+     * Decides if another tick should be simulated in the current run.
+     * @return True if a tick should be simulated, it's accounted for as already done
+     */
+    public boolean nextTick(long now) {
+        // Round to the nearest tick, so that small jitter of the server tick doesn't cause skipped or double ticks
+        if(accumulator <= tickTime * 0.5) {
+            if(runTicks == 0)
+                ++skippedRuns;
+            return false;
+        }
+        if(runTicks > 0) {
+            // Only catch up while there is time left, the remaining time stays in the accumulator
+            if(runTicks > FiziteConfig.catchUpTicks || now - runStart >= budget())
+                return false;
+            ++catchUpTicks;
+        }
+        accumulator -= tickTime;
+        ++runTicks;
+        ++simulatedTicks;
+        if(degraded)
+            ++degradedTicks;
+        return true;
+    }
+
+    /**
+     * Finishes a run, updates the telemetry and the degraded mode.
+     */
+    public void end(long now) {
+        lastRunTime = now - runStart;
+        maxRunTime = Math.max(maxRunTime, lastRunTime);
+        final long budget = budget();
+        if(lastRunTime > budget) {
+            ++budgetOverruns;
+            calmRuns = 0;
+            if(FiziteConfig.degradeOnOverrun)
+                degraded = true;
+        } else if(degraded) {
+            calmRuns = lastRunTime < budget / 2 ? calmRuns + 1 : 0;
+            if(calmRuns >= RECOVERY_RUNS || !FiziteConfig.degradeOnOverrun)
+                degraded = false;
+        }
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Amount of simulation time the clock is behind by, in seconds.
+     */
+    public double behind() {
+        return Math.max(accumulator - tickTime * 0.5, 0);
+    }
+
+    public int lastRunTicks() {
+        return runTicks;
+    }
+}
@@ -1,26 +1,39 @@
 package com.patryk3211.fizite.simulation;
 
 import com.patryk3211.fizite.Fizite;
+import com.patryk3211.fizite.FiziteConfig;
 import com.patryk3211.fizite.simulation.gas.GasSimulator;
-import com.patryk3211.fizite.simulation.gas.GasStorage;
 import com.patryk3211.fizite.simulation.gas.ServerGasStorage;
 import com.patryk3211.fizite.simulation.physics.PhysicsStorage;
 import com.patryk3211.fizite.simulation.physics.ServerPhysicsStorage;
-import com.patryk3211.fizite.simulation.physics.SimulationTuner;
 import com.patryk3211.fizite.simulation.physics.simulation.IPhysicsStepHandler;
+import com.patryk3211.fizite.simulation.physics.simulation.PhysicsWorld;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.world.ServerWorld;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Simulator {
-    public record GasStepHandler(GasStorage boundaries) implements IPhysicsStepHandler {
+    /**
+     * Hands the physics step time to the gas storage, the gas network runs its own CFL based
+     * substeps from it. Cylinder volumes are still updated on every physics step by their own
+     * step handlers, so pistons see the gas pressure at the rate they are simulated at.
+     */
+    public record GasStepHandler(ServerGasStorage boundaries) implements IPhysicsStepHandler {
         @Override
         public void onStepEnd(double deltaTime) {
             if(deltaTime == 0)
                 return;
             boundaries.simulate(deltaTime);
         }
+
+        @Override
+        public void onTickEnd() {
+            boundaries.publish();
+        }
     }
 
     public static final float TICK_RATE = 1.0f / 20.0f;
@@ -29,11 +42,24 @@ public class Simulator {
     private static Semaphore solveStart;
     private static Semaphore solveFinished;
     private static int tickCount = 0;
+    private static int physicsSyncCount = 0;
+    // Set while the worker is simulating a tick, only accessed by the server thread
+    private static boolean tickInFlight = false;
+    // Amount of server ticks the simulation is behind
+    private static int lagTicks = 0;
 
     public static void initializeWorker() {
         Fizite.LOGGER.info("Starting simulation thread");
         solveStart = new Semaphore(0, true);
         solveFinished = new Semaphore(0, true);
+        PhysicsWorld.setSolverThreads(FiziteConfig.solverThreads);
+        // Dimensions are simulated in parallel on this pool, the worker thread only waits for them
+        final var threadIndex = new AtomicInteger();
+        final ExecutorService dimensionPool = Executors.newFixedThreadPool(FiziteConfig.simulationThreads, runnable -> {
+            final var thread = new Thread(runnable, "Simulator Dimension Worker " + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
         Thread solverThread = new Thread(() -> {
             Fizite.LOGGER.info("Simulation thread started");
             while (solverRunning) {
@@ -41,7 +67,7 @@ public class Simulator {
                     // Wait for start signal
                     solveStart.acquire();
                     // Simulate physics
-                    ServerPhysicsStorage.simulateAll();
+                    ServerPhysicsStorage.simulateAll(dimensionPool);
                     // Signal end of simulation tick
                     solveFinished.release();
                 } catch (InterruptedException e) {
@@ -54,6 +80,7 @@ public class Simulator {
                     solveFinished.release();
                 }
             }
+            dimensionPool.shutdown();
             Fizite.LOGGER.info("Simulation thread stopped");
         });
         solverRunning = true;
@@ -63,36 +90,58 @@ public class Simulator {
 
     public static void stopWorker() {
         Fizite.LOGGER.info("Stopping simulation thread");
+        // Let the last tick finish before the simulations are removed
+        if(tickInFlight)
+            solveFinished.acquireUninterruptibly();
+        tickInFlight = false;
+        lagTicks = 0;
         solverRunning = false;
         ServerPhysicsStorage.clearSimulations();
+        // Wake the worker up so that it can exit
+        solveStart.release();
         tickCount = 0;
+        physicsSyncCount = 0;
     }
 
     @SuppressWarnings("unused")
     public static void onWorldStart(MinecraftServer server, ServerWorld world) {
         final var physics = ServerPhysicsStorage.addToWorld(world);
         final var gas = ServerGasStorage.addToWorld(world);
-        physics.physicsSimulation().tuner = new SimulationTuner(physics);
         physics.addStepHandler(new GasStepHandler(gas));
     }
 
     @SuppressWarnings("unused")
     public static void onServerTickStart(MinecraftServer server) {
+        if(tickInFlight) {
+            if(solveFinished.tryAcquire()) {
+                tickInFlight = false;
+            } else if(++lagTicks <= FiziteConfig.maxSimulationLag) {
+                // The simulation is still running the previous tick, the server keeps using
+                // the last published snapshot in the meantime and the simulation clocks
+                // catch up with the missed time on the next run
+                return;
+            } else {
+                // Don't let the simulation fall behind any further
+                solveFinished.acquireUninterruptibly();
+                tickInFlight = false;
+            }
+        }
         // Dispatch worker thread
+        lagTicks = 0;
+        tickInFlight = true;
         solveStart.release();
     }
 
     public static void onServerTickEnd(MinecraftServer server) {
-        // Wait for worker to finish
-        try {
-            solveFinished.acquire();
-            if(tickCount++ >= 20 * 2) {
-                tickCount = 0;
-                ServerPhysicsStorage.syncStates(server);
-                Networking.sync();
-            }
-        } catch (InterruptedException e) {
-            Fizite.LOGGER.error(e.getMessage());
+        // Only published snapshots are read here, there is no need to wait for the worker
+        // Bodies are only sent once the client prediction drifts away, so they can be checked often
+        if(++physicsSyncCount >= FiziteConfig.physicsSyncInterval) {
+            physicsSyncCount = 0;
+            ServerPhysicsStorage.syncStates(server);
+        }
+        if(tickCount++ >= 20 * 2) {
+            tickCount = 0;
+            Networking.sync();
         }
     }
 }
@@ -2,6 +2,7 @@ package com.patryk3211.fizite.simulation.gas;
 
 import com.patryk3211.fizite.Fizite;
 import com.patryk3211.fizite.capability.ConnectableCapability;
+import io.wispforest.owo.nbt.NbtKey;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 import net.minecraft.nbt.NbtList;
@@ -9,11 +10,19 @@ import net.minecraft.text.Text;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import org.jetbrains.annotations.NotNull;
+import org.joml.Vector3d;
 
 import java.util.List;
 import java.util.Objects;
 
 public abstract class GasCapability extends ConnectableCapability<GasCapability> {
+    private static final NbtKey<Long> NBT_SYNC_ID = new NbtKey<>("id", NbtKey.Type.LONG);
+    private static final NbtKey<Double> NBT_TOTAL_MOLE_COUNT = new NbtKey<>("n", NbtKey.Type.DOUBLE);
+    private static final NbtKey<Double> NBT_KINETIC_ENERGY = new NbtKey<>("Ek", NbtKey.Type.DOUBLE);
+    private static final NbtKey<Double> NBT_MOMENTUM_X = new NbtKey<>("Vx", NbtKey.Type.DOUBLE);
+    private static final NbtKey<Double> NBT_MOMENTUM_Y = new NbtKey<>("Vy", NbtKey.Type.DOUBLE);
+    private static final NbtKey<Double> NBT_MOMENTUM_Z = new NbtKey<>("Vz", NbtKey.Type.DOUBLE);
+
     private final GasBoundary[] boundaries;
 
     public GasCapability() {
@@ -49,7 +58,7 @@ public abstract class GasCapability extends ConnectableCapability<GasCapability>
         final var list = compound.getList("states", NbtElement.COMPOUND_TYPE);
         final var cellList = cells();
         for(int i = 0; i < list.size(); ++i)
-            cellList.get(i).deserialize(list.getCompound(i));
+            deserialize(cellList.get(i), list.getCompound(i));
     }
 
     @Override
@@ -60,7 +69,7 @@ public abstract class GasCapability extends ConnectableCapability<GasCapability>
         final var list = new NbtList();
         final var cellList = cells();
         for(GasCell gasCell : cellList)
-            list.add(gasCell.serialize(false));
+            list.add(serialize(gasCell, false));
         compound.put("states", list);
         return compound;
     }
@@ -73,11 +82,32 @@ public abstract class GasCapability extends ConnectableCapability<GasCapability>
         final var list = new NbtList();
         final var cellList = cells();
         for(GasCell gasCell : cellList)
-            list.add(gasCell.serialize(true));
+            list.add(serialize(gasCell, true));
         compound.put("states", list);
         return compound;
     }
 
+    private static NbtCompound serialize(GasCell cell, boolean withId) {
+        // Serialized on the server thread, so only the published state can be used
+        final var state = cell.snapshot();
+        NbtCompound tag = new NbtCompound();
+        tag.put(NBT_KINETIC_ENERGY, state.kineticEnergy());
+        tag.put(NBT_TOTAL_MOLE_COUNT, state.totalMoles());
+        tag.put(NBT_MOMENTUM_X, state.momentumX());
+        tag.put(NBT_MOMENTUM_Y, state.momentumY());
+        tag.put(NBT_MOMENTUM_Z, state.momentumZ());
+        if(withId)
+            tag.put(NBT_SYNC_ID, cell.getSyncId());
+        return tag;
+    }
+
+    private static void deserialize(GasCell cell, NbtCompound tag) {
+        cell.set(tag.get(NBT_KINETIC_ENERGY), tag.get(NBT_TOTAL_MOLE_COUNT),
+                new Vector3d(tag.get(NBT_MOMENTUM_X), tag.get(NBT_MOMENTUM_Y), tag.get(NBT_MOMENTUM_Z)));
+        if(tag.has(NBT_SYNC_ID))
+            cell.setSyncId(tag.get(NBT_SYNC_ID));
+    }
+
     @Override
     public boolean connect(Direction dir, GasCapability connectTo) {
         Objects.requireNonNull(entity.getWorld());
@@ -86,7 +116,7 @@ public abstract class GasCapability extends ConnectableCapability<GasCapability>
         final var boundary = new GasBoundary(
                 cell(dir), connectTo.cell(oDir),
                 crossSection(dir), connectTo.crossSection(oDir),
-                dir, Math.min(flowConstant(dir), connectTo.flowConstant(oDir)));
+                new Vector3d(dir.getUnitVector()), Math.min(flowConstant(dir), connectTo.flowConstant(oDir)));
         GasStorage.get(entity.getWorld()).add(boundary);
         boundaries[dir.getId()] = boundary;
         connectTo.boundaries[oDir.getId()] = boundary;
@@ -145,8 +175,9 @@ public abstract class GasCapability extends ConnectableCapability<GasCapability>
         output.add(Text.literal("Gas Capability:"));
         int index = 0;
         for (GasCell cell : cells()) {
-            output.add(Text.of(String.format("  [%d] Pressure = %.1f Pa", index, cell.pressure())));
-            output.add(Text.of(String.format("  [%d] Temperature = %.2f K", index, cell.temperature())));
+            final var state = cell.snapshot();
+            output.add(Text.of(String.format("  [%d] Pressure = %.1f Pa", index, state.pressure())));
+            output.add(Text.of(String.format("  [%d] Temperature = %.2f K", index, state.temperature())));
             ++index;
         }
     }
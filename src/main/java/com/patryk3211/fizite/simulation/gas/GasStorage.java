@@ -8,17 +8,18 @@ import net.minecraft.world.World;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.util.*;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class GasStorage extends PersistentState {
     protected static GasStorage clientStorage = null;
 
     protected final Map<BlockPos, GasCapability> registeredCapabilities;
-    protected final List<GasBoundary> collectedBoundaries;
+    protected final GasNetwork network;
 
     public GasStorage() {
         registeredCapabilities = new HashMap<>();
-        collectedBoundaries = new LinkedList<>();
+        network = new GasNetwork();
     }
 
     @NotNull
@@ -50,17 +51,18 @@ public abstract class GasStorage extends PersistentState {
     }
 
     public void add(GasBoundary boundary) {
-        collectedBoundaries.add(boundary);
+        network.add(boundary);
     }
 
     public void remove(GasBoundary boundary) {
-        collectedBoundaries.remove(boundary);
+        network.remove(boundary);
     }
 
+    /**
+     * Advances the gas by the given time, flow sweeps run at the rate chosen by the network.
+     */
     public void simulate(double deltaTime) {
-        for(GasBoundary boundary : collectedBoundaries) {
-            boundary.simulate(deltaTime);
-        }
+        network.advance(deltaTime);
     }
 
     @Override
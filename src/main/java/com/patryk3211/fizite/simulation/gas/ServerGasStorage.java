@@ -1,7 +1,9 @@
 package com.patryk3211.fizite.simulation.gas;
 
 import com.patryk3211.fizite.Fizite;
+import com.patryk3211.fizite.FiziteConfig;
 import com.patryk3211.fizite.simulation.Networking;
+import com.patryk3211.fizite.simulation.Simulator;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
@@ -17,11 +19,21 @@ public class ServerGasStorage extends GasStorage {
     private long nextGasCellId;
     private final ConcurrentLinkedQueue<GasBoundary> addBoundaries;
     private final ConcurrentLinkedQueue<GasBoundary> removeBoundaries;
+    private final ConcurrentLinkedQueue<GasCell> addCells;
+    private final ConcurrentLinkedQueue<GasCell> removeCells;
 
     public ServerGasStorage() {
         nextGasCellId = 1;
         addBoundaries = new ConcurrentLinkedQueue<>();
         removeBoundaries = new ConcurrentLinkedQueue<>();
+        addCells = new ConcurrentLinkedQueue<>();
+        removeCells = new ConcurrentLinkedQueue<>();
+        network.setCourantNumber(FiziteConfig.gasCourantNumber);
+        network.setMaxSubsteps(FiziteConfig.gasMaxSubsteps);
+        network.setParallel(FiziteConfig.gasParallelSweep);
+        network.setBalanceTolerance(FiziteConfig.gasBalanceTolerance);
+        network.setSegmentLength(FiziteConfig.gasPipeSegmentLength);
+        network.setImplicit(FiziteConfig.gasImplicitSolve);
     }
 
     public static ServerGasStorage addToWorld(ServerWorld world) {
@@ -34,11 +46,13 @@ public class ServerGasStorage extends GasStorage {
     @Override
     protected void sidedAdd(BlockPos pos, GasCapability capability) {
         capability.cells().forEach(cell -> cell.setSyncId(nextGasCellId++));
+        addCells.addAll(capability.cells());
         Networking.gasAdded(world, pos, capability);
     }
 
     @Override
     protected void sidedRemove(BlockPos pos, GasCapability capability) {
+        removeCells.addAll(capability.cells());
         Networking.gasRemoved(world, capability);
     }
 
@@ -58,8 +72,27 @@ public class ServerGasStorage extends GasStorage {
 
         // Add/Remove after simulation finished
         while(!addBoundaries.isEmpty())
-            collectedBoundaries.add(addBoundaries.remove());
+            network.add(addBoundaries.remove());
         while(!removeBoundaries.isEmpty())
-            collectedBoundaries.remove(removeBoundaries.remove());
+            network.remove(removeBoundaries.remove());
+    }
+
+    /**
+     * Publishes the state of all cells and plans the gas substeps of the next tick,
+     * called by the simulating thread at the end of every tick.
+     */
+    public void publish() {
+        // Cells of loaded capabilities are referenced by the network so that they get published
+        // even without any boundaries, they leave it once they are unloaded and all boundaries are gone
+        while(!addCells.isEmpty())
+            network.addCell(addCells.remove());
+        while(!removeCells.isEmpty())
+            network.removeCell(removeCells.remove());
+        network.publish();
+        network.planSubsteps(Simulator.TICK_RATE);
+    }
+
+    public int substepCount() {
+        return network.substepCount();
     }
 }
@@ -27,10 +27,10 @@ public final class DeferredForceGenerator extends ForceGeneratorCapability {
 
     @Override
     public void apply(double deltaTime) {
+        if(forceX != 0 || forceY != 0 || forceA != 0)
+            body.wake();
         final var state = body.getState();
-        state.extForce.x = forceX;
-        state.extForce.y = forceY;
-        state.extForceA = forceA;
+        state.setExtForce(forceX, forceY, forceA);
     }
 
     @Override
@@ -145,13 +145,14 @@ public abstract class PhysicsCapability extends WrenchConnectableCapability<Phys
         // Save body states
         final var bodyStateList = new NbtList();
         for (final RigidBody body : bodies) {
-            final var state = body.getState();
+            // Block entities are saved on the server thread, read the last published state
+            final var state = body.snapshotState();
             final var entry = new NbtCompound();
 
-            entry.put(RIGID_BODY_POSITION, state.position);
-            entry.put(RIGID_BODY_ANGLE, state.positionA);
-            entry.put(RIGID_BODY_VELOCITY, state.velocity);
-            entry.put(RIGID_BODY_ANGULAR_VELOCITY, state.velocityA);
+            entry.put(RIGID_BODY_POSITION, state.position());
+            entry.put(RIGID_BODY_ANGLE, state.positionA());
+            entry.put(RIGID_BODY_VELOCITY, state.velocity());
+            entry.put(RIGID_BODY_ANGULAR_VELOCITY, state.velocityA());
             bodyStateList.add(entry);
         }
         nbt.put(RIGID_BODIES, bodyStateList);
@@ -188,10 +189,12 @@ public abstract class PhysicsCapability extends WrenchConnectableCapability<Phys
             final var state = bodies[i].getState();
             final var entry = bodyStateList.getCompound(i);
 
-            state.position.set(entry.get(RIGID_BODY_POSITION));
-            state.positionA = entry.get(RIGID_BODY_ANGLE);
-            state.velocity.set(entry.get(RIGID_BODY_VELOCITY));
-            state.velocityA = entry.get(RIGID_BODY_ANGULAR_VELOCITY);
+            final var position = entry.get(RIGID_BODY_POSITION);
+            final var velocity = entry.get(RIGID_BODY_VELOCITY);
+            state.setPosition(position.x, position.y);
+            state.setPositionA(entry.get(RIGID_BODY_ANGLE));
+            state.setVelocity(velocity.x, velocity.y);
+            state.setVelocityA(entry.get(RIGID_BODY_ANGULAR_VELOCITY));
         }
         // Recreate connections
         restoredConnections = new LinkedList<>();
@@ -265,11 +268,11 @@ public abstract class PhysicsCapability extends WrenchConnectableCapability<Phys
         output.add(Text.literal("Physics Capability:"));
         for(int i = 0; i < bodies.length; ++i) {
             final var body = bodies[i];
-            final var state = body.getState();
-            output.add(Text.literal(String.format("  [%d] Position = (%.3e, %.3e)", i, state.position.x, state.position.y)));
-            output.add(Text.literal(String.format("  [%d] Angle = %.3f", i, state.positionA)));
-            output.add(Text.literal(String.format("  [%d] Velocity = (%.3e, %.3e)", i, state.velocity.x, state.velocity.y)));
-            output.add(Text.literal(String.format("  [%d] Angular Velocity = %.3e", i, state.velocityA)));
+            final var state = body.snapshotState();
+            output.add(Text.literal(String.format("  [%d] Position = (%.3e, %.3e)", i, state.positionX(), state.positionY())));
+            output.add(Text.literal(String.format("  [%d] Angle = %.3f", i, state.positionA())));
+            output.add(Text.literal(String.format("  [%d] Velocity = (%.3e, %.3e)", i, state.velocityX(), state.velocityY())));
+            output.add(Text.literal(String.format("  [%d] Angular Velocity = %.3e", i, state.velocityA())));
         }
     }
 }
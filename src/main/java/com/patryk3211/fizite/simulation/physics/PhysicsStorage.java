@@ -1,18 +1,18 @@
 package com.patryk3211.fizite.simulation.physics;
 
+import com.patryk3211.fizite.FiziteConfig;
 import com.patryk3211.fizite.simulation.Networking;
 import com.patryk3211.fizite.simulation.Simulator;
 import com.patryk3211.fizite.simulation.physics.simulation.IForceGenerator;
 import com.patryk3211.fizite.simulation.physics.simulation.IPhysicsStepHandler;
+import com.patryk3211.fizite.simulation.physics.simulation.PhysicsSnapshot;
 import com.patryk3211.fizite.simulation.physics.simulation.PhysicsWorld;
-import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
 import com.patryk3211.fizite.simulation.physics.simulation.constraints.Constraint;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.*;
 import net.minecraft.util.Formatting;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Vec2f;
 import net.minecraft.world.PersistentState;
 import net.minecraft.world.World;
 import org.jetbrains.annotations.NotNull;
@@ -38,6 +38,7 @@ public abstract class PhysicsStorage extends PersistentState {
 
     public PhysicsStorage() {
         simulation = new PhysicsWorld(Simulator.TICK_RATE, 100);
+        simulation.setSampleRate(FiziteConfig.profilingSampleRate);
         dataMap = new HashMap<>();
     }
 
@@ -113,32 +114,90 @@ public abstract class PhysicsStorage extends PersistentState {
         simulation.addStepHandler(handler);
     }
 
-    public Networking.ClientSyncState makeSyncPacket() {
-        // Since we store positionData in a sparse list, we have to skip the null entries,
-        // this reduces the effective size of our sync packet since we don't have
-        // to encode and send them.
-        final var bodies = simulation.bodies();
-        final var length = simulation.bodyCount();
-        int[] indices = new int[length];
-        Vec2f[] positions = new Vec2f[length];
-        Vec2f[] velocities = new Vec2f[length];
-        float[] angles = new float[length];
-        float[] angularVelocities = new float[length];
-
-        int entryIndex = 0;
-        for (final RigidBody body : bodies) {
-            if (body == null)
+    /**
+     * Makes a sync packet for one player, only bodies which drifted away from the state the player
+     * predicts ({@link SyncBaseline}) are included. The packet is built from the last published snapshot,
+     * so it can be made while the simulation is running.
+     * @param bodies Indices of the bodies the player can see, in the order of their priority
+     * @param toleranceScale Multiplier of the tolerances for every body, may be null
+     * @param byteBudget Approximate size limit of the packet, bodies which don't fit anymore are
+     *                   marked as skipped in the baseline. The first differing body is always sent.
+     * @param positionTolerance Allowed difference of positions in blocks and of angles in radians
+     * @param velocityTolerance Allowed difference of linear and angular velocities
+     * @return Null if no body has to be sent
+     */
+    public Networking.ClientSyncState makeSyncPacket(SyncBaseline baseline, int[] bodies, double[] toleranceScale, int bodyCount, int byteBudget,
+                                                     double positionTolerance, double velocityTolerance) {
+        try (final var snapshot = simulation.snapshot()) {
+            return makeSyncPacket(snapshot, baseline, bodies, toleranceScale, bodyCount, byteBudget, positionTolerance, velocityTolerance);
+        }
+    }
+
+    /**
+     * Makes a sync packet from a snapshot the caller holds, see {@link #makeSyncPacket(SyncBaseline, int[], double[], int, int, double, double)}.
+     */
+    protected Networking.ClientSyncState makeSyncPacket(PhysicsSnapshot snapshot, SyncBaseline baseline, int[] bodies, double[] toleranceScale, int bodyCount,
+                                                        int byteBudget, double positionTolerance, double velocityTolerance) {
+        final var length = snapshot.size();
+        final long tick = snapshot.tick();
+
+        final int[] selected = new int[bodyCount];
+        int selectedCount = 0;
+        int bytes = 0;
+        boolean full = false;
+        for (int k = 0; k < bodyCount; ++k) {
+            final int i = bodies[k];
+            // Bodies which haven't been added to the simulation yet
+            if (i < 0 || i >= length)
+                continue;
+            if (!snapshot.contains(i)) {
+                baseline.forget(i);
+                continue;
+            }
+            // Bodies of sleeping islands which the player already has don't have to be compared again
+            final long sleepTick = snapshot.sleepTick(i);
+            if (baseline.settled(i, sleepTick))
                 continue;
-            indices[entryIndex] = body.index();
-            final var state = body.getState();
-            positions[entryIndex] = new Vec2f((float) state.position.x, (float) state.position.y);
-            velocities[entryIndex] = new Vec2f((float) state.velocity.x, (float) state.velocity.y);
-            angles[entryIndex] = (float) state.positionA;
-            angularVelocities[entryIndex] = (float) state.velocityA;
-            ++entryIndex;
+            final long positionX = BodyStates.quantizePosition(snapshot.positionX(i));
+            final long positionY = BodyStates.quantizePosition(snapshot.positionY(i));
+            final long positionA = BodyStates.quantizeAngle(snapshot.positionA(i));
+            final long velocityX = BodyStates.quantizeVelocity(snapshot.velocityX(i));
+            final long velocityY = BodyStates.quantizeVelocity(snapshot.velocityY(i));
+            final long velocityA = BodyStates.quantizeVelocity(snapshot.velocityA(i));
+            final double scale = toleranceScale != null ? toleranceScale[k] : 1;
+            if (!baseline.differs(i, tick, sleepTick, positionX, positionY, positionA, velocityX, velocityY, velocityA,
+                    BodyStates.quantizePosition(positionTolerance * scale),
+                    BodyStates.quantizeAngle(positionTolerance * scale),
+                    BodyStates.quantizeVelocity(velocityTolerance * scale)))
+                continue;
+            // Once a body doesn't fit, everything after it waits for the next sync,
+            // so the bodies of a machine aren't split between two packets
+            final int size = BodyStates.entrySize(positionX, positionY, positionA, velocityX, velocityY, velocityA);
+            if (full || (selectedCount > 0 && bytes + size > byteBudget)) {
+                full = true;
+                baseline.skip(i);
+                continue;
+            }
+            bytes += size;
+            selected[selectedCount++] = i;
         }
 
-        return new Networking.ClientSyncState(indices, positions, velocities, angles, angularVelocities);
+        if (selectedCount == 0)
+            return null;
+        // Body states are written as ranges of ascending indices
+        Arrays.sort(selected, 0, selectedCount);
+        final var states = new BodyStates(selectedCount);
+        for (int k = 0; k < selectedCount; ++k) {
+            final int i = selected[k];
+            states.add(i,
+                    BodyStates.quantizePosition(snapshot.positionX(i)),
+                    BodyStates.quantizePosition(snapshot.positionY(i)),
+                    BodyStates.quantizeAngle(snapshot.positionA(i)),
+                    BodyStates.quantizeVelocity(snapshot.velocityX(i)),
+                    BodyStates.quantizeVelocity(snapshot.velocityY(i)),
+                    BodyStates.quantizeVelocity(snapshot.velocityA(i)));
+        }
+        return new Networking.ClientSyncState(baseline.send(states, tick), tick, states);
     }
 
     private static Style chooseStyle(double time) {
@@ -161,17 +220,17 @@ public abstract class PhysicsStorage extends PersistentState {
         }
     }
 
-    private static Text writeTime(String name, long[] frames) {
+    private static Text writeTime(String name, long[] frames, int count) {
         double avg = 0, min = frames[0] / 1000.0, max = frames[0] / 1000.0;
-        for (long frame : frames) {
-            final var value = frame / 1000.0;
+        for (int i = 0; i < count; ++i) {
+            final var value = frames[i] / 1000.0;
             avg += value;
             if (value < min)
                 min = value;
             if (value > max)
                 max = value;
         }
-        avg /= frames.length;
+        avg /= Math.max(count, 1);
 
         final var result = Text.empty();
         result.append("[Fizite]   " + name + ": ");
@@ -184,16 +243,17 @@ public abstract class PhysicsStorage extends PersistentState {
         return result;
     }
 
-    private static Text writeTime(String name, int[] frames) {
+    private static Text writeTime(String name, int[] frames, int count) {
         int sum = 0, min = frames[0], max = frames[0];
-        for (int frame : frames) {
+        for (int i = 0; i < count; ++i) {
+            final var frame = frames[i];
             sum += frame;
             if (frame < min)
                 min = frame;
             if (frame > max)
                 max = frame;
         }
-        float avg = (float) sum / frames.length;
+        float avg = (float) sum / Math.max(count, 1);
 
         final var result = Text.empty();
         result.append("[Fizite]   " + name + ": ");
@@ -208,14 +268,21 @@ public abstract class PhysicsStorage extends PersistentState {
 
     public Text timingReport() {
         final var result = Text.empty().setStyle(Style.EMPTY.withColor(Formatting.GRAY));
-        result.append("[Fizite] Simulation times (1 step, Avg/Min/Max):\n");
-        result.append(writeTime("forceApply", simulation.forceGeneratorTime));
-        result.append(writeTime("constraint", simulation.constraintSolveTime));
-        result.append(writeTime("physicsStep", simulation.physicsStepTime));
-        result.append(writeTime("physicsSolve", simulation.physicsSolveTime));
-        result.append(writeTime("stepHandlers", simulation.stepHandlersTime));
-        result.append(writeTime("constraintIterCount", simulation.iterationCount));
+        if(simulation.sampleRate() == 0) {
+            result.append("[Fizite] Step timing is disabled (profilingSampleRate = 0)\n");
+        } else {
+            result.append("[Fizite] Simulation times (1 step, Avg/Min/Max, every " + simulation.sampleRate() + ". step timed):\n");
+            final var stageFrames = simulation.stageFrameCount;
+            result.append(writeTime("forceApply", simulation.forceGeneratorTime, stageFrames));
+            result.append(writeTime("constraint", simulation.constraintSolveTime, stageFrames));
+            result.append(writeTime("physicsStep", simulation.physicsStepTime, stageFrames));
+            result.append(writeTime("physicsSolve", simulation.physicsSolveTime, stageFrames));
+            result.append(writeTime("stepHandlers", simulation.stepHandlersTime, simulation.stepFrameCount));
+            result.append(writeTime("constraintIterCount", simulation.iterationCount, stageFrames));
+        }
         result.append("[Fizite] Simulation times (singular, " + simulation.stepCount() + " steps)\n");
+        result.append(String.format("[Fizite]   Steps: %d accepted, %d rejected, %.1f average, max error %.3f, %d failed solves\n",
+                simulation.acceptedSteps, simulation.rejectedSteps, simulation.averageSteps, simulation.maxStepError, simulation.failedSolves));
         result.append("[Fizite]   Start time = ");
         final var startTime = simulation.startTime / 1000.0;
         result.append(Text.literal(String.format("%.2f", startTime)).setStyle(chooseStyle(startTime)));
@@ -1,28 +1,90 @@
 package com.patryk3211.fizite.simulation.physics;
 
 import com.patryk3211.fizite.Fizite;
+import com.patryk3211.fizite.FiziteConfig;
 import com.patryk3211.fizite.simulation.Networking;
+import com.patryk3211.fizite.simulation.SimulationClock;
+import com.patryk3211.fizite.simulation.Simulator;
+import com.patryk3211.fizite.simulation.physics.simulation.RigidBody;
 import com.patryk3211.fizite.simulation.physics.simulation.constraints.Constraint;
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class ServerPhysicsStorage extends PhysicsStorage {
     public static final String STORAGE_ID = Fizite.MOD_ID + ":physics_world";
     public static final Type<ServerPhysicsStorage> TYPE = new Type<>(ServerPhysicsStorage::new, nbt -> new ServerPhysicsStorage(), null);
 
-    private static final Map<RegistryKey<World>, ServerPhysicsStorage> simulations = new HashMap<>();
+    private static final Map<RegistryKey<World>, ServerPhysicsStorage> simulations = new ConcurrentHashMap<>();
+    // Distance (in blocks) over which the sync tolerances of a machine grow by their base value
+    private static final double TOLERANCE_DISTANCE = 16;
 
     private RegistryKey<World> world;
     private boolean redirtify = true;
+    private final SimulationClock clock = new SimulationClock();
+    // What every player in this dimension knows and sees, only used on the server thread
+    private final Map<ServerPlayerEntity, PlayerSync> players = new HashMap<>();
+    // Machine positions by the chunk holding them, only players tracking the chunk get their states
+    private final Map<Long, Set<BlockPos>> chunkIndex = new HashMap<>();
+    // World time of the last scan of the chunks tracked by players
+    private long interestScanTime;
+    // Set when machines are added or removed, the cached machine lists of the players are rebuilt on the next sync
+    private boolean interestChanged = true;
+
+    private static class PlayerSync {
+        final SyncBaseline baseline = new SyncBaseline(Simulator.TICK_RATE, FiziteConfig.syncMaxAge);
+        // Machines in the chunks the player tracked during the last scan
+        BlockPos[] machines = new BlockPos[16];
+        RigidBody[][] bodies = new RigidBody[16][];
+        int machineCount;
+        int bodyCount;
+        // Reused between syncs, the sort keys hold the priority bits and the machine
+        long[] order = new long[16];
+        double[] distances = new double[16];
+        int[] indices = new int[16];
+        double[] toleranceScale = new double[16];
+
+        void addMachine(BlockPos position, RigidBody[] machineBodies) {
+            if(machineCount == machines.length) {
+                final int capacity = machineCount * 2;
+                machines = Arrays.copyOf(machines, capacity);
+                bodies = Arrays.copyOf(bodies, capacity);
+                order = new long[capacity];
+                distances = new double[capacity];
+            }
+            machines[machineCount] = position;
+            bodies[machineCount++] = machineBodies;
+            bodyCount += machineBodies.length;
+            if(bodyCount > indices.length) {
+                indices = new int[Math.max(bodyCount, indices.length * 2)];
+                toleranceScale = new double[indices.length];
+            }
+        }
+
+        void clearMachines() {
+            Arrays.fill(machines, 0, machineCount, null);
+            Arrays.fill(bodies, 0, machineCount, null);
+            machineCount = 0;
+            bodyCount = 0;
+        }
+    }
 
     // We need to make sure that everything stays synchronized between the server and simulation threads,
     // to achieve this we simply run functions which modify the simulation on the simulating thread.
@@ -31,6 +93,8 @@ public class ServerPhysicsStorage extends PhysicsStorage {
     @Override
     public void add(BlockPos position, PhysicsCapability capability) {
         final var entry = createPositionEntry(position, capability);
+        chunkIndex.computeIfAbsent(ChunkPos.toLong(position), k -> new HashSet<>()).add(position.toImmutable());
+        interestChanged = true;
 
         // Add all rigid bodies and internal constraints to the simulation
         deferredActions.add(() -> {
@@ -62,6 +126,19 @@ public class ServerPhysicsStorage extends PhysicsStorage {
         final var entry = dataMap.remove(pos);
         if(entry == null)
             return;
+        final long chunk = ChunkPos.toLong(pos);
+        final var machines = chunkIndex.get(chunk);
+        if(machines != null) {
+            machines.remove(pos);
+            if(machines.isEmpty())
+                chunkIndex.remove(chunk);
+        }
+        interestChanged = true;
+        // The indices can be reused by other bodies
+        for(final var body : entry.capability.bodies) {
+            for(final var player : players.values())
+                player.baseline.forget(body.index());
+        }
 
         // Remove simulation elements
         deferredActions.add(() -> {
@@ -98,16 +175,64 @@ public class ServerPhysicsStorage extends PhysicsStorage {
         redirtify = true;
     }
 
-    public static void simulateAll() {
-        simulations.forEach((key, sim) -> {
-            // Run all deferred actions
-            Runnable action;
-            while((action = sim.deferredActions.poll()) != null)
-                action.run();
+    private void simulateTick() {
+        // Run all deferred actions
+        Runnable action;
+        while((action = deferredActions.poll()) != null)
+            action.run();
 
-            // Perform the simulation
-            sim.simulation.simulate();
-        });
+        // Simulate all ticks which are due according to the clock
+        clock.begin(System.nanoTime());
+        while(clock.nextTick(System.nanoTime())) {
+            simulation.setDegraded(clock.isDegraded());
+            simulation.simulate();
+        }
+        final boolean wasDegraded = clock.isDegraded();
+        clock.end(System.nanoTime());
+
+        if(clock.isDegraded() != wasDegraded) {
+            if(wasDegraded)
+                Fizite.LOGGER.info("Simulation of " + world.getValue() + " is back within its budget, restoring full accuracy");
+            else
+                Fizite.LOGGER.warn("Simulation of " + world.getValue() + " took " + clock.lastRunTime / 1000000 + " ms, running with the minimum step count");
+        }
+    }
+
+    @Override
+    public Text timingReport() {
+        final var result = Text.empty().setStyle(Style.EMPTY.withColor(Formatting.GRAY));
+        result.append(super.timingReport());
+        result.append(String.format("[Fizite] Clock: %d ticks, %d catch-up, %d skipped runs, %.2f s dropped, %.2f s behind\n",
+                clock.simulatedTicks, clock.catchUpTicks, clock.skippedRuns, clock.droppedTime, clock.behind()));
+        result.append(String.format("[Fizite]   Budget: %d overruns, last run %.2f ms (%d ticks), max run %.2f ms\n",
+                clock.budgetOverruns, clock.lastRunTime / 1000000.0, clock.lastRunTicks(), clock.maxRunTime / 1000000.0));
+        result.append(String.format("[Fizite]   Degraded: %s, %d degraded ticks\n", clock.isDegraded() ? "yes" : "no", clock.degradedTicks));
+        return result;
+    }
+
+    /**
+     * Simulates every dimension as a separate task on the given executor
+     * and waits for all of them to finish.
+     */
+    public static void simulateAll(ExecutorService executor) throws InterruptedException {
+        final List<Future<?>> tasks = new ArrayList<>(simulations.size());
+        for(final var sim : simulations.values())
+            tasks.add(executor.submit(sim::simulateTick));
+
+        // Wait for every dimension before reporting errors, so that nothing is still running after we return
+        RuntimeException error = null;
+        for(final var task : tasks) {
+            try {
+                task.get();
+            } catch(ExecutionException e) {
+                if(error == null)
+                    error = new RuntimeException("Dimension simulation failed", e.getCause());
+                else
+                    error.addSuppressed(e.getCause());
+            }
+        }
+        if(error != null)
+            throw error;
     }
 
     public static ServerPhysicsStorage addToWorld(ServerWorld world) {
@@ -126,25 +251,117 @@ public class ServerPhysicsStorage extends PhysicsStorage {
         }
     }
 
-    public static void syncStates(MinecraftServer server) {
-        final Map<RegistryKey<World>, List<ServerPlayerEntity>> playerDimensions = new HashMap<>();
-        for(ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-            final var key = player.getServerWorld().getRegistryKey();
-            if(playerDimensions.get(key) == null) {
-                final List<ServerPlayerEntity> list = new LinkedList<>();
-                list.add(player);
-                playerDimensions.put(key, list);
-            } else {
-                playerDimensions.get(key).add(player);
+    /**
+     * Finds the machines in the chunks every player tracks. Players lose the baselines of machines
+     * in chunks they stopped tracking, players who don't see any machine are dropped.
+     */
+    private void scanInterest(ServerWorld world) {
+        final Map<ServerPlayerEntity, Set<Long>> watched = new HashMap<>();
+        for(final var sync : players.values())
+            sync.clearMachines();
+        chunkIndex.forEach((chunk, machines) -> {
+            for(final var player : PlayerLookup.tracking(world, new ChunkPos(chunk))) {
+                watched.computeIfAbsent(player, k -> new HashSet<>()).add(chunk);
+                final var sync = players.computeIfAbsent(player, k -> new PlayerSync());
+                for(final var pos : machines)
+                    sync.addMachine(pos, dataMap.get(pos).capability.bodies);
+            }
+        });
+        // Players who don't see any machine get everything again when they do
+        players.keySet().retainAll(watched.keySet());
+
+        watched.forEach((player, chunks) -> {
+            final var baseline = players.get(player).baseline;
+            // The client drops machines of unloaded chunks, they have to be sent in full once it loads them again
+            for(final long chunk : baseline.watch(chunks)) {
+                final var machines = chunkIndex.get(chunk);
+                if(machines == null)
+                    continue;
+                for(final var pos : machines) {
+                    for(final var body : dataMap.get(pos).capability.bodies)
+                        baseline.forget(body.index());
+                }
+            }
+        });
+        interestScanTime = world.getTime();
+        interestChanged = false;
+    }
+
+    /**
+     * Sends every player in the dimension the machines in chunks the player tracks which drifted away from
+     * the client prediction, nearer and faster machines first, up to the configured byte budget.
+     * The tracked chunks are only scanned every {@link FiziteConfig#syncInterestInterval} ticks
+     * and after machines were added or removed.
+     */
+    private void syncStates(ServerWorld world) {
+        final long time = world.getTime();
+        if(interestChanged || time - interestScanTime >= FiziteConfig.syncInterestInterval || time < interestScanTime)
+            scanInterest(world);
+
+        try(final var snapshot = simulation.snapshot()) {
+            for(final var entry : players.entrySet()) {
+                final var player = entry.getKey();
+                // Players who left until the next scan
+                if(player.isDisconnected() || player.getServerWorld() != world)
+                    continue;
+                final var sync = entry.getValue();
+                final var baseline = sync.baseline;
+
+                // Machines waiting for a long time catch up with nearer ones
+                for(int m = 0; m < sync.machineCount; ++m) {
+                    double speed = 0;
+                    int waited = 0;
+                    for(final var body : sync.bodies[m]) {
+                        final int index = body.index();
+                        if(index < 0 || index >= snapshot.size() || !snapshot.contains(index))
+                            continue;
+                        speed = Math.max(speed, Math.hypot(snapshot.velocityX(index), snapshot.velocityY(index)) + Math.abs(snapshot.velocityA(index)));
+                        waited = Math.max(waited, baseline.waited(index));
+                    }
+                    final var pos = sync.machines[m];
+                    final double distance = Math.sqrt(player.squaredDistanceTo(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5));
+                    sync.distances[m] = distance;
+                    // Bits of a non negative float sort the same way as its value
+                    final float priority = (float) (distance / ((1 + speed) * (1 + waited)));
+                    sync.order[m] = (long) Float.floatToRawIntBits(priority) << 32 | m;
+                }
+                Arrays.sort(sync.order, 0, sync.machineCount);
+
+                // Errors of distant machines are harder to see, they are allowed to drift further
+                int count = 0;
+                for(int k = 0; k < sync.machineCount; ++k) {
+                    final int m = (int) sync.order[k];
+                    final double scale = 1 + sync.distances[m] / TOLERANCE_DISTANCE;
+                    for(final var body : sync.bodies[m]) {
+                        sync.toleranceScale[count] = scale;
+                        sync.indices[count++] = body.index();
+                    }
+                }
+                final var packet = makeSyncPacket(snapshot, baseline, sync.indices, sync.toleranceScale, count, FiziteConfig.syncByteBudget,
+                        FiziteConfig.syncPositionTolerance, FiziteConfig.syncVelocityTolerance);
+                if(packet != null)
+                    Networking.CHANNEL.serverHandle(player).send(packet);
             }
         }
-        playerDimensions.forEach((key, players) -> {
-            final var sim = simulations.get(key);
-            final var packet = sim.makeSyncPacket();
-            Networking.CHANNEL.serverHandle(players).send(packet);
+    }
+
+    public static void syncStates(MinecraftServer server) {
+        simulations.forEach((key, sim) -> {
+            final var world = server.getWorld(key);
+            if(world != null)
+                sim.syncStates(world);
         });
     }
 
+    public static void acknowledge(ServerPlayerEntity player, int sequence) {
+        final var sim = simulations.get(player.getServerWorld().getRegistryKey());
+        if(sim == null)
+            return;
+        final var sync = sim.players.get(player);
+        if(sync != null)
+            sync.baseline.acknowledge(sequence);
+    }
+
     public static void clearSimulations() {
         simulations.clear();
     }